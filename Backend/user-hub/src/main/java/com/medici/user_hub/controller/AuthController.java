@@ -1,7 +1,14 @@
 package com.medici.user_hub.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.medici.user_hub.dto.TokenPair;
+import com.medici.user_hub.handler.RefreshTokenConflictException;
 import com.medici.user_hub.handler.ResourceNotFoundException;
-import com.medici.user_hub.model.User;
+import com.medici.user_hub.handler.TokenServiceException;
+import com.medici.user_hub.security.VerifiedToken;
 import com.medici.user_hub.service.JwtService;
 import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
@@ -18,6 +25,13 @@ public class AuthController {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
+    // Response header carrying a newly issued refresh token
+    public static final String REFRESH_TOKEN_HEADER = "X-Refresh-Token";
+
+    private static final ObjectReader LOGOUT_BODY_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(TokenPair.class);
+
     @Autowired
     private JwtService jwtService;
 
@@ -27,43 +41,60 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
-    // Refresh access token for authenticated users
+    // Exchange a refresh token for a new access token and a rotated refresh token (publicly accessible);
+    // 409 if another request rotated it moments ago, in which case the client retries with its latest stored refresh token
     @PostMapping("/refresh-token")
     public ResponseEntity<String> refreshAccessToken(@RequestBody String refreshToken) {
         logger.info("AuthController - Request to refresh access token");
         try {
-            String userId = jwtService.validateTokenAndGetUserId(refreshToken);
-            if (userId != null) {
-                User user = userService.getUserById(userId); // Throws ResourceNotFoundException if not found
-                String newAccessToken = jwtService.generateAccessToken(user);
-                logger.info("AuthController - Successfully refreshed access token for user ID: {}", userId);
-                return ResponseEntity.ok(newAccessToken);
+            VerifiedToken verifiedToken = jwtService.verify(refreshToken);
+            if (verifiedToken.isRefreshToken() && tokenService.isTokenVersionCurrent(verifiedToken)) {
+                TokenPair tokens = jwtService.rotateRefreshToken(verifiedToken); // Throws TokenServiceException unless rotated
+                logger.info("AuthController - Successfully refreshed access token for user ID: {}", verifiedToken.subject());
+                return ResponseEntity.ok()
+                        .header(REFRESH_TOKEN_HEADER, tokens.refreshToken())
+                        .body(tokens.accessToken());
             } else {
                 logger.warn("AuthController - Invalid refresh token provided");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
             }
-        } catch (ResourceNotFoundException e) {
-            logger.error("AuthController - User not found during token refresh", e);
-            throw e;
+        } catch (RefreshTokenConflictException e) {
+            logger.info("AuthController - Refresh token already rotated by a concurrent refresh");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Refresh token already rotated, use the latest refresh token");
+        } catch (TokenServiceException e) {
+            logger.warn("AuthController - Refresh token rejected", e);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
         } catch (Exception e) {
             logger.error("AuthController - Unexpected error during token refresh", e);
             throw e;
         }
     }
 
-    // Logout by blacklisting the access token
+    // Logout by blacklisting the access token and ending the refresh token family of the session, if its refresh
+    // token is presented in the X-Refresh-Token header or a JSON body {"accessToken": ..., "refreshToken": ...}
     @PostMapping("/logout")
-    public ResponseEntity<String> logout(@RequestBody String accessToken) {
+    public ResponseEntity<String> logout(
+            @RequestBody String body,
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestHeader(value = REFRESH_TOKEN_HEADER, required = false) String refreshToken,
+            @RequestAttribute(value = VerifiedToken.REQUEST_ATTRIBUTE, required = false) VerifiedToken requestToken) {
         logger.info("AuthController - Request to logout user with token");
+        VerifiedToken verifiedToken;
+        TokenPair presented;
         try {
-            long expiration = jwtService.getTokenExpiration(accessToken);
-            tokenService.blacklistToken(accessToken, expiration);
-            logger.info("AuthController - Successfully logged out and blacklisted token");
-            return ResponseEntity.ok("Logged out successfully");
+            presented = readLogoutBody(body);
+            // Reuse the filter's verification when the body token is the one that authenticated the request
+            verifiedToken = requestToken != null && ("Bearer " + presented.accessToken()).equals(authorization)
+                    ? requestToken
+                    : jwtService.verify(presented.accessToken());
+            tokenService.blacklistToken(verifiedToken.id(), verifiedToken.expiresAt());
         } catch (Exception e) {
             logger.error("AuthController - Failed to logout and blacklist token", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to logout");
         }
+        endRefreshTokenFamily(verifiedToken, refreshToken != null ? refreshToken : presented.refreshToken());
+        logger.info("AuthController - Successfully logged out and blacklisted token");
+        return ResponseEntity.ok("Logged out successfully");
     }
 
     // Retrieve the security question for a given email (publicly accessible)
@@ -107,4 +138,30 @@ public class AuthController {
             throw e;
         }
     }
+
+    // Reads a logout body: either the bare access token or a JSON object that may also carry the refresh token
+    private static TokenPair readLogoutBody(String body) throws JsonProcessingException {
+        String trimmed = body.trim();
+        return trimmed.startsWith("{") ? LOGOUT_BODY_READER.readValue(trimmed) : new TokenPair(trimmed, null);
+    }
+
+    // Ends the family of the presented refresh token; without one the family is left to expire. The access token is
+    // already blacklisted, so a failure here is logged rather than turning the logout into an error
+    private void endRefreshTokenFamily(VerifiedToken accessToken, String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            logger.info("AuthController - No refresh token presented at logout, its family expires on its own");
+            return;
+        }
+        try {
+            VerifiedToken verifiedRefreshToken = jwtService.verify(refreshToken);
+            if (verifiedRefreshToken.isRefreshToken() && verifiedRefreshToken.family() != null
+                    && verifiedRefreshToken.subject().equals(accessToken.subject())) {
+                tokenService.endRefreshTokenFamily(verifiedRefreshToken.family());
+            } else {
+                logger.warn("AuthController - Refresh token presented at logout does not belong to the session, ignored");
+            }
+        } catch (Exception e) {
+            logger.warn("AuthController - Could not end the refresh token family presented at logout", e);
+        }
+    }
 }
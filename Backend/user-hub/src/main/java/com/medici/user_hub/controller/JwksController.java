@@ -0,0 +1,44 @@
+package com.medici.user_hub.controller;
+
+import com.medici.user_hub.security.JwtKeyRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class JwksController {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwksController.class);
+
+    @Autowired
+    private JwtKeyRegistry keyRegistry;
+
+    @Value("${jwt.jwksMaxAgeSeconds:300}")
+    private long jwksMaxAgeSeconds;
+
+    // Publish the public token verification keys so other services can verify tokens locally (public)
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, List<Map<String, Object>>>> getJwks(WebRequest request) {
+        List<Map<String, Object>> keys = keyRegistry.publicJwks();
+        String eTag = "\"" + Integer.toHexString(keys.hashCode()) + "\"";
+        if (request.checkNotModified(eTag)) {
+            logger.debug("JwksController - Public keys not modified");
+            return null; // Spring answers 304 Not Modified
+        }
+        logger.debug("JwksController - Serving {} public key(s)", keys.size());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(jwksMaxAgeSeconds)).cachePublic())
+                .eTag(eTag)
+                .body(Map.of("keys", keys));
+    }
+}
@@ -2,7 +2,9 @@ package com.medici.user_hub.controller;
 
 import com.medici.user_hub.dto.UserDTO;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.security.VerifiedToken;
 import com.medici.user_hub.service.JwtService;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.ValidationException;
@@ -10,13 +12,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.annotation.Secured;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,6 +32,9 @@ public class UserController {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private TokenService tokenService;
+
     // Register a new user
     @PostMapping("/register")
     public ResponseEntity<String> registerUser(@RequestBody User user) {
@@ -53,11 +57,15 @@ public class UserController {
     public ResponseEntity<?> login(@RequestParam String email, @RequestParam String password) {
         logger.info("UserController - Request to login user with email: {}", email);
         try {
-            User user = userService.getUserByEmail(email); // Throws ResourceNotFoundException if not found
-            if (userService.validatePassword(password, user.getPasswordHash())) {
+            // Unknown emails and wrong passwords get the same answer in about the same time
+            Optional<User> authenticated = userService.authenticate(email, password);
+            if (authenticated.isPresent()) {
+                User user = authenticated.get();
                 String token = jwtService.generateAccessToken(user);
+                String refreshToken = jwtService.generateRefreshToken(user);
                 HttpHeaders headers = new HttpHeaders();
                 headers.set("Authorization", "Bearer " + token);
+                headers.set(AuthController.REFRESH_TOKEN_HEADER, refreshToken);
 
                 UserDTO userDTO = new UserDTO(
                         user.getId(),
@@ -72,28 +80,31 @@ public class UserController {
                 logger.info("UserController - User with email: {} logged in successfully", email);
                 return ResponseEntity.ok().headers(headers).body(userDTO);
             } else {
-                logger.warn("UserController - Invalid password for email: {}", email);
+                logger.warn("UserController - Invalid email or password for email: {}", email);
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid email or password");
             }
-        } catch (ResourceNotFoundException e) {
-            logger.error("UserController - User not found for login with email: {}", email, e);
-            throw e;
         } catch (Exception e) {
             logger.error("UserController - Unexpected error during login for email: {}", email, e);
             throw e;
         }
     }
 
-    // Update user profile (authenticated users only)
-    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    // Update user profile (authenticated users only); returns new tokens if the update revoked the caller's
     @PutMapping("/update")
-    public ResponseEntity<String> updateUser(@RequestBody User updatedUser, @RequestHeader("Authorization") String token) {
-        String userId = jwtService.validateTokenAndGetUserId(token.replace("Bearer ", ""));
+    public ResponseEntity<String> updateUser(@RequestBody User updatedUser,
+                                             @RequestAttribute(VerifiedToken.REQUEST_ATTRIBUTE) VerifiedToken token) {
+        String userId = token.subject(); // Verified once by JwtAuthenticationFilter
         logger.info("UserController - Request to update profile for user ID: {}", userId);
         try {
-            userService.updateUser(userId, updatedUser); // Throws exceptions if validation or not found
+            User user = userService.updateUser(userId, updatedUser); // Throws exceptions if validation or not found
             logger.info("UserController - Successfully updated profile for user ID: {}", userId);
-            return ResponseEntity.ok("User updated successfully");
+            HttpHeaders headers = new HttpHeaders();
+            if (!tokenService.isTokenVersionCurrent(token)) {
+                // Security-relevant changes revoke every session, so the caller's own is replaced rather than ended
+                headers.set("Authorization", "Bearer " + jwtService.generateAccessToken(user));
+                headers.set(AuthController.REFRESH_TOKEN_HEADER, jwtService.generateRefreshToken(user));
+            }
+            return ResponseEntity.ok().headers(headers).body("User updated successfully");
         } catch (ResourceNotFoundException | ValidationException e) {
             logger.error("UserController - Error updating profile for user ID: {}", userId, e);
             throw e;
@@ -104,10 +115,9 @@ public class UserController {
     }
 
     // Delete user account (authenticated users only)
-    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     @DeleteMapping("/delete")
-    public ResponseEntity<String> deleteUser(@RequestHeader("Authorization") String token) {
-        String userId = jwtService.validateTokenAndGetUserId(token.replace("Bearer ", ""));
+    public ResponseEntity<String> deleteUser(@RequestAttribute(VerifiedToken.REQUEST_ATTRIBUTE) VerifiedToken token) {
+        String userId = token.subject(); // Verified once by JwtAuthenticationFilter
         logger.info("UserController - Request to delete account for user ID: {}", userId);
         try {
             userService.deleteUser(userId); // Throws ResourceNotFoundException if not found
@@ -123,7 +133,6 @@ public class UserController {
     }
 
     // Fetch all users (admin only)
-    @Secured("ROLE_ADMIN")
     @GetMapping("/all")
     public ResponseEntity<List<UserDTO>> getAllUsers() {
         logger.info("UserController - Request to retrieve all users");
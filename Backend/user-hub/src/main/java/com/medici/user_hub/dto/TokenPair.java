@@ -0,0 +1,7 @@
+package com.medici.user_hub.dto;
+
+/**
+ * An access token together with the refresh token that replaces the one presented for refresh.
+ */
+public record TokenPair(String accessToken, String refreshToken) {
+}
@@ -0,0 +1,8 @@
+package com.medici.user_hub.dto;
+
+/**
+ * A token to revoke, given by its ID and the time it expires in epoch milliseconds.
+ * The expiry is needed because revocations are only kept until the token would have expired anyway.
+ */
+public record TokenRevocation(String tokenId, long expiresAt) {
+}
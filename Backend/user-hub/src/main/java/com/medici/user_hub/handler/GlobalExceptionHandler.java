@@ -2,6 +2,7 @@ package com.medici.user_hub.handler;
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.DatabaseException;
 import com.medici.user_hub.handler.ValidationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -52,6 +53,14 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Database error: " + ex.getMessage());
     }
 
+    // Handle saturated resources (e.g., the password hashing queue is full), telling the client when to retry
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<String> handleServiceBusyException(ServiceBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body("Service busy: " + ex.getMessage());
+    }
+
     // Handle custom validation exceptions (e.g., invalid email format with custom @ValidEmail annotation)
     @ExceptionHandler(ValidationException.class)
     public ResponseEntity<String> handleValidationException(ValidationException ex) {
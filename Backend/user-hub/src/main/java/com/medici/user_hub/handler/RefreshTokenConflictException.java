@@ -0,0 +1,8 @@
+package com.medici.user_hub.handler;
+
+public class RefreshTokenConflictException extends RuntimeException {
+
+    public RefreshTokenConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+package com.medici.user_hub.handler;
+
+public class ServiceBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public ServiceBusyException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // Seconds the client should wait before retrying, sent as the Retry-After header
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,6 +1,29 @@
 package com.medici.user_hub.model;
 
+import java.util.Collection;
+
 public enum Role {
     USER,
-    ADMIN
+    ADMIN;
+
+    // Bit representing this role in a role mask
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    // Returns true if the role mask includes this role
+    public boolean isIn(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    // Packs a set of roles into a role mask, one bit per role
+    public static int mask(Collection<Role> roles) {
+        int mask = 0;
+        if (roles != null) {
+            for (Role role : roles) {
+                mask |= role.bit();
+            }
+        }
+        return mask;
+    }
 }
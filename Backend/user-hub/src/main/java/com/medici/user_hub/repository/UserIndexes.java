@@ -0,0 +1,54 @@
+package com.medici.user_hub.repository;
+
+import com.medici.user_hub.model.User;
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes sure at startup that the unique index on users.email exists. Registration relies on it to
+ * reject duplicate emails in the same write as the insert, so without it duplicates would be accepted.
+ * The index is normally created by mongo-init.js; if it is missing it is created here, and startup
+ * fails if that is not possible, e.g. because duplicate emails are already stored.
+ */
+@Component
+public class UserIndexes {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserIndexes.class);
+    static final String EMAIL = "email";
+
+    private final MongoTemplate mongoTemplate;
+
+    public UserIndexes(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void ensureUniqueEmailIndex() {
+        IndexOperations indexes = mongoTemplate.indexOps(User.class);
+        if (indexes.getIndexInfo().stream().anyMatch(UserIndexes::isUniqueEmailIndex)) {
+            logger.info("UserIndexes - Unique email index present");
+            return;
+        }
+
+        logger.warn("UserIndexes - Unique email index missing, creating it");
+        try {
+            indexes.ensureIndex(new Index().on(EMAIL, Sort.Direction.ASC).unique());
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("The unique index on users.email is missing and could not be created", e);
+        }
+    }
+
+    // Matches a unique index on the email field alone
+    private static boolean isUniqueEmailIndex(IndexInfo index) {
+        return index.isUnique()
+                && index.getIndexFields().size() == 1
+                && EMAIL.equals(index.getIndexFields().get(0).getKey());
+    }
+}
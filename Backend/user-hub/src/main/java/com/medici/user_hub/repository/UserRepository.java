@@ -1,7 +1,10 @@
 package com.medici.user_hub.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 import java.util.Optional;
+import java.util.stream.Stream;
 import com.medici.user_hub.model.User;
 
 /**
@@ -15,4 +18,17 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     // Check if a user exists with the given email address
     boolean existsByEmail(String email);
+
+    // Stream every user with only the email field populated, e.g. to load the registered email filter
+    @Query(value = "{}", fields = "{ 'email': 1 }")
+    Stream<User> streamAllEmails();
+
+    // Find a user by ID with only the password hash populated, which the user cache does not hold
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'passwordHash': 1 }")
+    Optional<User> findPasswordHashById(String id);
+
+    // Replace a password hash only if it has not changed since it was read, returning the number of users updated
+    @Query("{ '_id': ?0, 'passwordHash': ?1 }")
+    @Update("{ '$set': { 'passwordHash': ?2 } }")
+    long replacePasswordHash(String id, String currentHash, String newHash);
 }
@@ -1,66 +1,102 @@
 package com.medici.user_hub.security;
 
+import com.medici.user_hub.model.Role;
 import com.medici.user_hub.model.User;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 
-public class CustomUserDetails implements UserDetails {
+/**
+ * Authenticated principal: only what authorization needs, never the password or security answer hashes.
+ * Immutable, so one instance can be shared between requests and cached. The roles are packed into a
+ * mask with one {@link Role#bit()} per role; masks only live in memory, so reordering {@link Role} is safe.
+ *
+ * @param id           The user ID
+ * @param username     The username
+ * @param roles        The user's roles as a mask of {@link Role#bit()}
+ * @param tokenVersion The user's token version the principal was authenticated at
+ */
+public record CustomUserDetails(String id, String username, int roles, long tokenVersion) implements UserDetails {
 
-    private static final Logger logger = LoggerFactory.getLogger(CustomUserDetails.class);
+    // Authorities of every possible role mask, built once so principals share them
+    private static final List<List<GrantedAuthority>> AUTHORITIES = authoritiesByMask();
 
-    private final User user;
+    // Builds the principal of a user loaded from the database
+    public static CustomUserDetails of(User user, long tokenVersion) {
+        return new CustomUserDetails(user.getId(), user.getUsername(), Role.mask(user.getRoles()), tokenVersion);
+    }
+
+    // Builds the principal from verified token claims; roles this version does not know are ignored
+    public static CustomUserDetails of(VerifiedToken token) {
+        int mask = 0;
+        if (token.roles() != null) {
+            for (Role role : Role.values()) {
+                if (token.roles().contains(role.name())) {
+                    mask |= role.bit();
+                }
+            }
+        }
+        return new CustomUserDetails(token.subject(), token.username(), mask, token.version());
+    }
 
-    public CustomUserDetails(User user) {
-        this.user = user;
-        logger.info("CustomUserDetails - Instantiated for user ID: {}", user.getId());
+    // Returns true if the user has the role
+    public boolean hasRole(Role role) {
+        return role.isIn(roles);
     }
 
+    // Maps the roles to Spring Security authorities, e.g. ADMIN to ROLE_ADMIN
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        logger.info("CustomUserDetails - Fetching authorities for user ID: {}", user.getId());
-        // Return authorities based on the user’s roles (for now, it’s empty, can be populated later)
-        return Collections.emptyList();
+        return AUTHORITIES.get(roles & (AUTHORITIES.size() - 1));
     }
 
+    // The password hash is never kept in the principal; tokens, not passwords, authenticate requests
     @Override
     public String getPassword() {
-        logger.debug("CustomUserDetails - Fetching password hash for user ID: {}", user.getId());
-        return user.getPasswordHash();
+        return null;
     }
 
     @Override
     public String getUsername() {
-        logger.debug("CustomUserDetails - Fetching username for user ID: {}", user.getId());
-        return user.getUsername();
+        return username;
     }
 
     @Override
     public boolean isAccountNonExpired() {
-        logger.debug("CustomUserDetails - Checking if account is non-expired for user ID: {}", user.getId());
         return true;
     }
 
     @Override
     public boolean isAccountNonLocked() {
-        logger.debug("CustomUserDetails - Checking if account is non-locked for user ID: {}", user.getId());
         return true;
     }
 
     @Override
     public boolean isCredentialsNonExpired() {
-        logger.debug("CustomUserDetails - Checking if credentials are non-expired for user ID: {}", user.getId());
         return true;
     }
 
     @Override
     public boolean isEnabled() {
-        logger.debug("CustomUserDetails - Checking if account is enabled for user ID: {}", user.getId());
-        // Modify if you want to enable/disable based on certain user attributes.
         return true;
     }
+
+    private static List<List<GrantedAuthority>> authoritiesByMask() {
+        Role[] roles = Role.values();
+        List<List<GrantedAuthority>> authorities = new ArrayList<>(1 << roles.length);
+        for (int mask = 0; mask < 1 << roles.length; mask++) {
+            List<GrantedAuthority> granted = new ArrayList<>();
+            for (Role role : roles) {
+                if (role.isIn(mask)) {
+                    granted.add(new SimpleGrantedAuthority("ROLE_" + role.name()));
+                }
+            }
+            authorities.add(List.copyOf(granted));
+        }
+        return List.copyOf(authorities);
+    }
 }
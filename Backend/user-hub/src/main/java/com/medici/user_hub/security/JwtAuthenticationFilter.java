@@ -2,12 +2,13 @@ package com.medici.user_hub.security;
 
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.service.JwtService;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.slf4j.Logger;
@@ -30,6 +31,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private TokenService tokenService;
+
+    // Build the authentication from the token's claims alone, without loading the user from MongoDB
+    @Value("${jwt.statelessAuthentication:false}")
+    private boolean statelessAuthentication;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
@@ -37,6 +45,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String header = request.getHeader("Authorization");
         String token = null;
         String userId = null;
+        VerifiedToken authenticatedToken = null;
 
         // Check for Bearer token in Authorization header
         if (header != null && header.startsWith("Bearer ")) {
@@ -44,8 +53,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             logger.info("JwtAuthenticationFilter - Extracted JWT token from Authorization header");
 
             try {
-                userId = jwtService.validateTokenAndGetUserId(token);
-                logger.info("JwtAuthenticationFilter - Token validated for user ID: {}", userId);
+                VerifiedToken verifiedToken = jwtService.verify(token);
+                if (!verifiedToken.isAccessToken()) {
+                    logger.warn("JwtAuthenticationFilter - Rejected {} token used as bearer token", verifiedToken.type());
+                } else if (tokenService.isTokenIdBlacklisted(verifiedToken.id(), verifiedToken.expiresAt())) {
+                    logger.warn("JwtAuthenticationFilter - Rejected revoked token {}", verifiedToken.id());
+                } else if (!tokenService.isTokenVersionCurrent(verifiedToken)) {
+                    logger.warn("JwtAuthenticationFilter - Rejected token {} issued before the user's tokens were revoked", verifiedToken.id());
+                } else {
+                    // Share the verified claims with the rest of the request so nothing parses the token again
+                    request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, verifiedToken);
+                    authenticatedToken = verifiedToken;
+                    userId = verifiedToken.subject();
+                    logger.info("JwtAuthenticationFilter - Token validated for user ID: {}", userId);
+                }
             } catch (Exception e) {
                 logger.error("JwtAuthenticationFilter - Invalid JWT token", e);
             }
@@ -54,11 +75,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         // Set up the security context if the userId is valid and the user is not already authenticated
-        if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null
+                && statelessAuthentication && authenticatedToken.hasRoles()) {
+            // Roles and account changes bump the token version, which was checked above, so the claims are current
+            CustomUserDetails principal = CustomUserDetails.of(authenticatedToken);
+            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                    principal, null, principal.getAuthorities());
+            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            logger.info("JwtAuthenticationFilter - Security context set from token claims for user ID: {}", userId);
+        } else if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                UserDetails userDetails = userService.loadUserByUsername(userId); // Throws ResourceNotFoundException if user not found
+                // Throws ResourceNotFoundException if user not found
+                CustomUserDetails principal = userService.loadPrincipal(userId, authenticatedToken.version());
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
+                        principal, null, principal.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authentication);
                 logger.info("JwtAuthenticationFilter - Security context set for user ID: {}", userId);
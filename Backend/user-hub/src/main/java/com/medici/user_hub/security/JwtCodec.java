@@ -0,0 +1,468 @@
+package com.medici.user_hub.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.SignatureException;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Specialized HS512 JWT encoder/decoder for the fixed claim set issued by this service
+ * ({@code sub}, {@code username}, {@code type}, {@code fam}, {@code jti}, {@code roles}, {@code ver}, {@code iat}, {@code exp}).
+ * The header of each key is encoded once, claims are written straight into a pooled byte buffer
+ * and signed with a pooled {@link Mac}, so issuing a token allocates little beyond the result string.
+ * The pools are shared by all threads rather than per thread, so reuse holds with virtual threads too.
+ * Tokens are standard compact JWS and remain verifiable by jjwt and any other JWT library; tokens
+ * that do not carry one of our pre-encoded headers are left to jjwt by {@link #decode} returning null.
+ */
+@Component
+public class JwtCodec {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA512";
+    private static final int SIGNATURE_BYTES = 64;
+    private static final int SIGNATURE_CHARS = 86; // Base64url length of 64 bytes without padding
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64URL_DECODE = new byte[128];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Pool<Buffers> BUFFERS = new Pool<>(Pool.DEFAULT_CAPACITY, Buffers::new);
+
+    static {
+        Arrays.fill(BASE64URL_DECODE, (byte) -1);
+        for (int i = 0; i < BASE64URL.length; i++) {
+            BASE64URL_DECODE[BASE64URL[i]] = (byte) i;
+        }
+    }
+
+    private final ConcurrentMap<String, KeyCodec> keyCodecs = new ConcurrentHashMap<>();
+
+    // Returns true if tokens for this key can be issued and verified by the codec
+    public boolean supports(JwtKeyRegistry.SigningKey key) {
+        return key.algorithm() == SignatureAlgorithm.HS512;
+    }
+
+    // Issues a signed token without a jti claim
+    public String encode(JwtKeyRegistry.SigningKey key, String subject, String username, String type,
+                         long version, String family, Collection<String> roles, long issuedAt, long expiresAt) {
+        return encode(key, subject, username, type, version, family, null, roles, issuedAt, expiresAt);
+    }
+
+    /**
+     * Issues a signed token.
+     *
+     * @param key       An HS512 key from the registry
+     * @param subject   The user ID
+     * @param username  The username, omitted when null
+     * @param type      The token type
+     * @param version   The user's current token version
+     * @param family    The refresh token family, omitted when null
+     * @param jwtId     A unique token identifier, omitted when null
+     * @param roles     The user's roles, omitted when null
+     * @param issuedAt  Issue time in epoch milliseconds
+     * @param expiresAt Expiration time in epoch milliseconds
+     * @return The compact JWT
+     */
+    public String encode(JwtKeyRegistry.SigningKey key, String subject, String username, String type, long version,
+                         String family, String jwtId, Collection<String> roles, long issuedAt, long expiresAt) {
+        KeyCodec keyCodec = keyCodec(key);
+        Buffers buffers = BUFFERS.acquire();
+        try {
+            return encode(keyCodec, buffers, subject, username, type, version, family, jwtId, roles, issuedAt, expiresAt);
+        } finally {
+            BUFFERS.release(buffers);
+        }
+    }
+
+    private static String encode(KeyCodec keyCodec, Buffers buffers, String subject, String username, String type, long version,
+                                 String family, String jwtId, Collection<String> roles, long issuedAt, long expiresAt) {
+        ByteArray json = buffers.json.reset();
+        json.append('{');
+        boolean first = writeStringClaim(json, "sub", subject, true);
+        first = writeStringClaim(json, "username", username, first);
+        first = writeStringClaim(json, "type", type, first);
+        first = writeStringClaim(json, VerifiedToken.FAMILY_CLAIM, family, first);
+        first = writeStringClaim(json, "jti", jwtId, first);
+        first = writeArrayClaim(json, VerifiedToken.ROLES_CLAIM, roles, first);
+        writeNumberClaim(json, VerifiedToken.VERSION_CLAIM, version, first);
+        writeNumberClaim(json, "iat", issuedAt / 1000, false);
+        writeNumberClaim(json, "exp", expiresAt / 1000, false);
+        json.append('}');
+
+        ByteArray out = buffers.token.reset();
+        out.ensureCapacity(keyCodec.headerPrefix.length + base64Length(json.length) + 1 + SIGNATURE_CHARS);
+        out.append(keyCodec.headerPrefix);
+        out.length = encodeBase64Url(json.bytes, json.length, out.bytes, out.length);
+
+        keyCodec.sign(out.bytes, out.length, buffers.signature);
+
+        out.append('.');
+        out.length = encodeBase64Url(buffers.signature, SIGNATURE_BYTES, out.bytes, out.length);
+        return new String(out.bytes, 0, out.length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Verifies a token issued by {@link #encode} and reads its claims.
+     *
+     * @param token   The compact JWT
+     * @param tokenId The token ID from {@link TokenIds#of(String)}
+     * @param keys    The keys currently accepted for verification
+     * @return The verified token, or null if the token was not issued in this codec's format
+     * @throws SignatureException if the signature does not match
+     * @throws ExpiredJwtException if the token has expired
+     * @throws MalformedJwtException if the claims cannot be read
+     */
+    public VerifiedToken decode(String token, String tokenId, Collection<JwtKeyRegistry.SigningKey> keys) {
+        KeyCodec keyCodec = null;
+        for (JwtKeyRegistry.SigningKey key : keys) {
+            if (supports(key)) {
+                KeyCodec candidate = keyCodec(key);
+                if (token.startsWith(candidate.headerPrefixString)) {
+                    keyCodec = candidate;
+                    break;
+                }
+            }
+        }
+        int signatureStart = token.lastIndexOf('.') + 1;
+        if (keyCodec == null || signatureStart <= keyCodec.headerPrefix.length) {
+            return null;
+        }
+        Buffers buffers = BUFFERS.acquire();
+        try {
+            return decode(keyCodec, buffers, token, tokenId, signatureStart);
+        } finally {
+            BUFFERS.release(buffers);
+        }
+    }
+
+    private static VerifiedToken decode(KeyCodec keyCodec, Buffers buffers, String token, String tokenId,
+                                        int signatureStart) {
+        int signedLength = signatureStart - 1;
+        ByteArray signed = buffers.token.reset();
+        signed.ensureCapacity(signedLength);
+        for (int i = 0; i < signedLength; i++) {
+            char c = token.charAt(i);
+            if (c > 0x7f) {
+                return null;
+            }
+            signed.bytes[i] = (byte) c;
+        }
+
+        keyCodec.sign(signed.bytes, signedLength, buffers.signature);
+
+        // Compare the expected signature with the token's in constant time, without decoding it
+        if (token.length() - signatureStart != SIGNATURE_CHARS) {
+            throw new SignatureException("JWT signature does not match locally computed signature");
+        }
+        byte[] expected = buffers.expectedSignature;
+        encodeBase64Url(buffers.signature, SIGNATURE_BYTES, expected, 0);
+        int diff = 0;
+        for (int i = 0; i < SIGNATURE_CHARS; i++) {
+            diff |= expected[i] ^ token.charAt(signatureStart + i);
+        }
+        if (diff != 0) {
+            throw new SignatureException("JWT signature does not match locally computed signature");
+        }
+
+        ByteArray json = buffers.json.reset();
+        json.ensureCapacity(signedLength);
+        json.length = decodeBase64Url(signed.bytes, keyCodec.headerPrefix.length, signedLength, json.bytes);
+        return readClaims(json, tokenId);
+    }
+
+    // Reads the claim set of a verified payload
+    private static VerifiedToken readClaims(ByteArray json, String tokenId) {
+        String subject = null;
+        String username = null;
+        String type = null;
+        long version = 0;
+        String family = null;
+        List<String> roles = null;
+        long issuedAt = 0;
+        long expiresAt = -1;
+        try (JsonParser parser = JSON_FACTORY.createParser(json.bytes, 0, json.length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new MalformedJwtException("JWT payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "sub" -> subject = parser.getValueAsString();
+                    case "username" -> username = parser.getValueAsString();
+                    case "type" -> type = parser.getValueAsString();
+                    case VerifiedToken.VERSION_CLAIM -> version = parser.getValueAsLong();
+                    case VerifiedToken.FAMILY_CLAIM -> family = parser.getValueAsString();
+                    case VerifiedToken.ROLES_CLAIM -> roles = readStringArray(parser, value);
+                    case "iat" -> issuedAt = parser.getValueAsLong() * 1000;
+                    case "exp" -> expiresAt = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() * 1000 : -1;
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new MalformedJwtException("Unable to read JWT claims", e);
+        }
+        if (expiresAt < 0) {
+            throw new MalformedJwtException("JWT has no expiration");
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            throw new ExpiredJwtException(null, null, "JWT expired at " + expiresAt);
+        }
+        return new VerifiedToken(tokenId, subject, type, username, version, family, roles, issuedAt, expiresAt);
+    }
+
+    // Reads an array of strings; anything else is skipped and read as absent
+    private static List<String> readStringArray(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> values = new ArrayList<>(2);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return List.copyOf(values);
+    }
+
+    private KeyCodec keyCodec(JwtKeyRegistry.SigningKey key) {
+        return keyCodecs.computeIfAbsent(key.kid(), kid -> new KeyCodec(key));
+    }
+
+    // Writes ,"name":"value" (without the comma for the first claim); null values are omitted like jjwt does
+    private static boolean writeStringClaim(ByteArray json, String name, String value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+        writeName(json, name, first);
+        writeString(json, value);
+        return false;
+    }
+
+    // Writes ,"name":["a","b"] (without the comma for the first claim); null values are omitted
+    private static boolean writeArrayClaim(ByteArray json, String name, Collection<String> values, boolean first) {
+        if (values == null) {
+            return first;
+        }
+        writeName(json, name, first);
+        json.append('[');
+        boolean firstValue = true;
+        for (String value : values) {
+            if (!firstValue) {
+                json.append(',');
+            }
+            writeString(json, value);
+            firstValue = false;
+        }
+        json.append(']');
+        return false;
+    }
+
+    private static void writeString(ByteArray json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+                json.append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                // Escape control and non-ASCII characters so the payload stays plain ASCII
+                json.append('\\');
+                json.append('u');
+                json.append(HEX[(c >> 12) & 0xf]);
+                json.append(HEX[(c >> 8) & 0xf]);
+                json.append(HEX[(c >> 4) & 0xf]);
+                json.append(HEX[c & 0xf]);
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void writeNumberClaim(ByteArray json, String name, long value, boolean first) {
+        writeName(json, name, first);
+        String digits = Long.toString(value);
+        for (int i = 0; i < digits.length(); i++) {
+            json.append(digits.charAt(i));
+        }
+    }
+
+    private static void writeName(ByteArray json, String name, boolean first) {
+        if (!first) {
+            json.append(',');
+        }
+        json.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            json.append(name.charAt(i));
+        }
+        json.append('"');
+        json.append(':');
+    }
+
+    private static int base64Length(int length) {
+        return (length * 4 + 2) / 3;
+    }
+
+    // Base64url-encodes src[0, length) into dst at offset, without padding; returns the new end offset
+    private static int encodeBase64Url(byte[] src, int length, byte[] dst, int offset) {
+        int i = 0;
+        int out = offset;
+        for (; i + 2 < length; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[out++] = BASE64URL[bits >>> 18];
+            dst[out++] = BASE64URL[(bits >>> 12) & 0x3f];
+            dst[out++] = BASE64URL[(bits >>> 6) & 0x3f];
+            dst[out++] = BASE64URL[bits & 0x3f];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xff) << 16;
+            dst[out++] = BASE64URL[bits >>> 18];
+            dst[out++] = BASE64URL[(bits >>> 12) & 0x3f];
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            dst[out++] = BASE64URL[bits >>> 18];
+            dst[out++] = BASE64URL[(bits >>> 12) & 0x3f];
+            dst[out++] = BASE64URL[(bits >>> 6) & 0x3f];
+        }
+        return out;
+    }
+
+    // Decodes unpadded Base64url src[from, to) into dst; returns the decoded length
+    private static int decodeBase64Url(byte[] src, int from, int to, byte[] dst) {
+        int out = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            byte value = BASE64URL_DECODE[src[i]];
+            if (value < 0) {
+                throw new MalformedJwtException("JWT payload is not valid Base64url");
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                dst[out++] = (byte) (bits >> 16);
+                dst[out++] = (byte) (bits >> 8);
+                dst[out++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1) {
+            throw new MalformedJwtException("JWT payload is not valid Base64url");
+        } else if (count == 2) {
+            dst[out++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            dst[out++] = (byte) (bits >> 10);
+            dst[out++] = (byte) (bits >> 2);
+        }
+        return out;
+    }
+
+    // Pre-encoded header and pooled MACs of one key
+    private static final class KeyCodec {
+
+        private final String headerPrefixString;
+        private final byte[] headerPrefix;
+        private final Mac prototype;
+        private final Pool<Mac> macs;
+
+        private KeyCodec(JwtKeyRegistry.SigningKey key) {
+            String header = "{\"kid\":\"" + key.kid() + "\",\"alg\":\"" + SignatureAlgorithm.HS512.getValue() + "\"}";
+            byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+            byte[] prefix = new byte[base64Length(headerBytes.length) + 1];
+            int end = encodeBase64Url(headerBytes, headerBytes.length, prefix, 0);
+            prefix[end] = '.';
+            this.headerPrefix = prefix;
+            this.headerPrefixString = new String(prefix, StandardCharsets.US_ASCII);
+            try {
+                this.prototype = Mac.getInstance(HMAC_ALGORITHM);
+                this.prototype.init(key.key());
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize " + HMAC_ALGORITHM, e);
+            }
+            this.macs = new Pool<>(Pool.DEFAULT_CAPACITY, this::copyPrototype);
+        }
+
+        // Cloning the initialized prototype skips the provider lookup and key setup of a new Mac
+        private Mac copyPrototype() {
+            try {
+                synchronized (prototype) {
+                    return (Mac) prototype.clone();
+                }
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(HMAC_ALGORITHM + " cannot be cloned", e);
+            }
+        }
+
+        // Writes the HMAC of the first length bytes of input to output
+        private void sign(byte[] input, int length, byte[] output) {
+            Mac mac = macs.acquire();
+            try {
+                mac.update(input, 0, length);
+                mac.doFinal(output, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException("HMAC output buffer too small", e);
+            }
+            macs.release(mac);
+        }
+    }
+
+    // Scratch space reused across calls
+    private static final class Buffers {
+        private final ByteArray json = new ByteArray(256);
+        private final ByteArray token = new ByteArray(512);
+        private final byte[] signature = new byte[SIGNATURE_BYTES];
+        private final byte[] expectedSignature = new byte[SIGNATURE_CHARS];
+    }
+
+    // Minimal growable byte array
+    private static final class ByteArray {
+        private byte[] bytes;
+        private int length;
+
+        private ByteArray(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private ByteArray reset() {
+            length = 0;
+            return this;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        private void append(int b) {
+            ensureCapacity(length + 1);
+            bytes[length++] = (byte) b;
+        }
+
+        private void append(byte[] src) {
+            ensureCapacity(length + src.length);
+            System.arraycopy(src, 0, bytes, length, src.length);
+            length += src.length;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.medici.user_hub.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the keys used to sign and verify JWTs.
+ * Secrets are decoded once, each key gets its own immutable parser, and several keys can be
+ * active for verification at once so secrets can be rotated without dropping live sessions.
+ * With {@code jwt.signingAlgorithm=ES256} new tokens are signed with an EC P-256 key whose public
+ * half is published as a JWK so other services can verify tokens locally; the HMAC secrets stay
+ * registered for verification so tokens issued before the switch remain valid.
+ */
+@Component
+public class JwtKeyRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeyRegistry.class);
+    private static final ObjectMapper HEADER_MAPPER = new ObjectMapper();
+    private static final int KID_DIGEST_BYTES = 9;
+
+    /**
+     * A decoded signing key together with its key id and the parser that verifies tokens signed with it.
+     * For asymmetric keys {@code key} is the private key and {@code publicKey} its public half;
+     * for HMAC keys {@code publicKey} is null.
+     */
+    public record SigningKey(String kid, SignatureAlgorithm algorithm, Key key, PublicKey publicKey, JwtParser parser) {
+
+        // Returns true if the key can be published for verification by other services
+        public boolean isAsymmetric() {
+            return publicKey != null;
+        }
+    }
+
+    // Immutable view of the registry, swapped atomically on every change
+    private record Snapshot(SigningKey active, Map<String, SigningKey> keys, List<Map<String, Object>> jwks) {
+
+        Snapshot(SigningKey active, Map<String, SigningKey> keys) {
+            this(active, Collections.unmodifiableMap(keys), buildJwks(keys.values()));
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    public JwtKeyRegistry(String primarySecret, String[] previousSecrets) {
+        this(primarySecret, previousSecrets, SignatureAlgorithm.HS512.getValue(), "", "", false);
+    }
+
+    @Autowired
+    public JwtKeyRegistry(@Value("${jwt.secret}") String primarySecret,
+                          @Value("${jwt.previousSecrets:}") String[] previousSecrets,
+                          @Value("${jwt.signingAlgorithm:HS512}") String signingAlgorithm,
+                          @Value("${jwt.ecPrivateKey:}") String ecPrivateKey,
+                          @Value("${jwt.ecPublicKey:}") String ecPublicKey,
+                          @Value("${jwt.allowEphemeralEcKey:false}") boolean allowEphemeralEcKey) {
+        Map<String, SigningKey> keys = new LinkedHashMap<>();
+        SigningKey primary = createKey(primarySecret);
+        SigningKey active = switch (SignatureAlgorithm.forName(signingAlgorithm)) {
+            case HS512 -> primary;
+            case ES256 -> createEcKey(ecPrivateKey, ecPublicKey, allowEphemeralEcKey);
+            default -> throw new IllegalArgumentException("Unsupported JWT signing algorithm: " + signingAlgorithm);
+        };
+        keys.put(active.kid(), active);
+        keys.putIfAbsent(primary.kid(), primary);
+        for (String secret : previousSecrets) {
+            if (secret != null && !secret.isBlank()) {
+                SigningKey previous = createKey(secret.trim());
+                keys.putIfAbsent(previous.kid(), previous);
+            }
+        }
+        this.snapshot = new Snapshot(active, keys);
+        logger.info("JwtKeyRegistry - Initialized with active {} key {} and {} verification key(s)",
+                active.algorithm(), active.kid(), keys.size());
+    }
+
+    // Returns the key used to sign new tokens
+    public SigningKey activeKey() {
+        return snapshot.active();
+    }
+
+    // Returns every key currently accepted for verification, active key first
+    public Collection<SigningKey> verificationKeys() {
+        return snapshot.keys().values();
+    }
+
+    /**
+     * Returns the public keys accepted for verification in JSON Web Key format (RFC 7517).
+     * The list is built once per registry change, so serving it costs no key encoding.
+     *
+     * @return Immutable list of JWKs, empty when only HMAC keys are registered
+     */
+    public List<Map<String, Object>> publicJwks() {
+        return snapshot.jwks();
+    }
+
+    /**
+     * Resolves the key a token was signed with from its {@code kid} header.
+     * Tokens issued before key ids were introduced carry no {@code kid}; they were always HMAC-signed
+     * and resolve to the first registered HMAC key.
+     *
+     * @param token The compact JWT
+     * @return The matching signing key
+     * @throws JwtException if the header cannot be read or names an unknown key
+     */
+    public SigningKey resolve(String token) {
+        Snapshot current = snapshot;
+        String kid = readKeyId(token);
+        if (kid == null) {
+            return current.keys().values().stream()
+                    .filter(key -> !key.isAsymmetric())
+                    .findFirst()
+                    .orElseThrow(() -> new JwtException("JWT is missing its key id"));
+        }
+        SigningKey key = current.keys().get(kid);
+        if (key == null) {
+            throw new JwtException("Unknown signing key id: " + kid);
+        }
+        return key;
+    }
+
+    /**
+     * Adds a secret to the set of verification keys without changing the signing key.
+     *
+     * @param secret Base64-encoded HMAC secret
+     * @return The key id assigned to the secret
+     */
+    public synchronized String register(String secret) {
+        SigningKey key = createKey(secret);
+        Snapshot current = snapshot;
+        if (!current.keys().containsKey(key.kid())) {
+            Map<String, SigningKey> keys = new LinkedHashMap<>(current.keys());
+            keys.put(key.kid(), key);
+            snapshot = new Snapshot(current.active(), keys);
+            logger.info("JwtKeyRegistry - Registered verification key {}", key.kid());
+        }
+        return key.kid();
+    }
+
+    /**
+     * Makes a registered key the signing key. Tokens signed with the previous key stay valid
+     * until that key is retired.
+     *
+     * @param kid The id of a registered key
+     * @throws IllegalArgumentException if the key is not registered
+     */
+    public synchronized void activate(String kid) {
+        Snapshot current = snapshot;
+        SigningKey key = current.keys().get(kid);
+        if (key == null) {
+            throw new IllegalArgumentException("Unknown signing key id: " + kid);
+        }
+        Map<String, SigningKey> keys = new LinkedHashMap<>();
+        keys.put(kid, key);
+        keys.putAll(current.keys());
+        snapshot = new Snapshot(key, keys);
+        logger.info("JwtKeyRegistry - Activated signing key {}", kid);
+    }
+
+    /**
+     * Stops accepting tokens signed with a key.
+     *
+     * @param kid The id of a registered key
+     * @throws IllegalArgumentException if the key is the active signing key
+     */
+    public synchronized void retire(String kid) {
+        Snapshot current = snapshot;
+        if (current.active().kid().equals(kid)) {
+            throw new IllegalArgumentException("Cannot retire the active signing key: " + kid);
+        }
+        if (current.keys().containsKey(kid)) {
+            Map<String, SigningKey> keys = new LinkedHashMap<>(current.keys());
+            keys.remove(kid);
+            snapshot = new Snapshot(current.active(), keys);
+            logger.info("JwtKeyRegistry - Retired signing key {}", kid);
+        }
+    }
+
+    // Decodes a Base64 secret into an HS512 key and builds its parser
+    private static SigningKey createKey(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("JWT secret cannot be null or empty");
+        }
+        byte[] keyBytes = Base64.getDecoder().decode(secret.getBytes(StandardCharsets.UTF_8));
+        Key key = new SecretKeySpec(keyBytes, SignatureAlgorithm.HS512.getJcaName());
+        JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+        return new SigningKey(keyIdFor(keyBytes), SignatureAlgorithm.HS512, key, null, parser);
+    }
+
+    // Decodes a Base64 PKCS#8/X.509 EC P-256 key pair, or generates one when none is configured and that is allowed
+    private static SigningKey createEcKey(String privateKeyBase64, String publicKeyBase64, boolean allowEphemeral) {
+        PrivateKey privateKey;
+        PublicKey publicKey;
+        if (privateKeyBase64 == null || privateKeyBase64.isBlank()) {
+            if (!allowEphemeral) {
+                // Every node would sign with its own key, rejecting the others' tokens and dropping all sessions on restart
+                throw new IllegalStateException("jwt.signingAlgorithm=ES256 requires jwt.ecPrivateKey and jwt.ecPublicKey; "
+                        + "set jwt.allowEphemeralEcKey=true to generate a per-node key for development or tests");
+            }
+            logger.warn("JwtKeyRegistry - No jwt.ecPrivateKey configured, generating an ephemeral ES256 key; "
+                    + "tokens will not verify on other nodes or after a restart");
+            KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.ES256);
+            privateKey = keyPair.getPrivate();
+            publicKey = keyPair.getPublic();
+        } else {
+            try {
+                KeyFactory keyFactory = KeyFactory.getInstance("EC");
+                privateKey = keyFactory.generatePrivate(
+                        new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKeyBase64.trim())));
+                publicKey = keyFactory.generatePublic(
+                        new X509EncodedKeySpec(Base64.getDecoder().decode(publicKeyBase64.trim())));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid ES256 key pair in jwt.ecPrivateKey/jwt.ecPublicKey", e);
+            }
+        }
+        JwtParser parser = Jwts.parserBuilder().setSigningKey(publicKey).build();
+        return new SigningKey(keyIdFor(publicKey.getEncoded()), SignatureAlgorithm.ES256, privateKey, publicKey, parser);
+    }
+
+    // Builds the JWK representation of every asymmetric key
+    private static List<Map<String, Object>> buildJwks(Collection<SigningKey> keys) {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        for (SigningKey key : keys) {
+            if (key.publicKey() instanceof ECPublicKey ecPublicKey) {
+                Map<String, Object> jwk = new LinkedHashMap<>();
+                jwk.put("kty", "EC");
+                jwk.put("crv", "P-256");
+                jwk.put("x", encodeCoordinate(ecPublicKey.getW().getAffineX()));
+                jwk.put("y", encodeCoordinate(ecPublicKey.getW().getAffineY()));
+                jwk.put("kid", key.kid());
+                jwk.put("alg", key.algorithm().getValue());
+                jwk.put("use", "sig");
+                jwks.add(Collections.unmodifiableMap(jwk));
+            }
+        }
+        return Collections.unmodifiableList(jwks);
+    }
+
+    // Encodes a P-256 coordinate as an unsigned, left-padded 32-byte Base64url value
+    private static String encodeCoordinate(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, fixed.length);
+        System.arraycopy(bytes, bytes.length - length, fixed, fixed.length - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    // Derives a stable key id from the key material so every node computes the same id for the same secret
+    static String keyIdFor(byte[] keyBytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyBytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, KID_DIGEST_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Reads the kid header without verifying the token; verification happens in the resolved parser
+    private static String readKeyId(String token) {
+        int headerEnd = token.indexOf('.');
+        if (headerEnd <= 0) {
+            throw new MalformedJwtException("JWT is missing its header");
+        }
+        try {
+            byte[] header = Base64.getUrlDecoder().decode(token.substring(0, headerEnd));
+            JsonNode kid = HEADER_MAPPER.readTree(header).get("kid");
+            return kid != null && kid.isTextual() ? kid.asText() : null;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MalformedJwtException("Unable to read JWT header", e);
+        }
+    }
+}
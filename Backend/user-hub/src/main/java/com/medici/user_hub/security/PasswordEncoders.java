@@ -0,0 +1,84 @@
+package com.medici.user_hub.security;
+
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.util.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the encoder for passwords and security answers, and picks its BCrypt cost for this hardware.
+ * Hashes are stored with an algorithm prefix such as {@code {bcrypt}}, and BCrypt hashes also carry
+ * their cost, so the algorithm or cost can change without invalidating stored hashes. Hashes from
+ * before the prefix was introduced are plain BCrypt and still match; they are reported as needing an
+ * upgrade, like hashes made with a lower cost or another algorithm.
+ */
+public final class PasswordEncoders {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordEncoders.class);
+    private static final String BCRYPT = "bcrypt";
+    private static final String CALIBRATION_SECRET = "calibration-password";
+    private static final int CALIBRATION_RUNS = 3;
+
+    private PasswordEncoders() {
+    }
+
+    /**
+     * Creates a delegating encoder that hashes with BCrypt and can also verify PBKDF2 hashes, and Argon2
+     * hashes when Bouncy Castle is on the classpath.
+     *
+     * @param bcryptStrength BCrypt cost of new hashes, between 4 and 31
+     * @return The encoder
+     */
+    public static PasswordEncoder create(int bcryptStrength) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, bcrypt);
+        encoders.put("pbkdf2@SpringSecurity_v5_8", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        if (ClassUtils.isPresent("org.bouncycastle.crypto.generators.Argon2BytesGenerator", PasswordEncoders.class.getClassLoader())) {
+            encoders.put("argon2@SpringSecurity_v5_8", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        }
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(BCRYPT, encoders);
+        // Hashes stored before the prefix was introduced are plain BCrypt
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
+    }
+
+    /**
+     * Finds the highest BCrypt cost whose hash takes no longer than the target on this machine. Each cost
+     * step doubles the work, so the time of the minimum cost is measured and extrapolated.
+     *
+     * @param targetMs    Target time of one hash in milliseconds
+     * @param minStrength Lowest cost to return, whatever the hardware
+     * @param maxStrength Highest cost to return
+     * @return The BCrypt cost to hash with
+     */
+    public static int calibrateBCryptStrength(long targetMs, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(minStrength);
+        encoder.encode(CALIBRATION_SECRET); // Warm up before measuring
+        long[] runs = new long[CALIBRATION_RUNS];
+        for (int i = 0; i < runs.length; i++) {
+            long start = System.nanoTime();
+            encoder.encode(CALIBRATION_SECRET);
+            runs[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(runs);
+        double hashMs = runs[runs.length / 2] / 1_000_000.0;
+
+        int strength = minStrength;
+        while (strength < maxStrength && hashMs * 2 <= targetMs) {
+            strength++;
+            hashMs *= 2;
+        }
+        logger.info("PasswordEncoders - Calibrated BCrypt cost {} at about {} ms per hash for a {} ms target",
+                strength, Math.round(hashMs), targetMs);
+        return strength;
+    }
+}
@@ -0,0 +1,35 @@
+package com.medici.user_hub.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Small bounded pool of objects that are costly to create and not thread-safe, such as an initialized
+ * {@link javax.crypto.Mac}. Unlike a ThreadLocal it keeps reusing instances when every request runs on
+ * a new virtual thread. At most {@code capacity} idle instances are kept; when none is idle a new one is
+ * created, and instances released into a full pool are dropped.
+ */
+final class Pool<T> {
+
+    // Hashing never blocks, so no more instances are in use at once than there are carrier threads
+    static final int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    Pool(int capacity, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    // Takes an idle instance, or creates one
+    T acquire() {
+        T instance = idle.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    // Returns an instance in its reset state for reuse
+    void release(T instance) {
+        idle.offer(instance);
+    }
+}
@@ -0,0 +1,246 @@
+package com.medici.user_hub.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process copy of the revoked token IDs held in Redis, so checking a token that has not been
+ * revoked costs no network round trip. Revocations made on any node arrive on {@link #CHANNEL}
+ * and the full set is reloaded at startup and periodically by
+ * {@link com.medici.user_hub.service.TokenService#syncRevokedTokens()}.
+ * <p>
+ * Every revoked ID goes into a {@link TimeWindowedBloomFilter}, which answers the common
+ * not-revoked case in fixed memory, and into a size-bounded exact cache, which settles the few
+ * possible hits. Until a load has succeeded the cache reports itself as not synced and callers
+ * must ask Redis instead; if the exact cache drops a live entry, only possible hits go to Redis.
+ * Losing the subscription, or the Redis connection behind it, may lose revocations, so it also marks
+ * the cache as not synced until a snapshot read after the loss has been loaded.
+ * Lookup outcomes are exported as {@code jwt.revocation-filter.*} metrics, from which the observed
+ * false-positive rate is {@code false-positives / (lookups{result=negative} + false-positives)}.
+ */
+@Component
+public class RevokedTokenCache implements MessageListener, SubscriptionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevokedTokenCache.class);
+    private static final String CACHE_NAME = "jwt.revoked-tokens";
+    private static final String FILTER_METRIC = "jwt.revocation-filter";
+
+    public static final String CHANNEL = "token-revocations";
+
+    private final Cache<String, Long> cache;
+    private final TimeWindowedBloomFilter filter;
+    private final Counter negativeLookups;
+    private final Counter positiveLookups;
+    private final Counter falsePositives;
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean synced;
+    private volatile boolean exact;
+
+    public RevokedTokenCache(@Value("${jwt.revokedTokenCache.maximumSize:1000000}") long maximumSize,
+                             @Value("${jwt.revocationFilter.expectedInsertionsPerWindow:100000}") long expectedInsertionsPerWindow,
+                             @Value("${jwt.revocationFilter.falsePositiveRate:0.001}") double falsePositiveRate,
+                             @Value("${jwt.revocationFilter.windowMs:3600000}") long windowMs,
+                             MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new RevocationExpiry())
+                // Runs as part of the eviction, unlike a removal listener, so isExact() is never true after a live entry is gone
+                .evictionListener((String tokenId, Long expiresAt, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE) {
+                        // A revoked ID was dropped before its token expired, so an exact miss no longer proves anything
+                        sizeEvictions.incrementAndGet();
+                        if (exact) {
+                            exact = false;
+                            logger.warn("RevokedTokenCache - Size bound reached, possible hits fall back to Redis");
+                        }
+                    }
+                })
+                .recordStats()
+                .build();
+        this.filter = new TimeWindowedBloomFilter(expectedInsertionsPerWindow, falsePositiveRate, windowMs);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder(CACHE_NAME + ".synced", this, revoked -> revoked.isSynced() ? 1 : 0).register(meterRegistry);
+        this.negativeLookups = Counter.builder(FILTER_METRIC + ".lookups").tag("result", "negative").register(meterRegistry);
+        this.positiveLookups = Counter.builder(FILTER_METRIC + ".lookups").tag("result", "positive").register(meterRegistry);
+        this.falsePositives = Counter.builder(FILTER_METRIC + ".false-positives").register(meterRegistry);
+        Gauge.builder(FILTER_METRIC + ".expected-fpp", filter, TimeWindowedBloomFilter::expectedFalsePositiveRate)
+                .register(meterRegistry);
+        Gauge.builder(FILTER_METRIC + ".size", filter, TimeWindowedBloomFilter::sizeInBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Returns true if the Bloom filter holds every revocation known to Redis
+    public boolean isSynced() {
+        return synced;
+    }
+
+    // Returns true if contains() is authoritative, i.e. synced and nothing was lost to the size bound
+    public boolean isExact() {
+        return synced && exact;
+    }
+
+    /**
+     * Checks the Bloom filter for a token ID.
+     *
+     * @param tokenId The token ID from {@link TokenIds#of(String)}
+     * @return False only if the token is definitely not revoked; true if it may be, or if the cache is not synced
+     */
+    public boolean mightBeRevoked(String tokenId) {
+        if (!synced) {
+            return true;
+        }
+        if (filter.mightContain(tokenId)) {
+            positiveLookups.increment();
+            return true;
+        }
+        negativeLookups.increment();
+        return false;
+    }
+
+    // Returns true if the token ID is known to be revoked
+    public boolean contains(String tokenId) {
+        return cache.getIfPresent(tokenId) != null;
+    }
+
+    // Records that a possible hit from mightBeRevoked turned out not to be revoked
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Records a revoked token until the token itself expires.
+     *
+     * @param tokenId   The token ID from {@link TokenIds#of(String)}
+     * @param expiresAt Expiration time of the token in epoch milliseconds
+     */
+    public void add(String tokenId, long expiresAt) {
+        if (expiresAt > System.currentTimeMillis()) {
+            filter.put(tokenId, expiresAt);
+            cache.put(tokenId, expiresAt);
+        }
+    }
+
+    // Returns a counter that changes whenever revocations may have been missed; read it before reading a snapshot
+    public long generation() {
+        return generation.get();
+    }
+
+    // Merges a snapshot read after the current generation was taken, e.g. one read synchronously by the caller
+    public void load(Map<String, Long> revokedTokens) {
+        load(revokedTokens, generation());
+    }
+
+    /**
+     * Merges a full snapshot of the revoked token IDs and marks the cache as synced.
+     * Entries are only added, never cleared, so revocations received while the snapshot was read are kept.
+     * The cache becomes exact again only if the whole snapshot fits within the size bound, and synced
+     * only if no revocation may have been missed since the snapshot started to be read.
+     *
+     * @param revokedTokens Token IDs mapped to their expiration time in epoch milliseconds
+     * @param generation    The value of {@link #generation()} taken before the snapshot was read
+     */
+    public synchronized void load(Map<String, Long> revokedTokens, long generation) {
+        long evictionsBefore = sizeEvictions.get();
+        revokedTokens.forEach(this::add);
+        cache.cleanUp(); // Runs pending evictions now, so every one made by this load has been counted
+        if (sizeEvictions.get() == evictionsBefore) {
+            exact = true;
+            // An eviction racing the flag either sees it set and clears it, or is seen here
+            if (sizeEvictions.get() != evictionsBefore) {
+                exact = false;
+            }
+        }
+        if (this.generation.get() != generation) {
+            logger.warn("RevokedTokenCache - Loaded {} revoked tokens, but revocations may have been missed while reading them", revokedTokens.size());
+            return;
+        }
+        synced = true;
+        // A loss signalled while the flag was set is either seen here or clears the flag after it
+        if (this.generation.get() != generation) {
+            synced = false;
+        }
+        logger.info("RevokedTokenCache - Loaded {} revoked tokens", revokedTokens.size());
+    }
+
+    // Makes callers fall back to Redis until the next successful load of a snapshot read after this call
+    public void markUnsynced() {
+        generation.incrementAndGet();
+        if (synced) {
+            synced = false;
+            logger.warn("RevokedTokenCache - Marked as not synced, revocation checks fall back to Redis");
+        }
+    }
+
+    // Formats a revocation for publishing on CHANNEL
+    public static String message(String tokenId, long expiresAt) {
+        return tokenId + ":" + expiresAt;
+    }
+
+    // Receives revocations published by any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        try {
+            add(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            logger.error("RevokedTokenCache - Ignored malformed revocation message: {}", body, e);
+        }
+    }
+
+    // Revocations published before the subscription took effect, at startup or after a lost connection, were not received
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        markUnsynced();
+    }
+
+    // Revocations published while unsubscribed are never received
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+        markUnsynced();
+    }
+
+    // Expires each entry when the revoked token would have expired anyway
+    private static final class RevocationExpiry implements Expiry<String, Long> {
+
+        @Override
+        public long expireAfterCreate(String tokenId, Long expiresAt, long currentTime) {
+            return remainingNanos(expiresAt);
+        }
+
+        @Override
+        public long expireAfterUpdate(String tokenId, Long expiresAt, long currentTime, long currentDuration) {
+            return remainingNanos(expiresAt);
+        }
+
+        @Override
+        public long expireAfterRead(String tokenId, Long expiresAt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        private static long remainingNanos(long expiresAt) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAt - System.currentTimeMillis()));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.medici.user_hub.security;
+
+import com.medici.user_hub.model.Role;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Grants a request if the user has any of a fixed set of roles, checked as one AND of the principal's
+ * role mask with the required mask. Unlike {@code @PreAuthorize} there is no SpEL expression to
+ * evaluate per call, and the decisions are shared constants, so a check allocates nothing.
+ * Authentications whose principal is not a {@link CustomUserDetails} are checked by their authorities.
+ */
+public final class RoleAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private final int requiredRoles;
+    private final List<String> requiredAuthorities;
+
+    private RoleAuthorizationManager(Role... roles) {
+        this.requiredRoles = Role.mask(Arrays.asList(roles));
+        this.requiredAuthorities = Arrays.stream(roles).map(role -> "ROLE_" + role.name()).toList();
+    }
+
+    // Grants users who have at least one of the roles
+    public static RoleAuthorizationManager anyOf(Role... roles) {
+        return new RoleAuthorizationManager(roles);
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return isGranted(authentication.get()) ? GRANTED : DENIED;
+    }
+
+    // Returns true if the authentication holds at least one of the required roles
+    public boolean isGranted(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        if (authentication.getPrincipal() instanceof CustomUserDetails principal) {
+            return (principal.roles() & requiredRoles) != 0;
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (requiredAuthorities.contains(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+package com.medici.user_hub.security;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Bloom filter for keys that stop mattering at a known time, such as IDs of revoked tokens.
+ * Keys are grouped into one {@link BloomFilter} per expiry window, and a window is dropped as a
+ * whole once everything in it has expired, so memory stays proportional to the live keys
+ * instead of growing forever.
+ */
+public class TimeWindowedBloomFilter {
+
+    private final long expectedInsertionsPerWindow;
+    private final double falsePositiveRate;
+    private final long windowMillis;
+    private final ConcurrentNavigableMap<Long, BloomFilter> windows = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param expectedInsertionsPerWindow Number of keys each window is sized for
+     * @param falsePositiveRate           Target false-positive rate of each window
+     * @param windowMillis                Width of an expiry window in milliseconds
+     */
+    public TimeWindowedBloomFilter(long expectedInsertionsPerWindow, double falsePositiveRate, long windowMillis) {
+        if (expectedInsertionsPerWindow <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Bloom filter needs positive insertions and window width and a rate between 0 and 1");
+        }
+        this.expectedInsertionsPerWindow = expectedInsertionsPerWindow;
+        this.falsePositiveRate = falsePositiveRate;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a key until its expiry window has passed. Keys already expired are ignored.
+     *
+     * @param key       The key
+     * @param expiresAt Time in epoch milliseconds after which the key no longer needs to be found
+     */
+    public void put(String key, long expiresAt) {
+        long now = System.currentTimeMillis();
+        if (expiresAt <= now) {
+            return;
+        }
+        expire(now);
+        windows.computeIfAbsent(expiresAt / windowMillis,
+                window -> new BloomFilter(expectedInsertionsPerWindow, falsePositiveRate)).put(key);
+    }
+
+    // Returns false if the key was never added or its window has expired
+    public boolean mightContain(String key) {
+        for (BloomFilter filter : windows.tailMap(currentWindow(System.currentTimeMillis())).values()) {
+            if (filter.mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the false-positive rate expected for a lookup across all live windows
+    public double expectedFalsePositiveRate() {
+        double allNegative = 1;
+        for (BloomFilter filter : windows.tailMap(currentWindow(System.currentTimeMillis())).values()) {
+            allNegative *= 1 - filter.expectedFalsePositiveRate();
+        }
+        return 1 - allNegative;
+    }
+
+    // Returns the memory used by all live windows in bytes
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (BloomFilter filter : windows.values()) {
+            bytes += filter.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    // Drops windows whose keys have all expired
+    public void expire(long now) {
+        windows.headMap(currentWindow(now)).clear();
+    }
+
+    // A window holds keys expiring within it, so it can be dropped once the window has fully passed
+    private long currentWindow(long now) {
+        return now / windowMillis;
+    }
+}
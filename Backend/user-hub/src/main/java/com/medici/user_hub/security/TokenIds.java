@@ -0,0 +1,64 @@
+package com.medici.user_hub.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Derives short, fixed-size identifiers for tokens so raw JWTs never need to be used as keys or logged.
+ * The identifier is the first 128 bits of the token's SHA-256 digest, Base64url-encoded (22 characters).
+ */
+public final class TokenIds {
+
+    private static final int ID_BYTES = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // MessageDigest is not thread-safe, so calls take a copy of this one from a pool
+    private static final MessageDigest SHA_256;
+    private static final Pool<MessageDigest> DIGESTS = new Pool<>(Pool.DEFAULT_CAPACITY, TokenIds::copyDigest);
+
+    static {
+        try {
+            SHA_256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private TokenIds() {
+    }
+
+    /**
+     * Computes the identifier of a token.
+     *
+     * @param token The compact JWT
+     * @return The 22-character token identifier
+     */
+    public static String of(String token) {
+        MessageDigest sha256 = DIGESTS.acquire();
+        byte[] digest = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+        DIGESTS.release(sha256);
+        return ENCODER.encodeToString(Arrays.copyOf(digest, ID_BYTES));
+    }
+
+    // Generates a random identifier of the same size, e.g. for a refresh token family
+    public static String random() {
+        byte[] bytes = new byte[ID_BYTES];
+        RANDOM.nextBytes(bytes);
+        return ENCODER.encodeToString(bytes);
+    }
+
+    private static MessageDigest copyDigest() {
+        try {
+            synchronized (SHA_256) {
+                return (MessageDigest) SHA_256.clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 cannot be cloned", e);
+        }
+    }
+}
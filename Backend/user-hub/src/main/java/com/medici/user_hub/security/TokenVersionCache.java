@@ -0,0 +1,131 @@
+package com.medici.user_hub.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Local cache of the per-user token versions held in Redis, so checking a token's version costs no
+ * network round trip. Version bumps made on any node arrive on {@link #CHANNEL}; entries also expire
+ * after a short time so a missed message cannot keep a stale version alive for long.
+ * Versions only ever move forward: an update never replaces a higher cached version.
+ * <p>
+ * While Redis tracks the version keys for this node (see
+ * {@link com.medici.user_hub.store.TokenVersionTracker}) every change is pushed as an invalidation,
+ * so entries written in that state are kept until invalidated rather than for the short TTL.
+ * Losing the tracking connection flushes the cache, since invalidations may have been missed.
+ */
+@Component
+public class TokenVersionCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionCache.class);
+    private static final String CACHE_NAME = "jwt.token-versions";
+
+    public static final String CHANNEL = "token-versions";
+
+    private final Cache<String, Long> cache;
+    private volatile boolean tracked;
+
+    public TokenVersionCache(@Value("${jwt.tokenVersionCache.maximumSize:100000}") long maximumSize,
+                             @Value("${jwt.tokenVersionCache.ttlMs:30000}") long ttlMs,
+                             MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new VersionExpiry(TimeUnit.MILLISECONDS.toNanos(ttlMs)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached version of a user, loading it on a miss. Concurrent misses for the same user share one load.
+     *
+     * @param userId The user ID
+     * @param loader Reads the current version from Redis
+     * @return The user's current token version
+     */
+    public long get(String userId, Function<String, Long> loader) {
+        return cache.get(userId, loader);
+    }
+
+    // Records a version, keeping the cached one if it is already higher
+    public void update(String userId, long version) {
+        cache.asMap().merge(userId, version, Math::max);
+    }
+
+    // Drops a user's cached version, so the next check reads it again
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    // Drops every cached version
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Switches between pushed invalidations and the TTL. Either way the cache is flushed, since
+     * entries cached under the other mode would otherwise outlive the guarantees of this one.
+     *
+     * @param tracked True once Redis pushes invalidations for every version key, false when that stops
+     */
+    public void setTracked(boolean tracked) {
+        this.tracked = tracked;
+        invalidateAll();
+        logger.info("TokenVersionCache - Version tracking {}", tracked ? "enabled" : "lost, entries expire by TTL");
+    }
+
+    // Formats a version bump for publishing on CHANNEL
+    public static String message(String userId, long version) {
+        return userId + ":" + version;
+    }
+
+    // Receives version bumps published by any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        try {
+            update(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            logger.error("TokenVersionCache - Ignored malformed token version message: {}", body, e);
+        }
+    }
+
+    // Keeps entries until invalidated while tracked, otherwise for the TTL
+    private final class VersionExpiry implements Expiry<String, Long> {
+
+        private final long ttlNanos;
+
+        private VersionExpiry(long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String userId, Long version, long currentTime) {
+            return tracked ? Long.MAX_VALUE : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String userId, Long version, long currentTime, long currentDuration) {
+            return expireAfterCreate(userId, version, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String userId, Long version, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.medici.user_hub.security;
+
+import java.util.List;
+
+/**
+ * Claims of a JWT whose signature and expiry have already been verified.
+ * Produced once per token by {@link com.medici.user_hub.service.JwtService#verify(String)} and shared
+ * with the rest of the request through the {@link #REQUEST_ATTRIBUTE} request attribute.
+ *
+ * @param id        The token ID from {@link TokenIds#of(String)}, safe to use as a key or in logs
+ * @param subject   The user ID the token was issued to
+ * @param type      The token type, either {@link #ACCESS} or {@link #REFRESH}
+ * @param username  The username at the time the token was issued
+ * @param version   The user's token version at the time the token was issued, 0 if the token carries none
+ * @param family    The refresh token family the token belongs to, null for access tokens
+ * @param roles     The user's roles at the time the token was issued, null if the token carries none
+ * @param issuedAt  Issue time in epoch milliseconds
+ * @param expiresAt Expiration time in epoch milliseconds
+ */
+public record VerifiedToken(String id, String subject, String type, String username, long version,
+                            String family, List<String> roles, long issuedAt, long expiresAt) {
+
+    public static final String REQUEST_ATTRIBUTE = "verifiedToken";
+    public static final String ACCESS = "ACCESS";
+    public static final String REFRESH = "REFRESH";
+    public static final String VERSION_CLAIM = "ver";
+    public static final String FAMILY_CLAIM = "fam";
+    public static final String ROLES_CLAIM = "roles";
+
+    // Returns true if this is an access token
+    public boolean isAccessToken() {
+        return ACCESS.equals(type);
+    }
+
+    // Returns true if this is a refresh token
+    public boolean isRefreshToken() {
+        return REFRESH.equals(type);
+    }
+
+    // Returns the milliseconds left before the token expires, never negative
+    public long remainingMillis() {
+        return Math.max(0, expiresAt - System.currentTimeMillis());
+    }
+
+    // Returns true if the token carries the user's roles, so an authentication can be built from it alone
+    public boolean hasRoles() {
+        return roles != null;
+    }
+}
@@ -0,0 +1,89 @@
+package com.medici.user_hub.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size-bounded cache of tokens whose signatures have already been verified, keyed by token ID.
+ * Each entry expires together with its token, so a hit never returns claims of an expired token.
+ * Hit, miss and eviction counts are exported as {@code cache.*} metrics tagged {@code cache=jwt.verified-tokens}.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+    private static final String CACHE_NAME = "jwt.verified-tokens";
+
+    private final Cache<String, VerifiedToken> cache;
+
+    public VerifiedTokenCache(@Value("${jwt.verifiedTokenCache.maximumSize:100000}") long maximumSize,
+                              MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        logger.info("VerifiedTokenCache - Initialized with maximum size {}", maximumSize);
+    }
+
+    /**
+     * Returns the cached claims of a token if it has been verified and has not expired.
+     *
+     * @param tokenId The token ID from {@link TokenIds#of(String)}
+     * @return The verified token, or null on a miss
+     */
+    public VerifiedToken get(String tokenId) {
+        VerifiedToken verifiedToken = cache.getIfPresent(tokenId);
+        if (verifiedToken != null && verifiedToken.remainingMillis() == 0) {
+            cache.invalidate(tokenId);
+            return null;
+        }
+        return verifiedToken;
+    }
+
+    // Caches a freshly verified token until it expires
+    public void put(VerifiedToken verifiedToken) {
+        if (verifiedToken.remainingMillis() > 0) {
+            cache.put(verifiedToken.id(), verifiedToken);
+        }
+    }
+
+    // Drops a token from the cache, e.g. when it is revoked
+    public void invalidate(String tokenId) {
+        cache.invalidate(tokenId);
+    }
+
+    // Drops every cached token, e.g. after a signing key is retired
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    // Expires each entry at its token's own expiration time
+    private static final class TokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String tokenId, VerifiedToken verifiedToken, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(verifiedToken.remainingMillis());
+        }
+
+        @Override
+        public long expireAfterUpdate(String tokenId, VerifiedToken verifiedToken, long currentTime, long currentDuration) {
+            return TimeUnit.MILLISECONDS.toNanos(verifiedToken.remainingMillis());
+        }
+
+        @Override
+        public long expireAfterRead(String tokenId, VerifiedToken verifiedToken, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package com.medici.user_hub.service;
 
+import com.medici.user_hub.dto.TokenPair;
+import com.medici.user_hub.handler.RefreshTokenConflictException;
 import com.medici.user_hub.handler.TokenServiceException;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.security.JwtCodec;
+import com.medici.user_hub.security.JwtKeyRegistry;
+import com.medici.user_hub.security.TokenIds;
+import com.medici.user_hub.security.VerifiedToken;
+import com.medici.user_hub.security.VerifiedTokenCache;
+import com.medici.user_hub.store.TokenStore;
 import io.jsonwebtoken.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-import java.security.Key;
-import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,8 +31,17 @@ public class JwtService {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtService.class);
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    @Autowired
+    private JwtKeyRegistry keyRegistry;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private JwtCodec jwtCodec;
+
+    @Autowired
+    private TokenService tokenService;
 
     @Value("${jwt.accessTokenExpirationMs}")
     private int accessTokenExpirationMs;
@@ -34,13 +50,93 @@ public class JwtService {
     private int refreshTokenExpirationMs;
 
     /**
-     * Creates a signing key from the JWT secret.
+     * Verifies a token with the parser of the key it was signed with.
+     *
+     * @param token The token to parse
+     * @return The verified claims
+     * @throws JwtException if the token is invalid, expired or signed with an unknown key
+     */
+    private Claims parseClaims(String token) {
+        return keyRegistry.resolve(token).parser()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    /**
+     * Signs a token for a user with the active key, using the allocation-lean codec for HMAC keys.
+     * The token carries the user's current token version so it can be revoked along with all others,
+     * and the user's roles so requests can be authenticated from the token alone.
      *
-     * @return The signing key used for JWT operations
+     * @param userId     The ID of the user the token is issued to
+     * @param username   The username of the user
+     * @param type       The token type
+     * @param family     The refresh token family, null for access tokens
+     * @param roles      The user's roles, null to leave them out
+     * @param lifetimeMs The token lifetime in milliseconds
+     * @return The compact JWT
      */
-    private Key getSigningKey() {
-        byte[] keyBytes = Base64.getDecoder().decode(jwtSecret.getBytes(StandardCharsets.UTF_8));
-        return new SecretKeySpec(keyBytes, SignatureAlgorithm.HS512.getJcaName());
+    private String issueToken(String userId, String username, String type, String family, Collection<String> roles,
+                              long lifetimeMs) {
+        JwtKeyRegistry.SigningKey signingKey = keyRegistry.activeKey();
+        long version = tokenService.getTokenVersion(userId);
+        long now = System.currentTimeMillis();
+        // Refresh tokens of a family must differ even when issued in the same second, or rotation would keep the same ID
+        String jwtId = family != null ? TokenIds.random() : null;
+        if (jwtCodec.supports(signingKey)) {
+            return jwtCodec.encode(signingKey, userId, username, type, version, family, jwtId, roles, now, now + lifetimeMs);
+        }
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("username", username);
+        claims.put("type", type);
+        claims.put(VerifiedToken.VERSION_CLAIM, version);
+        if (family != null) {
+            claims.put(VerifiedToken.FAMILY_CLAIM, family);
+        }
+        if (jwtId != null) {
+            claims.put(Claims.ID, jwtId);
+        }
+        if (roles != null) {
+            claims.put(VerifiedToken.ROLES_CLAIM, roles);
+        }
+        return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.kid())
+                .setClaims(claims)
+                .setSubject(userId)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + lifetimeMs))
+                .signWith(signingKey.key(), signingKey.algorithm())
+                .compact();
+    }
+
+    /**
+     * Verifies a token issued by another library or with an asymmetric key through jjwt.
+     *
+     * @param token   The token to verify
+     * @param tokenId The token ID
+     * @return The verified token claims
+     * @throws JwtException if the token is invalid or expired
+     */
+    private VerifiedToken parseToken(String token, String tokenId) {
+        Claims claims = parseClaims(token);
+
+        Date expiration = claims.getExpiration();
+        if (expiration == null) {
+            throw new MalformedJwtException("JWT has no expiration");
+        }
+        Date issuedAt = claims.getIssuedAt();
+        Long version = claims.get(VerifiedToken.VERSION_CLAIM, Long.class);
+        List<?> roles = claims.get(VerifiedToken.ROLES_CLAIM, List.class);
+        return new VerifiedToken(
+                tokenId,
+                claims.getSubject(),
+                claims.get("type", String.class),
+                claims.get("username", String.class),
+                version != null ? version : 0L,
+                claims.get(VerifiedToken.FAMILY_CLAIM, String.class),
+                roles != null ? roles.stream().map(String::valueOf).toList() : null,
+                issuedAt != null ? issuedAt.getTime() : 0L,
+                expiration.getTime()
+        );
     }
 
     /**
@@ -58,17 +154,8 @@ public class JwtService {
         }
 
         try {
-            Map<String, Object> claims = new HashMap<>();
-            claims.put("username", user.getUsername());
-            claims.put("type", "ACCESS");
-
-            String token = Jwts.builder()
-                    .setClaims(claims)
-                    .setSubject(user.getId())
-                    .setIssuedAt(new Date())
-                    .setExpiration(new Date(System.currentTimeMillis() + accessTokenExpirationMs))
-                    .signWith(SignatureAlgorithm.HS512, getSigningKey())
-                    .compact();
+            String token = issueToken(user.getId(), user.getUsername(), VerifiedToken.ACCESS, null, roleNames(user),
+                    accessTokenExpirationMs);
 
             logger.info("Generated access token for user ID: {}", user.getId());
             return token;
@@ -79,7 +166,7 @@ public class JwtService {
     }
 
     /**
-     * Generates a refresh token for a user.
+     * Generates a refresh token for a user and starts a new refresh token family with it.
      *
      * @param user The user for whom to generate the token
      * @return A JWT refresh token
@@ -93,17 +180,10 @@ public class JwtService {
         }
 
         try {
-            Map<String, Object> claims = new HashMap<>();
-            claims.put("username", user.getUsername());
-            claims.put("type", "REFRESH");
-
-            String token = Jwts.builder()
-                    .setClaims(claims)
-                    .setSubject(user.getId())
-                    .setIssuedAt(new Date())
-                    .setExpiration(new Date(System.currentTimeMillis() + refreshTokenExpirationMs))
-                    .signWith(SignatureAlgorithm.HS512, getSigningKey())
-                    .compact();
+            String family = TokenIds.random();
+            String token = issueToken(user.getId(), user.getUsername(), VerifiedToken.REFRESH, family, roleNames(user),
+                    refreshTokenExpirationMs);
+            tokenService.startRefreshTokenFamily(family, TokenIds.of(token), refreshTokenExpirationMs);
 
             logger.info("Generated refresh token for user ID: {}", user.getId());
             return token;
@@ -114,93 +194,91 @@ public class JwtService {
     }
 
     /**
-     * Validates a token and extracts the user ID.
+     * Exchanges a verified refresh token for a new access token and a new refresh token of the same family.
+     * The tokens are built from the refresh token's claims, roles included, so no user lookup is needed;
+     * a token issued before the user's tokens were last revoked must be rejected by the caller beforehand.
      *
-     * @param token The token to validate
-     * @return The user ID from the token
-     * @throws TokenServiceException if token is invalid or expired
+     * @param refreshToken The verified refresh token
+     * @return The new access and refresh tokens
+     * @throws RefreshTokenConflictException if a concurrent refresh rotated the token within the grace period
+     * @throws TokenServiceException if the token is not a current refresh token of a live family, or rotation fails
      */
-    public String validateTokenAndGetUserId(String token) {
-        if (token == null || token.trim().isEmpty()) {
-            logger.error("Cannot validate null or empty token");
-            throw new TokenServiceException("Token cannot be null or empty");
+    public TokenPair rotateRefreshToken(VerifiedToken refreshToken) {
+        if (!refreshToken.isRefreshToken() || refreshToken.family() == null) {
+            logger.warn("Token {} is not a rotatable refresh token", refreshToken.id());
+            throw new TokenServiceException("Invalid refresh token");
         }
 
-        try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(getSigningKey())
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            String userId = claims.getSubject();
-            logger.info("Successfully validated token for user ID: {}", userId);
-            return userId;
-        } catch (ExpiredJwtException e) {
-            logger.error("Token has expired", e);
-            throw new TokenServiceException("Token has expired", e);
-        } catch (JwtException | IllegalArgumentException e) {
-            logger.error("Invalid JWT token", e);
-            throw new TokenServiceException("Invalid JWT token", e);
+        String userId = refreshToken.subject();
+        String newRefreshToken = issueToken(userId, refreshToken.username(), VerifiedToken.REFRESH,
+                refreshToken.family(), refreshToken.roles(), refreshTokenExpirationMs);
+        TokenStore.RefreshTokenRotation rotation = tokenService.rotateRefreshToken(
+                refreshToken.family(), refreshToken.id(), TokenIds.of(newRefreshToken), refreshTokenExpirationMs);
+        if (rotation == TokenStore.RefreshTokenRotation.ALREADY_ROTATED) {
+            // Another tab won the race; its new refresh token is the one to use, and this token stays harmless within the grace period
+            throw new RefreshTokenConflictException("Refresh token already rotated by a concurrent refresh");
         }
+        if (rotation != TokenStore.RefreshTokenRotation.ROTATED) {
+            throw new TokenServiceException("Refresh token rejected: " + rotation);
+        }
+
+        String accessToken = issueToken(userId, refreshToken.username(), VerifiedToken.ACCESS, null, refreshToken.roles(),
+                accessTokenExpirationMs);
+        logger.info("Rotated refresh token for user ID: {}", userId);
+        return new TokenPair(accessToken, newRefreshToken);
     }
 
     /**
-     * Checks if a token is expired.
+     * Verifies a token once and returns its claims for reuse by every caller in the request.
+     * Tokens seen before are served from the verified-token cache; the signature is only
+     * checked cryptographically on a cache miss.
      *
-     * @param token The token to check
-     * @return true if token is expired, false otherwise
-     * @throws TokenServiceException if token cannot be parsed
+     * @param token The token to verify
+     * @return The verified token claims
+     * @throws TokenServiceException if token is invalid or expired
      */
-    public boolean isTokenExpired(String token) {
+    public VerifiedToken verify(String token) {
         if (token == null || token.trim().isEmpty()) {
-            logger.error("Cannot check expiration for null or empty token");
+            logger.error("Cannot verify null or empty token");
             throw new TokenServiceException("Token cannot be null or empty");
         }
 
+        String tokenId = TokenIds.of(token);
+        VerifiedToken cached = verifiedTokenCache.get(tokenId);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(getSigningKey())
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            Date expiration = claims.getExpiration();
-            boolean isExpired = expiration.before(new Date());
-            logger.debug("Token expiration check - Token: {}, Expired: {}", token, isExpired);
-            return isExpired;
+            VerifiedToken verifiedToken = jwtCodec.decode(token, tokenId, keyRegistry.verificationKeys());
+            if (verifiedToken == null) {
+                verifiedToken = parseToken(token, tokenId);
+            }
+            verifiedTokenCache.put(verifiedToken);
+            logger.debug("Successfully verified token for user ID: {}", verifiedToken.subject());
+            return verifiedToken;
         } catch (ExpiredJwtException e) {
-            logger.info("Token has already expired");
-            return true;
+            logger.error("Token has expired", e);
+            throw new TokenServiceException("Token has expired", e);
         } catch (JwtException | IllegalArgumentException e) {
-            logger.error("Error checking token expiration", e);
-            throw new TokenServiceException("Could not determine token expiration", e);
+            logger.error("Invalid JWT token", e);
+            throw new TokenServiceException("Invalid JWT token", e);
         }
     }
 
     /**
-     * Gets the expiration time of a token.
+     * Stops accepting tokens signed with a key, including tokens already in the verified-token cache.
      *
-     * @param token The token to check
-     * @return The expiration time in milliseconds
-     * @throws TokenServiceException if token cannot be parsed
+     * @param kid The id of the key to retire
+     * @throws IllegalArgumentException if the key is the active signing key
      */
-    public long getTokenExpiration(String token) {
-        if (token == null || token.trim().isEmpty()) {
-            logger.error("Cannot get expiration for null or empty token");
-            throw new TokenServiceException("Token cannot be null or empty");
-        }
+    public void retireSigningKey(String kid) {
+        keyRegistry.retire(kid);
+        verifiedTokenCache.invalidateAll();
+    }
 
-        try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(getSigningKey())
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            Date expiration = claims.getExpiration();
-            logger.info("Retrieved token expiration time: {}", expiration.getTime());
-            return expiration.getTime();
-        } catch (JwtException | IllegalArgumentException e) {
-            logger.error("Error retrieving token expiration", e);
-            throw new TokenServiceException("Could not retrieve token expiration", e);
-        }
+    // Role names carried in the roles claim; changing roles bumps the token version, so stale claims are rejected
+    private static List<String> roleNames(User user) {
+        return user.getRoles() == null ? List.of() : user.getRoles().stream().map(Enum::name).sorted().toList();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package com.medici.user_hub.service;
+
+import com.medici.user_hub.handler.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs password and security answer hashing on a dedicated pool sized to the CPU count, so a burst of
+ * logins or registrations cannot occupy every request thread and starve cheap endpoints. Hashes wait in
+ * a bounded queue; when it is full the call fails at once with a {@link ServiceBusyException}, which
+ * is returned as 503 with a Retry-After header. Callers block until their hash is done, which costs
+ * little on the virtual request threads enabled by {@code spring.threads.virtual.enabled}.
+ * <p>
+ * Queued hashes are exported as {@code password.hashing.queue}, time spent queued as
+ * {@code password.hashing.wait}, hashing time as {@code password.hashing.duration} and rejections
+ * as {@code password.hashing.rejected}.
+ * <p>
+ * A hash of a random secret is made at startup, so a caller that found no stored hash can still spend
+ * one check, see {@link #simulateMatch}, and answer as slowly as when it found one.
+ */
+@Component
+public class PasswordHasher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+    private static final String METRIC = "password.hashing";
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+    private final Timer waitTime;
+    private final Timer hashTime;
+    private final Counter rejected;
+    private final String dummyHash;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Value("${passwordHashing.threads:0}") int threads,
+                          @Value("${passwordHashing.queueCapacity:64}") int queueCapacity,
+                          @Value("${passwordHashing.retryAfterSeconds:1}") long retryAfterSeconds,
+                          MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hasher-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryAfterSeconds = retryAfterSeconds;
+        Gauge.builder(METRIC + ".queue", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        this.waitTime = Timer.builder(METRIC + ".wait").register(meterRegistry);
+        this.hashTime = Timer.builder(METRIC + ".duration").register(meterRegistry);
+        this.rejected = Counter.builder(METRIC + ".rejected").register(meterRegistry);
+        // Made with the current parameters, so checking against it costs as much as checking a fresh stored hash
+        this.dummyHash = passwordEncoder.encode(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Hashes a secret.
+     *
+     * @param rawSecret The password or security answer
+     * @return The encoded hash
+     * @throws ServiceBusyException If the hashing queue is full
+     */
+    public String encode(CharSequence rawSecret) {
+        return run(() -> passwordEncoder.encode(rawSecret));
+    }
+
+    /**
+     * Queues a secret for hashing without waiting, so a caller can do other work meanwhile.
+     * Cancelling the returned task before it starts keeps it from running.
+     *
+     * @param rawSecret The password or security answer
+     * @return The pending hash
+     * @throws ServiceBusyException If the hashing queue is full
+     */
+    public Future<String> encodeAsync(CharSequence rawSecret) {
+        return submit(() -> passwordEncoder.encode(rawSecret));
+    }
+
+    /**
+     * Checks a secret against a hash.
+     *
+     * @param rawSecret     The password or security answer
+     * @param encodedSecret The stored hash
+     * @return True if the secret matches
+     * @throws ServiceBusyException If the hashing queue is full
+     */
+    public boolean matches(CharSequence rawSecret, String encodedSecret) {
+        return run(() -> passwordEncoder.matches(rawSecret, encodedSecret));
+    }
+
+    /**
+     * Checks a secret against a hash no secret matches, taking as long as {@link #matches} would for a
+     * stored hash. Use it when there is nothing to check against, e.g. for an unknown email, so the
+     * response time does not tell whether the email is registered.
+     *
+     * @param rawSecret The password or security answer
+     * @throws ServiceBusyException If the hashing queue is full
+     */
+    public void simulateMatch(CharSequence rawSecret) {
+        run(() -> passwordEncoder.matches(rawSecret, dummyHash));
+    }
+
+    /**
+     * Checks whether a hash was made with other parameters than new hashes get, e.g. a lower cost or an
+     * older algorithm. Reads only the hash's prefix, so it runs on the caller's thread.
+     *
+     * @param encodedSecret The stored hash
+     * @return True if the secret should be hashed again
+     */
+    public boolean upgradeEncoding(String encodedSecret) {
+        return passwordEncoder.upgradeEncoding(encodedSecret);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Queues a hash and waits for it; the caller's thread does no hashing itself
+    <T> T run(Callable<T> hash) {
+        return await(submit(hash));
+    }
+
+    /**
+     * Waits for a hash queued by {@link #encodeAsync}, cancelling it if the wait is interrupted.
+     *
+     * @param result The pending hash
+     * @return The hash
+     */
+    public <T> T await(Future<T> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while waiting for password hashing", retryAfterSeconds, e);
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> hash) {
+        long queuedAt = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                waitTime.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return hashTime.recordCallable(hash);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("PasswordHasher - Hashing queue full, rejected request");
+            throw new ServiceBusyException("Too many password checks in progress, try again shortly", retryAfterSeconds, e);
+        }
+    }
+}
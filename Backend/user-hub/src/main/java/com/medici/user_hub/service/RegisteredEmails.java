@@ -0,0 +1,155 @@
+package com.medici.user_hub.service;
+
+import com.medici.user_hub.security.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * In-process Bloom filter of every registered email, so lookups of emails that were never registered,
+ * which make up most credential-stuffing traffic, are answered without reading Redis or MongoDB.
+ * Emails are normalized to trimmed lower case before hashing; lookups are exact, so normalizing can
+ * only add false positives, never hide a registered email.
+ * <p>
+ * The filter is loaded from MongoDB at startup and rebuilt periodically by
+ * {@link UserService#syncRegisteredEmails()}, and registrations and email changes made on any node
+ * arrive on {@link #CHANNEL}. Deleted emails cannot be removed from a Bloom filter, so they stay
+ * possible matches, and are looked up as before, until the next rebuild. Until a load has succeeded
+ * every email is reported as a possible match.
+ * Lookups are exported as {@code users.email-filter.lookups} by result, and the filter's expected
+ * false-positive rate and size as {@code users.email-filter.expected-fpp} and {@code users.email-filter.size}.
+ */
+@Component
+public class RegisteredEmails implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegisteredEmails.class);
+    private static final String METRIC = "users.email-filter";
+
+    public static final String CHANNEL = "registered-emails";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long expectedEmails;
+    private final double falsePositiveRate;
+    private final Counter negativeLookups;
+    private final Counter positiveLookups;
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuilding;
+    private volatile boolean synced;
+
+    public RegisteredEmails(RedisTemplate<String, String> redisTemplate,
+                            @Value("${registeredEmails.expectedEmails:1000000}") long expectedEmails,
+                            @Value("${registeredEmails.falsePositiveRate:0.001}") double falsePositiveRate,
+                            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.expectedEmails = expectedEmails;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedEmails, falsePositiveRate);
+        this.negativeLookups = Counter.builder(METRIC + ".lookups").tag("result", "negative").register(meterRegistry);
+        this.positiveLookups = Counter.builder(METRIC + ".lookups").tag("result", "positive").register(meterRegistry);
+        Gauge.builder(METRIC + ".expected-fpp", this, emails -> emails.filter.expectedFalsePositiveRate())
+                .register(meterRegistry);
+        Gauge.builder(METRIC + ".size", this, emails -> emails.filter.sizeInBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Returns true once the filter holds every email stored in MongoDB
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Checks the filter for an email.
+     *
+     * @param email The email address as given by the client
+     * @return False only if the email is definitely not registered; true if it may be, or if the filter is not loaded
+     */
+    public boolean mightBeRegistered(String email) {
+        if (!synced) {
+            return true;
+        }
+        if (email != null && filter.mightContain(normalize(email))) {
+            positiveLookups.increment();
+            return true;
+        }
+        negativeLookups.increment();
+        return false;
+    }
+
+    /**
+     * Adds a newly stored email on every node. Call after the email has been written to MongoDB.
+     * If Redis cannot be reached, other nodes only learn of the email at their next rebuild.
+     *
+     * @param email The email address
+     */
+    public void add(String email) {
+        addLocally(email);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, email);
+        } catch (RuntimeException e) {
+            logger.error("RegisteredEmails - Failed to announce a registered email, other nodes pick it up at their next rebuild", e);
+        }
+    }
+
+    /**
+     * Replaces the filter with one holding the given emails. The new filter is sized for twice the
+     * stored emails, or the configured expectation if that is larger, so it keeps its false-positive
+     * rate as users register until the next rebuild. Emails added while the load runs go into both filters.
+     *
+     * @param storedEmails Number of emails in MongoDB, used to size the filter
+     * @param emails       Opens a stream of every email in MongoDB; called once the load has started
+     */
+    public synchronized void load(long storedEmails, Supplier<Stream<String>> emails) {
+        BloomFilter loaded = new BloomFilter(Math.max(expectedEmails, storedEmails * 2), falsePositiveRate);
+        rebuilding = loaded;
+        try (Stream<String> stored = emails.get()) {
+            stored.forEach(email -> {
+                if (email != null) {
+                    loaded.put(normalize(email));
+                }
+            });
+            filter = loaded;
+            synced = true;
+        } finally {
+            rebuilding = null;
+        }
+        logger.info("RegisteredEmails - Loaded {} emails into a {} byte filter", storedEmails, loaded.sizeInBytes());
+    }
+
+    // Makes lookups fall back to the user store until the next successful load
+    public void markUnsynced() {
+        synced = false;
+    }
+
+    // Receives emails added on any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        addLocally(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    // Writes to a filter being loaded before the live one, so an email added during a load is in whichever filter ends up live
+    private void addLocally(String email) {
+        String key = normalize(email);
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(key);
+        }
+        filter.put(key);
+    }
+
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,95 @@
+package com.medici.user_hub.service;
+
+import com.medici.user_hub.handler.DatabaseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call on its own thread and
+ * every caller that arrives while it is in flight waits for and shares its result or exception,
+ * instead of repeating the call. Nothing is kept once the call completes, so this is not a cache.
+ * <p>
+ * Calls are counted as {@code <metric>.calls} tagged {@code result=executed}, {@code coalesced} or
+ * {@code timed-out}.
+ *
+ * @param <K> The type of key
+ * @param <V> The type of result
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+    private final Counter executed;
+    private final Counter coalesced;
+    private final Counter timedOut;
+
+    /**
+     * @param metric        Prefix of the metrics
+     * @param timeout       How long a caller waits for a call started by another caller
+     * @param meterRegistry The registry the metrics are registered with
+     */
+    public SingleFlight(String metric, Duration timeout, MeterRegistry meterRegistry) {
+        this.timeoutMs = timeout.toMillis();
+        this.executed = Counter.builder(metric + ".calls").tag("result", "executed").register(meterRegistry);
+        this.coalesced = Counter.builder(metric + ".calls").tag("result", "coalesced").register(meterRegistry);
+        this.timedOut = Counter.builder(metric + ".calls").tag("result", "timed-out").register(meterRegistry);
+    }
+
+    /**
+     * Runs a call, or joins the one already in flight for the same key.
+     *
+     * @param key  Identifies calls that return the same result
+     * @param call The call
+     * @return The result of the call
+     * @throws DatabaseException If the call in flight does not complete within the timeout
+     */
+    public V run(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+            executed.increment();
+            try {
+                V result = call.get();
+                flight.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        coalesced.increment();
+        try {
+            return existing.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new DatabaseException("Timed out waiting for a concurrent lookup", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new DatabaseException("Concurrent lookup failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for a concurrent lookup", e);
+        }
+    }
+
+    // Returns the number of calls currently in flight
+    int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -1,17 +1,33 @@
 package com.medici.user_hub.service;
 
 import com.medici.user_hub.handler.TokenServiceException;
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenIds;
+import com.medici.user_hub.security.TokenVersionCache;
+import com.medici.user_hub.security.VerifiedToken;
+import com.medici.user_hub.security.VerifiedTokenCache;
+import com.medici.user_hub.store.TokenStore;
+import com.medici.user_hub.store.TokenStore.RefreshTokenRotation;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Service for handling token-related operations with Redis, including blacklisting, storing,
- * validating, and revoking tokens. Provides structured logging for improved monitoring.
+ * Service for handling token-related operations, including blacklisting, storing, validating, and
+ * revoking tokens. State is kept in the configured {@link TokenStore}; the local caches in front of it
+ * answer most checks without touching the store. Provides structured logging for improved monitoring.
  */
 @Service
 public class TokenService {
@@ -19,77 +35,308 @@ public class TokenService {
     private static final Logger logger = LoggerFactory.getLogger(TokenService.class);
 
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private TokenStore tokenStore;
 
-    private static final String BLACKLISTED_TOKEN_PREFIX = "blacklisted:";
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private RevokedTokenCache revokedTokenCache;
+
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+
+    @Value("${jwt.refreshRotation.graceMs:10000}")
+    private long refreshRotationGraceMs;
+
+    @Value("${jwt.async.shutdownTimeoutMs:30000}")
+    private long asyncShutdownTimeoutMs;
+
+    // Runs the async variants; store calls block on I/O, which virtual threads wait on cheaply
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-    // Blacklists a token by storing it in Redis with a specified expiration time.
-    public void blacklistToken(String token, long expirationMs) {
+    /**
+     * Stops accepting async work and waits for work already submitted, such as an admin revocation
+     * batch, so it is not dropped when the context closes or devtools restarts it.
+     */
+    @PreDestroy
+    public void shutdown() {
+        asyncExecutor.shutdown();
         try {
-            String key = BLACKLISTED_TOKEN_PREFIX + token;
-            redisTemplate.opsForValue().set(key, "BLACKLISTED", expirationMs, TimeUnit.MILLISECONDS);
-            logger.info("Token {} has been blacklisted for {} milliseconds", token, expirationMs);
+            if (!asyncExecutor.awaitTermination(asyncShutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("Async token operations still running after {} ms, interrupting them", asyncShutdownTimeoutMs);
+                asyncExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            asyncExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Blacklists a token until it expires. The ID is added to the local revoked token cache right away,
+     * and the store notifies every other node so their caches pick it up without polling.
+     *
+     * @param tokenId   The token ID from {@link TokenIds#of(String)}
+     * @param expiresAt Expiration time of the token in epoch milliseconds
+     */
+    public void blacklistToken(String tokenId, long expiresAt) {
+        try {
+            tokenStore.revoke(tokenId, expiresAt);
+            revokedTokenCache.add(tokenId, expiresAt);
+            verifiedTokenCache.invalidate(tokenId);
+            logger.info("Token {} has been blacklisted until {}", tokenId, expiresAt);
         } catch (Exception e) {
-            logger.error("Failed to blacklist token {}", token, e);
+            logger.error("Failed to blacklist token {}", tokenId, e);
             throw new TokenServiceException("Failed to blacklist token", e);
         }
     }
 
-    // Checks if a token is blacklisted.
-    public boolean isTokenBlacklisted(String token) {
+    /**
+     * Blacklists many tokens at once, e.g. a compromised cohort. The store writes them in batches
+     * rather than one round trip per token.
+     *
+     * @param revocations Token IDs mapped to the expiration time of each token in epoch milliseconds
+     * @return The number of tokens blacklisted
+     * @throws TokenServiceException if the store cannot be reached
+     */
+    public int blacklistTokens(Map<String, Long> revocations) {
+        try {
+            tokenStore.revokeAll(revocations);
+            revocations.forEach((tokenId, expiresAt) -> {
+                revokedTokenCache.add(tokenId, expiresAt);
+                verifiedTokenCache.invalidate(tokenId);
+            });
+            logger.info("{} tokens have been blacklisted", revocations.size());
+            return revocations.size();
+        } catch (Exception e) {
+            logger.error("Failed to blacklist {} tokens", revocations.size(), e);
+            throw new TokenServiceException("Failed to blacklist tokens", e);
+        }
+    }
+
+    // Async variant of blacklistToken; completes exceptionally with TokenServiceException on failure
+    public CompletableFuture<Void> blacklistTokenAsync(String tokenId, long expiresAt) {
+        return CompletableFuture.runAsync(() -> blacklistToken(tokenId, expiresAt), asyncExecutor);
+    }
+
+    // Async variant of blacklistTokens; completes exceptionally with TokenServiceException on failure
+    public CompletableFuture<Integer> blacklistTokensAsync(Map<String, Long> revocations) {
+        return CompletableFuture.supplyAsync(() -> blacklistTokens(revocations), asyncExecutor);
+    }
+
+    /**
+     * Checks if a token ID is blacklisted. While the local revoked token cache is synced with the store,
+     * a negative from its Bloom filter is final and costs no network I/O, and possible hits are settled
+     * by its exact cache. The store is only asked when the cache cannot answer with certainty.
+     *
+     * @param tokenId   The token ID from {@link TokenIds#of(String)}
+     * @param expiresAt Expiration time of the token in epoch milliseconds
+     * @return True if the token has been revoked
+     * @throws TokenServiceException if the store has to be asked and cannot be reached
+     */
+    public boolean isTokenIdBlacklisted(String tokenId, long expiresAt) {
+        if (!revokedTokenCache.mightBeRevoked(tokenId)) {
+            return false;
+        }
+        if (revokedTokenCache.isExact()) {
+            boolean isBlacklisted = revokedTokenCache.contains(tokenId);
+            if (!isBlacklisted) {
+                revokedTokenCache.recordFalsePositive();
+            }
+            return isBlacklisted;
+        }
         try {
-            String key = BLACKLISTED_TOKEN_PREFIX + token;
-            boolean isBlacklisted = redisTemplate.hasKey(key);
-            logger.info("Token {} is blacklisted: {}", token, isBlacklisted);
+            boolean isBlacklisted = tokenStore.isRevoked(tokenId, expiresAt);
+            if (!isBlacklisted && revokedTokenCache.isSynced()) {
+                revokedTokenCache.recordFalsePositive();
+            }
+            logger.info("Token {} is blacklisted: {}", tokenId, isBlacklisted);
             return isBlacklisted;
         } catch (Exception e) {
-            logger.error("Failed to check if token {} is blacklisted", token, e);
+            logger.error("Failed to check if token {} is blacklisted", tokenId, e);
             throw new TokenServiceException("Failed to check if token is blacklisted", e);
         }
     }
 
-    // Stores a refresh token in Redis with a specific expiration.
+    // Async variant of isTokenIdBlacklisted; completes exceptionally with TokenServiceException on failure
+    public CompletableFuture<Boolean> isTokenIdBlacklistedAsync(String tokenId, long expiresAt) {
+        return CompletableFuture.supplyAsync(() -> isTokenIdBlacklisted(tokenId, expiresAt), asyncExecutor);
+    }
+
+    /**
+     * Loads every blacklisted token ID from the store into the local revoked token cache. Runs at startup
+     * and then periodically, which also repairs the cache after revocation messages were missed while
+     * the pub/sub connection was down. On failure the cache is marked as not synced, so checks fall
+     * back to the store until the next successful run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${jwt.revocation.resyncIntervalMs:60000}", fixedDelayString = "${jwt.revocation.resyncIntervalMs:60000}")
+    public void syncRevokedTokens() {
+        try {
+            long generation = revokedTokenCache.generation();
+            revokedTokenCache.load(tokenStore.revokedTokens(), generation);
+        } catch (Exception e) {
+            revokedTokenCache.markUnsynced();
+            logger.error("Failed to sync revoked tokens from the token store", e);
+        }
+    }
+
+    /**
+     * Returns a user's current token version, which every newly issued token carries.
+     * Served from the local token version cache; the store is only read on a miss.
+     *
+     * @param userId The user ID
+     * @return The current version, 0 if the user's tokens were never revoked
+     * @throws TokenServiceException if the version is not cached and the store cannot be reached
+     */
+    public long getTokenVersion(String userId) {
+        try {
+            return tokenVersionCache.get(userId, tokenStore::getTokenVersion);
+        } catch (Exception e) {
+            logger.error("Failed to get token version for user {}", userId, e);
+            throw new TokenServiceException("Failed to get token version", e);
+        }
+    }
+
+    // Returns false if the token was issued before the user's tokens were last revoked
+    public boolean isTokenVersionCurrent(VerifiedToken verifiedToken) {
+        return verifiedToken.version() >= getTokenVersion(verifiedToken.subject());
+    }
+
+    /**
+     * Revokes every token issued to a user so far by bumping the user's token version.
+     * Costs one increment in the store however many sessions the user has.
+     *
+     * @param userId The user ID
+     * @return The new token version
+     * @throws TokenServiceException if the store cannot be reached
+     */
+    public long revokeAllTokens(String userId) {
+        try {
+            long version = tokenStore.incrementTokenVersion(userId);
+            tokenVersionCache.update(userId, version);
+            logger.info("All tokens of user {} revoked, token version is now {}", userId, version);
+            return version;
+        } catch (Exception e) {
+            logger.error("Failed to revoke tokens of user {}", userId, e);
+            throw new TokenServiceException("Failed to revoke user tokens", e);
+        }
+    }
+
+    // Async variant of revokeAllTokens; completes exceptionally with TokenServiceException on failure
+    public CompletableFuture<Long> revokeAllTokensAsync(String userId) {
+        return CompletableFuture.supplyAsync(() -> revokeAllTokens(userId), asyncExecutor);
+    }
+
+    /**
+     * Starts a refresh token family, the chain of refresh tokens that descends from one login.
+     * Only the newest token of a family can be rotated.
+     *
+     * @param familyId  The family ID carried by every token of the family
+     * @param tokenId   The ID of the family's first refresh token
+     * @param ttlMs     The refresh token lifetime in milliseconds
+     * @throws TokenServiceException if the store cannot be reached
+     */
+    public void startRefreshTokenFamily(String familyId, String tokenId, long ttlMs) {
+        try {
+            tokenStore.startRefreshTokenFamily(familyId, tokenId, ttlMs);
+            logger.info("Refresh token family {} started with token {}", familyId, tokenId);
+        } catch (Exception e) {
+            logger.error("Failed to start refresh token family {}", familyId, e);
+            throw new TokenServiceException("Failed to start refresh token family", e);
+        }
+    }
+
+    /**
+     * Consumes a refresh token and stores its replacement as the family's newest token. Check, consume,
+     * store and reuse detection happen atomically in the store, so concurrent refreshes with the same
+     * token cannot both succeed.
+     *
+     * @param familyId   The family ID carried by the presented token
+     * @param tokenId    The ID of the presented refresh token
+     * @param newTokenId The ID of the refresh token replacing it
+     * @param ttlMs      The lifetime of the new refresh token in milliseconds
+     * @return The outcome of the rotation; only {@link RefreshTokenRotation#ROTATED} makes the new token usable
+     * @throws TokenServiceException if the store cannot be reached
+     */
+    public RefreshTokenRotation rotateRefreshToken(String familyId, String tokenId, String newTokenId, long ttlMs) {
+        try {
+            RefreshTokenRotation rotation = tokenStore.rotateRefreshToken(familyId, tokenId, newTokenId, ttlMs, refreshRotationGraceMs);
+            if (rotation == RefreshTokenRotation.REUSED) {
+                logger.warn("Refresh token {} was reused, refresh token family {} revoked", tokenId, familyId);
+            } else {
+                logger.info("Refresh token {} of family {} rotation: {}", tokenId, familyId, rotation);
+            }
+            return rotation;
+        } catch (Exception e) {
+            logger.error("Failed to rotate refresh token {} of family {}", tokenId, familyId, e);
+            throw new TokenServiceException("Failed to rotate refresh token", e);
+        }
+    }
+
+    /**
+     * Ends a refresh token family, e.g. at logout, so none of its tokens can be exchanged for new tokens.
+     *
+     * @param familyId The family ID carried by every token of the family
+     * @throws TokenServiceException if the store cannot be reached
+     */
+    public void endRefreshTokenFamily(String familyId) {
+        try {
+            tokenStore.endRefreshTokenFamily(familyId);
+            logger.info("Refresh token family {} ended", familyId);
+        } catch (Exception e) {
+            logger.error("Failed to end refresh token family {}", familyId, e);
+            throw new TokenServiceException("Failed to end refresh token family", e);
+        }
+    }
+
+    // Stores a refresh token's ID in the token store with a specific expiration.
     public void storeRefreshToken(String token, long expirationMs) {
+        String tokenId = TokenIds.of(token);
         try {
-            redisTemplate.opsForValue().set(token, "REFRESH_TOKEN", expirationMs, TimeUnit.MILLISECONDS);
-            logger.info("Refresh token {} stored with expiration of {} milliseconds", token, expirationMs);
+            tokenStore.storeRefreshToken(tokenId, expirationMs);
+            logger.info("Refresh token {} stored with expiration of {} milliseconds", tokenId, expirationMs);
         } catch (Exception e) {
-            logger.error("Failed to store refresh token {}", token, e);
+            logger.error("Failed to store refresh token {}", tokenId, e);
             throw new TokenServiceException("Failed to store refresh token", e);
         }
     }
 
-    // Checks if a refresh token is valid and exists in Redis.
+    // Checks if a refresh token is valid and exists in the token store.
     public boolean isRefreshTokenValid(String token) {
+        String tokenId = TokenIds.of(token);
         try {
-            boolean isValid = redisTemplate.hasKey(token);
-            logger.info("Refresh token {} is valid: {}", token, isValid);
+            boolean isValid = tokenStore.containsRefreshToken(tokenId);
+            logger.info("Refresh token {} is valid: {}", tokenId, isValid);
             return isValid;
         } catch (Exception e) {
-            logger.error("Failed to check if refresh token {} is valid", token, e);
+            logger.error("Failed to check if refresh token {} is valid", tokenId, e);
             throw new TokenServiceException("Failed to check refresh token validity", e);
         }
     }
 
-    // Revokes a refresh token by deleting it from Redis.
+    // Revokes a refresh token by deleting it from the token store.
     public void revokeRefreshToken(String token) {
+        String tokenId = TokenIds.of(token);
         try {
-            redisTemplate.delete(token);
-            logger.info("Refresh token {} has been revoked", token);
+            tokenStore.deleteRefreshToken(tokenId);
+            logger.info("Refresh token {} has been revoked", tokenId);
         } catch (Exception e) {
-            logger.error("Failed to revoke refresh token {}", token, e);
+            logger.error("Failed to revoke refresh token {}", tokenId, e);
             throw new TokenServiceException("Failed to revoke refresh token", e);
         }
     }
 
-    // Retrieves the expiration time of a token in Redis.
+    // Retrieves the remaining lifetime of a stored refresh token in the token store.
     public long getTokenExpiration(String token) {
+        String tokenId = TokenIds.of(token);
         try {
-            Long expiration = redisTemplate.getExpire(token, TimeUnit.MILLISECONDS);
-            logger.info("Token {} expiration retrieved: {} milliseconds remaining", token, expiration);
-            return (expiration != null) ? expiration : -1;
+            long expiration = tokenStore.getRefreshTokenTtl(tokenId);
+            logger.info("Token {} expiration retrieved: {} milliseconds remaining", tokenId, expiration);
+            return expiration;
         } catch (Exception e) {
-            logger.error("Failed to get expiration for token {}", token, e);
+            logger.error("Failed to get expiration for token {}", tokenId, e);
             throw new TokenServiceException("Failed to get token expiration", e);
         }
     }
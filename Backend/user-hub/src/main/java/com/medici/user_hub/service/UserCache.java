@@ -0,0 +1,312 @@
+package com.medici.user_hub.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.medici.user_hub.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache of users in front of MongoDB: a per-node Caffeine cache (L1) backed by Redis (L2),
+ * which every node shares. Users are cached by ID, and by email through an email-to-ID mapping.
+ * A changed user is written through to L2 and a deleted one is replaced by a short-lived tombstone;
+ * either way the change is announced on {@link #CHANNEL} so every node drops its L1 copy.
+ * Lookups only fill L2 where it holds nothing, so a slow lookup that read MongoDB before the change
+ * cannot overwrite it. Redis failures are treated as L2 misses, so lookups keep working from MongoDB.
+ * Neither tier holds the password or security answer hash, so cached users carry no secrets; code that
+ * checks either reads it from MongoDB.
+ * Concurrent MongoDB reads of the same user, e.g. after a deploy or a flush of both tiers, are coalesced
+ * into one by a {@link SingleFlight}.
+ * <p>
+ * Cached users are shared between callers and must not be modified; code that changes a user
+ * reads it from the repository instead.
+ * L1 metrics are exported as {@code cache.*} tagged {@code cache=users}, L2 lookups as
+ * {@code users.cache.l2.lookups} by result, and read times of Redis and MongoDB as
+ * {@code users.cache.load} by tier and coalesced MongoDB reads as {@code users.cache.db-lookups.calls}.
+ */
+@Component
+public class UserCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+    private static final String CACHE_NAME = "users";
+    private static final String USER_PREFIX = "user:";
+    private static final String EMAIL_PREFIX = "user-email:";
+    private static final String TOMBSTONE = "";
+
+    public static final String CHANNEL = "user-invalidations";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration redisTtl;
+    private final Duration tombstoneTtl;
+    private final Cache<String, User> users;
+    private final Cache<String, String> userIdsByEmail;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    private final Counter redisErrors;
+    private final Timer redisLoadTime;
+    private final Timer databaseLoadTime;
+    private final SingleFlight<String, Optional<User>> databaseLoads;
+
+    public UserCache(RedisTemplate<String, String> redisTemplate,
+                     ObjectMapper objectMapper,
+                     @Value("${userCache.maximumSize:10000}") long maximumSize,
+                     @Value("${userCache.ttlMs:60000}") long ttlMs,
+                     @Value("${spring.cache.redis.time-to-live:3600000}") long redisTtlMs,
+                     @Value("${userCache.coalescingTimeoutMs:5000}") long coalescingTimeoutMs,
+                     MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper.copy().addMixIn(User.class, WithoutSecrets.class);
+        this.redisTtl = Duration.ofMillis(redisTtlMs);
+        // Long enough for any lookup that started before a delete to finish
+        this.tombstoneTtl = Duration.ofMillis(ttlMs);
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        this.userIdsByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, CACHE_NAME);
+        this.redisHits = Counter.builder("users.cache.l2.lookups").tag("result", "hit").register(meterRegistry);
+        this.redisMisses = Counter.builder("users.cache.l2.lookups").tag("result", "miss").register(meterRegistry);
+        this.redisErrors = Counter.builder("users.cache.l2.lookups").tag("result", "error").register(meterRegistry);
+        this.redisLoadTime = Timer.builder("users.cache.load").tag("tier", "redis").register(meterRegistry);
+        this.databaseLoadTime = Timer.builder("users.cache.load").tag("tier", "mongodb").register(meterRegistry);
+        this.databaseLoads = new SingleFlight<>("users.cache.db-lookups", Duration.ofMillis(coalescingTimeoutMs), meterRegistry);
+    }
+
+    /**
+     * Returns a user by ID from L1, then L2, then the loader. Concurrent L1 misses for the same ID share one load.
+     * Users that do not exist are not cached.
+     *
+     * @param userId The user ID
+     * @param loader Reads the user from MongoDB
+     * @return The user, or empty if it does not exist
+     */
+    public Optional<User> getById(String userId, Function<String, Optional<User>> loader) {
+        return Optional.ofNullable(users.get(userId, id -> {
+            User user = readFromRedis(USER_PREFIX + id);
+            if (user == null) {
+                user = loadFromDatabase("id:" + id, () -> loader.apply(id)).map(UserCache::withoutSecrets).orElse(null);
+                if (user != null) {
+                    fillRedis(user);
+                }
+            }
+            return user;
+        }));
+    }
+
+    /**
+     * Returns a user by email from L1, then L2, then the loader. A cached user whose email no longer
+     * matches is ignored, so a missed invalidation cannot return another user's record.
+     *
+     * @param email  The email address
+     * @param loader Reads the user from MongoDB
+     * @return The user, or empty if it does not exist
+     */
+    public Optional<User> getByEmail(String email, Function<String, Optional<User>> loader) {
+        String userId = userIdsByEmail.getIfPresent(email);
+        if (userId == null) {
+            userId = readIdFromRedis(email);
+        }
+        if (userId != null) {
+            User user = users.getIfPresent(userId);
+            if (user == null) {
+                user = readFromRedis(USER_PREFIX + userId);
+            }
+            if (user != null && email.equals(user.getEmail())) {
+                users.put(userId, user);
+                userIdsByEmail.put(email, userId);
+                return Optional.of(user);
+            }
+        }
+
+        Optional<User> loaded = loadFromDatabase("email:" + email, () -> loader.apply(email)).map(UserCache::withoutSecrets);
+        loaded.ifPresent(user -> {
+            users.put(user.getId(), user);
+            userIdsByEmail.put(email, user.getId());
+            fillRedis(user);
+        });
+        return loaded;
+    }
+
+    /**
+     * Writes a changed user through to L2 and drops it from L1 on every node. Call after the change
+     * has been written to MongoDB.
+     *
+     * @param user           The user as saved; its hashes are not written to Redis
+     * @param previousEmails Emails the user may still be cached under, e.g. the one before an email change
+     */
+    public void update(User user, String... previousEmails) {
+        invalidateLocally(user.getId(), previousEmails);
+        userIdsByEmail.invalidate(user.getEmail());
+        try {
+            List<String> staleEmailKeys = new ArrayList<>();
+            for (String email : previousEmails) {
+                if (email != null && !email.equals(user.getEmail())) {
+                    staleEmailKeys.add(EMAIL_PREFIX + email);
+                }
+            }
+            redisTemplate.opsForValue().set(USER_PREFIX + user.getId(), objectMapper.writeValueAsString(user), redisTtl);
+            redisTemplate.opsForValue().set(EMAIL_PREFIX + user.getEmail(), user.getId(), redisTtl);
+            if (!staleEmailKeys.isEmpty()) {
+                redisTemplate.delete(staleEmailKeys);
+            }
+            redisTemplate.convertAndSend(CHANNEL, message(user.getId(), previousEmails));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Without the write-through a stale L2 copy could outlive the change, so try to drop it at least
+            redisErrors.increment();
+            logger.error("UserCache - Failed to write user {} through to Redis", user.getId(), e);
+            evictFromRedis(user.getId());
+        }
+    }
+
+    /**
+     * Drops a deleted user from both tiers on every node. Call after the user has been deleted from MongoDB.
+     *
+     * @param userId The user ID
+     * @param emails Every email the user may be cached under
+     */
+    public void evict(String userId, String... emails) {
+        invalidateLocally(userId, emails);
+        List<String> emailKeys = new ArrayList<>();
+        for (String email : emails) {
+            if (email != null) {
+                emailKeys.add(EMAIL_PREFIX + email);
+            }
+        }
+        try {
+            // A tombstone rather than a delete, so a lookup that read the user before the delete cannot refill L2
+            redisTemplate.opsForValue().set(USER_PREFIX + userId, TOMBSTONE, tombstoneTtl);
+            if (!emailKeys.isEmpty()) {
+                redisTemplate.delete(emailKeys);
+            }
+            redisTemplate.convertAndSend(CHANNEL, message(userId, emails));
+        } catch (RuntimeException e) {
+            // Other nodes still drop their copy once the L1 TTL passes
+            redisErrors.increment();
+            logger.error("UserCache - Failed to evict user {} from Redis", userId, e);
+        }
+    }
+
+    // Formats an invalidation for publishing on CHANNEL; emails may contain almost anything but line breaks
+    static String message(String userId, String... emails) {
+        StringBuilder message = new StringBuilder(userId);
+        for (String email : emails) {
+            if (email != null) {
+                message.append('\n').append(email);
+            }
+        }
+        return message.toString();
+    }
+
+    // Receives invalidations published by any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        invalidateLocally(parts[0], Arrays.copyOfRange(parts, 1, parts.length));
+    }
+
+    private void invalidateLocally(String userId, String... emails) {
+        users.invalidate(userId);
+        for (String email : emails) {
+            if (email != null) {
+                userIdsByEmail.invalidate(email);
+            }
+        }
+    }
+
+    // Copies a user as read from MongoDB without its hashes, for L1 to hold what L2 holds
+    private static User withoutSecrets(User user) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setUsername(user.getUsername());
+        copy.setEmail(user.getEmail());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setUpdatedAt(user.getUpdatedAt());
+        copy.setRoles(user.getRoles());
+        copy.setSecurityQuestion(user.getSecurityQuestion());
+        return copy;
+    }
+
+    // Reads MongoDB, sharing the read with concurrent lookups of the same key
+    private Optional<User> loadFromDatabase(String key, Supplier<Optional<User>> loader) {
+        return databaseLoads.run(key, () -> databaseLoadTime.record(loader));
+    }
+
+    private User readFromRedis(String key) {
+        try {
+            String json = redisLoadTime.record(() -> redisTemplate.opsForValue().get(key));
+            if (json == null || json.equals(TOMBSTONE)) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            return objectMapper.readValue(json, User.class);
+        } catch (JsonProcessingException | RuntimeException e) {
+            redisErrors.increment();
+            logger.warn("UserCache - Failed to read {} from Redis, falling back to MongoDB", key, e);
+            return null;
+        }
+    }
+
+    private String readIdFromRedis(String email) {
+        try {
+            return redisLoadTime.record(() -> redisTemplate.opsForValue().get(EMAIL_PREFIX + email));
+        } catch (RuntimeException e) {
+            redisErrors.increment();
+            logger.warn("UserCache - Failed to read the user ID of an email from Redis", e);
+            return null;
+        }
+    }
+
+    // Fills L2 after a MongoDB read, leaving any newer write-through or tombstone in place
+    private void fillRedis(User user) {
+        try {
+            redisTemplate.opsForValue().setIfAbsent(USER_PREFIX + user.getId(), objectMapper.writeValueAsString(user), redisTtl);
+            if (user.getEmail() != null) {
+                redisTemplate.opsForValue().setIfAbsent(EMAIL_PREFIX + user.getEmail(), user.getId(), redisTtl);
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            redisErrors.increment();
+            logger.warn("UserCache - Failed to write user {} to Redis", user.getId(), e);
+        }
+    }
+
+    private void evictFromRedis(String userId) {
+        try {
+            redisTemplate.delete(USER_PREFIX + userId);
+        } catch (RuntimeException e) {
+            logger.error("UserCache - Failed to drop user {} from Redis", userId, e);
+        }
+    }
+
+    // Leaves the hashes out of users written to Redis, and out of entries written before they were left out
+    @JsonIgnoreProperties({"passwordHash", "securityAnswerHash"})
+    private abstract static class WithoutSecrets {
+    }
+}
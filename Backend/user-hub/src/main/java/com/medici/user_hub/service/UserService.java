@@ -2,6 +2,8 @@ package com.medici.user_hub.service;
 
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.DatabaseException;
+import com.medici.user_hub.handler.ServiceBusyException;
+import com.medici.user_hub.handler.TokenServiceException;
 import com.medici.user_hub.handler.ValidationException;
 import com.medici.user_hub.model.User;
 import com.medici.user_hub.model.Role;
@@ -9,19 +11,26 @@ import com.medici.user_hub.repository.UserRepository;
 import com.medici.user_hub.security.CustomUserDetails;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 /**
  * Service class for handling User-related operations.
@@ -35,10 +44,24 @@ public class UserService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private RegisteredEmails registeredEmails;
 
     /**
      * Registers a new user with validation and secure password hashing.
+     * The password and security answer hashes run concurrently, and duplicate emails are rejected by the
+     * unique email index on insert rather than by a separate lookup, so a registration takes about one
+     * hash and one write and concurrent registrations of the same email have exactly one winner.
+     * If any step fails, hashes that have not finished are cancelled.
      */
     public String registerUser(User user) {
         logger.debug("Attempting to register new user with email: {}", user.getEmail());
@@ -46,16 +69,20 @@ public class UserService implements UserDetailsService {
         // Validate user input
         validateUserFields(user);
 
-        if (userRepository.existsByEmail(user.getEmail())) {
-            logger.warn("Registration failed - Email already exists: {}", user.getEmail());
-            throw new ValidationException("Email already in use");
-        }
-
+        List<Future<String>> hashes = new ArrayList<>(2);
         try {
-            // Hash sensitive data
-            user.setPasswordHash(passwordEncoder.encode(user.getPasswordHash()));
+            // Hash sensitive data on the hashing pool
+            Future<String> passwordHash = passwordHasher.encodeAsync(user.getPasswordHash());
+            hashes.add(passwordHash);
+            Future<String> answerHash = null;
             if (user.getSecurityAnswerHash() != null) {
-                user.setSecurityAnswerHash(passwordEncoder.encode(user.getSecurityAnswerHash()));
+                answerHash = passwordHasher.encodeAsync(user.getSecurityAnswerHash());
+                hashes.add(answerHash);
+            }
+
+            user.setPasswordHash(passwordHasher.await(passwordHash));
+            if (answerHash != null) {
+                user.setSecurityAnswerHash(passwordHasher.await(answerHash));
             }
 
             // Set timestamps
@@ -68,21 +95,32 @@ public class UserService implements UserDetailsService {
                 user.setRoles(Collections.singleton(Role.USER));
             }
 
-            userRepository.save(user);
+            // IDs are assigned by MongoDB, so the only unique key an insert can collide on is the email
+            user.setId(null);
+            userRepository.insert(user);
+            registeredEmails.add(user.getEmail());
             logger.info("User registered successfully with email: {}", user.getEmail());
             return "User registered successfully";
+        } catch (DuplicateKeyException ex) {
+            logger.warn("Registration failed - Email already exists: {}", user.getEmail());
+            throw new ValidationException("Email already in use");
+        } catch (ServiceBusyException ex) {
+            throw ex;
         } catch (Exception ex) {
             logger.error("Failed to register user", ex);
             throw new DatabaseException("Failed to register user in the database", ex);
+        } finally {
+            // Once any step has failed, hashes still queued are dropped; completed ones are unaffected
+            hashes.forEach(hash -> hash.cancel(true));
         }
     }
 
     /**
-     * Retrieves a user by their ID.
+     * Retrieves a user by their ID, from the user cache when possible. The returned user is shared and must not be modified.
      */
     public User getUserById(String id) {
         logger.debug("Fetching user by ID: {}", id);
-        return userRepository.findById(id)
+        return userCache.getById(id, userRepository::findById)
                 .orElseThrow(() -> {
                     logger.warn("User not found with ID: {}", id);
                     return new ResourceNotFoundException("User not found with ID: " + id);
@@ -90,12 +128,15 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * Updates an existing user's information.
+     * Updates an existing user's information. Changing the password, security answer, email or roles
+     * revokes every token issued to the user so far; other changes leave existing sessions alone.
      */
     public User updateUser(String id, User userUpdates) {
         logger.debug("Attempting to update user with ID: {}", id);
 
-        User existingUser = getUserById(id);
+        User existingUser = findUserForUpdate(id);
+        String previousEmail = existingUser.getEmail();
+        Set<Role> previousRoles = existingUser.getRoles();
         validateUserFields(userUpdates);
 
         try {
@@ -105,7 +146,7 @@ public class UserService implements UserDetailsService {
 
             // Update password if provided
             if (userUpdates.getPasswordHash() != null) {
-                existingUser.setPasswordHash(passwordEncoder.encode(userUpdates.getPasswordHash()));
+                existingUser.setPasswordHash(passwordHasher.encode(userUpdates.getPasswordHash()));
             }
 
             // Update security question and answer if provided
@@ -113,7 +154,7 @@ public class UserService implements UserDetailsService {
                 existingUser.setSecurityQuestion(userUpdates.getSecurityQuestion());
             }
             if (userUpdates.getSecurityAnswerHash() != null) {
-                existingUser.setSecurityAnswerHash(passwordEncoder.encode(userUpdates.getSecurityAnswerHash()));
+                existingUser.setSecurityAnswerHash(passwordHasher.encode(userUpdates.getSecurityAnswerHash()));
             }
 
             // Update roles if provided
@@ -123,9 +164,30 @@ public class UserService implements UserDetailsService {
 
             existingUser.setUpdatedAt(LocalDateTime.now());
 
-            User updatedUser = userRepository.save(existingUser);
+            User updatedUser;
+            try {
+                updatedUser = userRepository.save(existingUser);
+            } catch (DuplicateKeyException ex) {
+                logger.warn("Update failed - Email already exists: {}", existingUser.getEmail());
+                throw new ValidationException("Email already in use");
+            }
+            userCache.update(updatedUser, previousEmail);
+            if (!updatedUser.getEmail().equals(previousEmail)) {
+                registeredEmails.add(updatedUser.getEmail());
+            }
             logger.info("User updated successfully: {}", id);
+
+            // Sessions opened with the old credentials or carrying the old roles must sign in again
+            boolean credentialsChanged = userUpdates.getPasswordHash() != null
+                    || userUpdates.getSecurityAnswerHash() != null
+                    || !updatedUser.getEmail().equals(previousEmail)
+                    || !Objects.equals(updatedUser.getRoles(), previousRoles);
+            if (credentialsChanged) {
+                tokenService.revokeAllTokens(id);
+            }
             return updatedUser;
+        } catch (TokenServiceException | ServiceBusyException | ValidationException ex) {
+            throw ex;
         } catch (Exception ex) {
             logger.error("Failed to update user", ex);
             throw new DatabaseException("Failed to update user with ID: " + id, ex);
@@ -133,17 +195,35 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * Retrieves a user by their email address.
+     * Retrieves a user by their email address, from the user cache when possible. The returned user is shared and must not be modified.
      */
     public User getUserByEmail(String email) {
         logger.debug("Fetching user by email: {}", email);
-        return userRepository.findByEmail(email)
+        return findUserByEmail(email)
                 .orElseThrow(() -> {
                     logger.warn("User not found with email: {}", email);
                     return new ResourceNotFoundException("User not found with email: " + email);
                 });
     }
 
+    /**
+     * Checks login credentials. An unknown email gives the same result as a wrong password and costs the
+     * same password check, so neither the response nor its timing tells whether an email is registered.
+     *
+     * @param email       The email given at login
+     * @param rawPassword The password given at login
+     * @return The user, possibly the shared cached instance, if the email is registered and the password matches
+     */
+    public Optional<User> authenticate(String email, String rawPassword) {
+        Optional<User> user = findUserByEmail(email);
+        if (user.isEmpty()) {
+            logger.warn("Login attempt for unknown email: {}", email);
+            passwordHasher.simulateMatch(rawPassword);
+            return Optional.empty();
+        }
+        return validatePassword(user.get(), rawPassword) ? user : Optional.empty();
+    }
+
     /**
      * Retrieves a user's security question by their email.
      */
@@ -159,20 +239,32 @@ public class UserService implements UserDetailsService {
     public boolean verifySecurityAnswerAndResetPassword(String email, String answer, String newPassword) {
         logger.debug("Attempting to verify security answer and reset password for email: {}", email);
 
-        User user = getUserByEmail(email);
+        Optional<User> stored = registeredEmails.mightBeRegistered(email) ? userRepository.findByEmail(email) : Optional.empty();
+        if (stored.isEmpty()) {
+            // Checks the answer anyway, so an unknown email takes as long as a wrong answer
+            passwordHasher.simulateMatch(answer);
+            logger.warn("User not found with email: {}", email);
+            throw new ResourceNotFoundException("User not found with email: " + email);
+        }
+        User user = stored.get();
 
-        if (!passwordEncoder.matches(answer, user.getSecurityAnswerHash())) {
+        if (!passwordHasher.matches(answer, user.getSecurityAnswerHash())) {
             logger.warn("Invalid security answer attempt for email: {}", email);
             throw new ValidationException("Incorrect security answer");
         }
 
         try {
-            user.setPasswordHash(passwordEncoder.encode(newPassword));
+            user.setPasswordHash(passwordHasher.encode(newPassword));
             user.setUpdatedAt(LocalDateTime.now());
             userRepository.save(user);
+            userCache.update(user);
 
+            // Sign out every existing session of the user
+            tokenService.revokeAllTokens(user.getId());
             logger.info("Password reset successful for user: {}", email);
             return true;
+        } catch (TokenServiceException | ServiceBusyException ex) {
+            throw ex;
         } catch (Exception ex) {
             logger.error("Failed to reset password", ex);
             throw new DatabaseException("Failed to reset password for user: " + email, ex);
@@ -185,10 +277,15 @@ public class UserService implements UserDetailsService {
     public void deleteUser(String id) {
         logger.debug("Attempting to delete user with ID: {}", id);
 
-        User user = getUserById(id);
+        User user = findUserForUpdate(id);
         try {
+            // The email stays in the registered email filter, where it only costs a lookup, until the next rebuild
             userRepository.delete(user);
+            userCache.evict(id, user.getEmail());
+            tokenService.revokeAllTokens(id);
             logger.info("User deleted successfully: {}", id);
+        } catch (TokenServiceException ex) {
+            throw ex;
         } catch (Exception ex) {
             logger.error("Failed to delete user", ex);
             throw new DatabaseException("Failed to delete user with ID: " + id, ex);
@@ -210,6 +307,23 @@ public class UserService implements UserDetailsService {
         }
     }
 
+    /**
+     * Loads every stored email into the registered email filter. Runs at startup and then periodically,
+     * which drops deleted emails and repairs the filter after registration messages were missed while
+     * the pub/sub connection was down. On failure the filter is marked as not synced, so lookups go to
+     * the user store until the next successful run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${registeredEmails.resyncIntervalMs:300000}", fixedDelayString = "${registeredEmails.resyncIntervalMs:300000}")
+    public void syncRegisteredEmails() {
+        try {
+            registeredEmails.load(userRepository.count(), () -> userRepository.streamAllEmails().map(User::getEmail));
+        } catch (Exception e) {
+            registeredEmails.markUnsynced();
+            logger.error("Failed to load registered emails from the database", e);
+        }
+    }
+
     /**
      * Checks if a user has admin privileges.
      */
@@ -221,28 +335,91 @@ public class UserService implements UserDetailsService {
      * Validates a raw password against an encoded password.
      */
     public boolean validatePassword(String rawPassword, String encodedPassword) {
-        return passwordEncoder.matches(rawPassword, encodedPassword);
+        return passwordHasher.matches(rawPassword, encodedPassword);
     }
 
     /**
-     * Implementation of UserDetailsService for Spring Security.
+     * Validates a user's password at login against the hash stored in MongoDB, as cached users carry no
+     * hashes. If it matches a hash made with other parameters than new hashes get, such as a lower cost,
+     * the password is hashed again and stored; failing to do so does not fail the login.
+     *
+     * @param user        The user, possibly the shared cached instance, which is not modified
+     * @param rawPassword The password given at login
+     * @return True if the password matches
+     */
+    public boolean validatePassword(User user, String rawPassword) {
+        String storedHash = userRepository.findPasswordHashById(user.getId()).map(User::getPasswordHash).orElse(null);
+        if (storedHash == null) {
+            // Deleted since it was cached; checks the password anyway, so this takes as long as a wrong password
+            passwordHasher.simulateMatch(rawPassword);
+            return false;
+        }
+        if (!passwordHasher.matches(rawPassword, storedHash)) {
+            return false;
+        }
+        if (passwordHasher.upgradeEncoding(storedHash)) {
+            try {
+                // Only replaces the hash it checked, so a concurrent password change wins
+                if (userRepository.replacePasswordHash(user.getId(), storedHash, passwordHasher.encode(rawPassword)) > 0) {
+                    userRepository.findById(user.getId()).ifPresent(userCache::update);
+                    logger.info("Rehashed password of user {} with the current parameters", user.getId());
+                }
+            } catch (Exception ex) {
+                logger.warn("Failed to rehash password of user {}", user.getId(), ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Implementation of UserDetailsService for Spring Security, authenticated at the user's current token version.
      */
     @Override
     public UserDetails loadUserByUsername(String userId) throws UsernameNotFoundException {
+        try {
+            return loadPrincipal(userId, tokenService.getTokenVersion(userId));
+        } catch (ResourceNotFoundException ex) {
+            throw new UsernameNotFoundException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Builds the authenticated principal of a user, which carries none of the user's secrets.
+     *
+     * @param userId       The user ID
+     * @param tokenVersion The token version the user authenticated with
+     * @return The principal
+     * @throws ResourceNotFoundException If the user does not exist
+     */
+    public CustomUserDetails loadPrincipal(String userId, long tokenVersion) {
         logger.debug("Loading user details for ID: {}", userId);
-        return userRepository.findById(userId)
-                .map(CustomUserDetails::new)
+        return userCache.getById(userId, userRepository::findById)
+                .map(user -> CustomUserDetails.of(user, tokenVersion))
                 .orElseThrow(() -> {
                     logger.warn("User not found with ID: {}", userId);
-                    return new UsernameNotFoundException("User not found with ID: " + userId);
+                    return new ResourceNotFoundException("User not found with ID: " + userId);
+                });
+    }
+
+    /**
+     * Reads a user straight from the database for a change, so the shared cached copy is never modified.
+     */
+    private User findUserForUpdate(String id) {
+        return userRepository.findById(id)
+                .orElseThrow(() -> {
+                    logger.warn("User not found with ID: {}", id);
+                    return new ResourceNotFoundException("User not found with ID: " + id);
                 });
     }
 
     /**
-     * Protected getter for password encoder (used in tests).
+     * Looks a user up by email, skipping the cache and the database for emails the registered email filter rules out.
      */
-    protected BCryptPasswordEncoder getPasswordEncoder() {
-        return this.passwordEncoder;
+    private Optional<User> findUserByEmail(String email) {
+        if (!registeredEmails.mightBeRegistered(email)) {
+            return Optional.empty();
+        }
+        return userCache.getByEmail(email, userRepository::findByEmail);
     }
 
     /**
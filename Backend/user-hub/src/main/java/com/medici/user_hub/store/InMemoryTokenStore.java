@@ -0,0 +1,174 @@
+package com.medici.user_hub.store;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token store kept in process memory, for single-node deployments and test rigs where a network hop
+ * per check is not worth paying. State is lost on restart and not shared between nodes.
+ * <p>
+ * Reads treat expired entries as absent, so expiry is exact; removing them is left to a
+ * {@link TimingWheel} advanced by one background thread, which costs O(1) per entry instead of a
+ * timer or heap entry each.
+ */
+@Component
+@ConditionalOnProperty(name = "jwt.tokenStore.type", havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryTokenStore.class);
+
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Map<String, Long> refreshTokens = new ConcurrentHashMap<>();
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    private final Map<String, Long> tokenVersions = new ConcurrentHashMap<>();
+    private final TimingWheel<Runnable> expirations;
+    private final ScheduledExecutorService reaper;
+
+    // The newest token of a refresh token family, the one it replaced and when
+    private record Family(String current, String previous, long rotatedAt, long expiresAt) {
+    }
+
+    public InMemoryTokenStore(@Value("${jwt.tokenStore.tickMs:100}") long tickMs,
+                              @Value("${jwt.tokenStore.wheelSize:512}") int wheelSize) {
+        this.expirations = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-store-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleAtFixedRate(this::removeExpired, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    @Override
+    public void revoke(String tokenId, long expiresAt) {
+        revokedTokens.merge(tokenId, expiresAt, Math::max);
+        expireAt(revokedTokens, tokenId, expiresAt);
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId, long expiresAt) {
+        return isLive(revokedTokens.get(tokenId));
+    }
+
+    @Override
+    public Map<String, Long> revokedTokens() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> snapshot = new HashMap<>();
+        revokedTokens.forEach((tokenId, expiresAt) -> {
+            if (expiresAt > now) {
+                snapshot.put(tokenId, expiresAt);
+            }
+        });
+        return snapshot;
+    }
+
+    @Override
+    public long getTokenVersion(String userId) {
+        return tokenVersions.getOrDefault(userId, 0L);
+    }
+
+    @Override
+    public long incrementTokenVersion(String userId) {
+        return tokenVersions.merge(userId, 1L, Long::sum);
+    }
+
+    @Override
+    public void startRefreshTokenFamily(String familyId, String tokenId, long ttlMs) {
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        families.put(familyId, new Family(tokenId, null, 0, expiresAt));
+        expireFamilyAt(familyId, expiresAt);
+    }
+
+    @Override
+    public RefreshTokenRotation rotateRefreshToken(String familyId, String tokenId, String newTokenId, long ttlMs, long graceMs) {
+        long now = System.currentTimeMillis();
+        RefreshTokenRotation[] rotation = {RefreshTokenRotation.INVALID};
+        // compute() runs atomically per family, which gives the same guarantees as the Redis script
+        families.compute(familyId, (id, family) -> {
+            if (family == null || family.expiresAt() <= now) {
+                rotation[0] = RefreshTokenRotation.INVALID;
+                return null;
+            }
+            if (family.current().equals(tokenId)) {
+                rotation[0] = RefreshTokenRotation.ROTATED;
+                return new Family(newTokenId, tokenId, now, now + ttlMs);
+            }
+            if (tokenId.equals(family.previous()) && now - family.rotatedAt() <= graceMs) {
+                rotation[0] = RefreshTokenRotation.ALREADY_ROTATED;
+                return family;
+            }
+            rotation[0] = RefreshTokenRotation.REUSED;
+            return null;
+        });
+        if (rotation[0] == RefreshTokenRotation.ROTATED) {
+            expireFamilyAt(familyId, now + ttlMs);
+        }
+        return rotation[0];
+    }
+
+    @Override
+    public void endRefreshTokenFamily(String familyId) {
+        families.remove(familyId);
+    }
+
+    @Override
+    public void storeRefreshToken(String tokenId, long ttlMs) {
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        refreshTokens.put(tokenId, expiresAt);
+        expireAt(refreshTokens, tokenId, expiresAt);
+    }
+
+    @Override
+    public boolean containsRefreshToken(String tokenId) {
+        return isLive(refreshTokens.get(tokenId));
+    }
+
+    @Override
+    public void deleteRefreshToken(String tokenId) {
+        refreshTokens.remove(tokenId);
+    }
+
+    @Override
+    public long getRefreshTokenTtl(String tokenId) {
+        Long expiresAt = refreshTokens.get(tokenId);
+        return isLive(expiresAt) ? expiresAt - System.currentTimeMillis() : -2;
+    }
+
+    // Removes an entry once it expires, unless it has been given a later expiry since
+    private void expireAt(Map<String, Long> entries, String key, long expiresAt) {
+        expirations.schedule(() -> entries.remove(key, expiresAt), expiresAt);
+    }
+
+    private void expireFamilyAt(String familyId, long expiresAt) {
+        expirations.schedule(() -> families.computeIfPresent(familyId,
+                (id, family) -> family.expiresAt() <= expiresAt ? null : family), expiresAt);
+    }
+
+    private void removeExpired() {
+        try {
+            expirations.advance(System.currentTimeMillis()).forEach(Runnable::run);
+        } catch (RuntimeException e) {
+            logger.error("InMemoryTokenStore - Failed to remove expired entries", e);
+        }
+    }
+
+    private static boolean isLive(Long expiresAt) {
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,210 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenVersionCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token store shared by every node through Redis. Revocations and token version bumps are
+ * published on the channels of {@link RevokedTokenCache} and {@link TokenVersionCache}
+ * so each node's local caches pick them up without polling.
+ */
+@Component
+@ConditionalOnProperty(name = "jwt.tokenStore.type", havingValue = "redis", matchIfMissing = true)
+public class RedisTokenStore implements TokenStore {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisScript<Long> rotateRefreshTokenScript;
+
+    @Value("${jwt.revocation.bucketMs:3600000}")
+    private long revocationBucketMs;
+
+    private static final String REVOKED_BUCKET_PREFIX = "revoked:";
+    private static final String REFRESH_TOKEN_PREFIX = "refresh:";
+    private static final String REFRESH_FAMILY_PREFIX = "refresh-family:";
+    static final String TOKEN_VERSION_PREFIX = "token-version:";
+    // Only the key's presence matters; Redis keeps a small integer without a separate string allocation
+    private static final String REFRESH_TOKEN_MARKER = "1";
+    private static final int SCAN_BATCH_SIZE = 1000;
+    private static final int PIPELINE_BATCH_SIZE = 1000;
+
+    /**
+     * Adds the token ID to the Redis set of the expiry bucket the token falls in. The set expires as a
+     * whole once every token in the bucket has expired, so no per-token key or TTL is kept.
+     */
+    @Override
+    public void revoke(String tokenId, long expiresAt) {
+        byte[] bucketKey = bytes(revocationBucketKey(expiresAt));
+        long bucketExpiresAt = revocationBucketEnd(expiresAt);
+        // Add, (re)arm the bucket's expiry and notify other nodes in one round trip
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setCommands().sAdd(bucketKey, bytes(tokenId));
+            connection.keyCommands().pExpireAt(bucketKey, bucketExpiresAt);
+            connection.publish(bytes(RevokedTokenCache.CHANNEL), bytes(RevokedTokenCache.message(tokenId, expiresAt)));
+            return null;
+        });
+    }
+
+    /**
+     * Pipelines the revocations in batches, so a batch costs one round trip instead of one per token.
+     * Each bucket's expiry is armed once per batch.
+     */
+    @Override
+    public void revokeAll(Map<String, Long> revocations) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(revocations.entrySet());
+        for (int from = 0; from < entries.size(); from += PIPELINE_BATCH_SIZE) {
+            List<Map.Entry<String, Long>> batch = entries.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, entries.size()));
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                Map<String, Long> bucketEnds = new HashMap<>();
+                byte[] channel = bytes(RevokedTokenCache.CHANNEL);
+                for (Map.Entry<String, Long> revocation : batch) {
+                    String bucketKey = revocationBucketKey(revocation.getValue());
+                    connection.setCommands().sAdd(bytes(bucketKey), bytes(revocation.getKey()));
+                    connection.publish(channel, bytes(RevokedTokenCache.message(revocation.getKey(), revocation.getValue())));
+                    bucketEnds.putIfAbsent(bucketKey, revocationBucketEnd(revocation.getValue()));
+                }
+                bucketEnds.forEach((bucketKey, bucketEnd) -> connection.keyCommands().pExpireAt(bytes(bucketKey), bucketEnd));
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId, long expiresAt) {
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(revocationBucketKey(expiresAt), tokenId));
+    }
+
+    @Override
+    public Map<String, Long> revokedTokens() {
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(
+                ScanOptions.scanOptions().match(REVOKED_BUCKET_PREFIX + "*").count(SCAN_BATCH_SIZE).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+
+        // Read every bucket in one round trip
+        List<Object> buckets = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.setCommands().sMembers(bytes(key));
+            }
+            return null;
+        });
+
+        Map<String, Long> revokedTokens = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (buckets.get(i) instanceof Collection<?> members) {
+                // Members only record their bucket, so each is kept until the bucket ends
+                long bucketEnd = (Long.parseLong(keys.get(i).substring(REVOKED_BUCKET_PREFIX.length())) + 1) * revocationBucketMs;
+                for (Object member : members) {
+                    revokedTokens.put((String) member, bucketEnd);
+                }
+            }
+        }
+        return revokedTokens;
+    }
+
+    @Override
+    public long getTokenVersion(String userId) {
+        String version = redisTemplate.opsForValue().get(TOKEN_VERSION_PREFIX + userId);
+        return version != null ? Long.parseLong(version) : 0L;
+    }
+
+    @Override
+    public long incrementTokenVersion(String userId) {
+        Long version = redisTemplate.opsForValue().increment(TOKEN_VERSION_PREFIX + userId);
+        if (version == null) {
+            throw new IllegalStateException("INCR returned no value");
+        }
+        redisTemplate.convertAndSend(TokenVersionCache.CHANNEL, TokenVersionCache.message(userId, version));
+        return version;
+    }
+
+    @Override
+    public void startRefreshTokenFamily(String familyId, String tokenId, long ttlMs) {
+        byte[] familyKey = bytes(REFRESH_FAMILY_PREFIX + familyId);
+        // Store the token and arm the family's expiry in one round trip
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(familyKey, bytes("current"), bytes(tokenId));
+            connection.keyCommands().pExpire(familyKey, ttlMs);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the whole rotation as one server-side script, so it costs a single round trip and
+     * concurrent refreshes with the same token cannot both succeed.
+     */
+    @Override
+    public RefreshTokenRotation rotateRefreshToken(String familyId, String tokenId, String newTokenId, long ttlMs, long graceMs) {
+        Long result = redisTemplate.execute(rotateRefreshTokenScript, List.of(REFRESH_FAMILY_PREFIX + familyId),
+                tokenId, newTokenId, String.valueOf(ttlMs), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(graceMs));
+        if (result == null) {
+            return RefreshTokenRotation.INVALID;
+        }
+        return switch (result.intValue()) {
+            case 1 -> RefreshTokenRotation.ROTATED;
+            case 2 -> RefreshTokenRotation.ALREADY_ROTATED;
+            case -1 -> RefreshTokenRotation.REUSED;
+            default -> RefreshTokenRotation.INVALID;
+        };
+    }
+
+    @Override
+    public void endRefreshTokenFamily(String familyId) {
+        redisTemplate.delete(REFRESH_FAMILY_PREFIX + familyId);
+    }
+
+    @Override
+    public void storeRefreshToken(String tokenId, long ttlMs) {
+        redisTemplate.opsForValue().set(REFRESH_TOKEN_PREFIX + tokenId, REFRESH_TOKEN_MARKER, ttlMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean containsRefreshToken(String tokenId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(REFRESH_TOKEN_PREFIX + tokenId));
+    }
+
+    @Override
+    public void deleteRefreshToken(String tokenId) {
+        redisTemplate.delete(REFRESH_TOKEN_PREFIX + tokenId);
+    }
+
+    @Override
+    public long getRefreshTokenTtl(String tokenId) {
+        Long expiration = redisTemplate.getExpire(REFRESH_TOKEN_PREFIX + tokenId, TimeUnit.MILLISECONDS);
+        return (expiration != null) ? expiration : -1;
+    }
+
+    // Returns the key of the set holding revocations of tokens that expire in the same bucket
+    private String revocationBucketKey(long expiresAt) {
+        return REVOKED_BUCKET_PREFIX + expiresAt / revocationBucketMs;
+    }
+
+    private long revocationBucketEnd(long expiresAt) {
+        return (expiresAt / revocationBucketMs + 1) * revocationBucketMs;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
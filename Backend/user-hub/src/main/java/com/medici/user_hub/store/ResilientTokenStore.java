@@ -0,0 +1,219 @@
+package com.medici.user_hub.store;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Guards every {@link RedisTokenStore} call with the {@code tokenStore} circuit breaker, and retries
+ * idempotent calls once with jitter. The per-call deadline is the Redis command timeout
+ * ({@code spring.data.redis.timeout}). While the breaker is open, calls fail at once instead of
+ * waiting for Redis, so callers degrade quickly.
+ * <p>
+ * Revocations that cannot reach Redis are kept locally, answered from there on this node, and
+ * replayed once Redis is back so every other node learns of them too.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "jwt.tokenStore.type", havingValue = "redis", matchIfMissing = true)
+public class ResilientTokenStore implements TokenStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResilientTokenStore.class);
+    private static final String INSTANCE_NAME = "tokenStore";
+
+    private final RedisTokenStore delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Retry retry;
+    private final int maxPendingRevocations;
+    private final Map<String, Long> pendingRevocations = new ConcurrentHashMap<>();
+
+    public ResilientTokenStore(RedisTokenStore delegate,
+                               CircuitBreakerRegistry circuitBreakerRegistry,
+                               RetryRegistry retryRegistry,
+                               @Value("${jwt.tokenStore.maxPendingRevocations:100000}") int maxPendingRevocations,
+                               MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(INSTANCE_NAME);
+        this.retry = retryRegistry.retry(INSTANCE_NAME);
+        this.maxPendingRevocations = maxPendingRevocations;
+        Gauge.builder("jwt.token-store.pending-revocations", pendingRevocations, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Revokes in Redis, or keeps the revocation locally for replay if Redis is unavailable.
+     *
+     * @throws RuntimeException if Redis is unavailable and the local backlog is full
+     */
+    @Override
+    public void revoke(String tokenId, long expiresAt) {
+        try {
+            call(() -> {
+                delegate.revoke(tokenId, expiresAt);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (pendingRevocations.size() >= maxPendingRevocations) {
+                throw e;
+            }
+            pendingRevocations.merge(tokenId, expiresAt, Math::max);
+            logger.warn("ResilientTokenStore - Redis unavailable, revocation of token {} kept for replay", tokenId, e);
+        }
+    }
+
+    /**
+     * Revokes a batch in Redis, or keeps it locally for replay if Redis is unavailable.
+     *
+     * @throws RuntimeException if Redis is unavailable and the batch does not fit in the local backlog
+     */
+    @Override
+    public void revokeAll(Map<String, Long> revocations) {
+        try {
+            call(() -> {
+                delegate.revokeAll(revocations);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (pendingRevocations.size() + revocations.size() > maxPendingRevocations) {
+                throw e;
+            }
+            revocations.forEach((tokenId, expiresAt) -> pendingRevocations.merge(tokenId, expiresAt, Math::max));
+            logger.warn("ResilientTokenStore - Redis unavailable, {} revocations kept for replay", revocations.size(), e);
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId, long expiresAt) {
+        return pendingRevocations.containsKey(tokenId) || call(() -> delegate.isRevoked(tokenId, expiresAt));
+    }
+
+    @Override
+    public Map<String, Long> revokedTokens() {
+        Map<String, Long> revokedTokens = new HashMap<>(call(delegate::revokedTokens));
+        pendingRevocations.forEach((tokenId, expiresAt) -> revokedTokens.merge(tokenId, expiresAt, Math::max));
+        return revokedTokens;
+    }
+
+    @Override
+    public long getTokenVersion(String userId) {
+        return call(() -> delegate.getTokenVersion(userId));
+    }
+
+    // A retried increment can bump the version twice, which revokes exactly the same tokens
+    @Override
+    public long incrementTokenVersion(String userId) {
+        return call(() -> delegate.incrementTokenVersion(userId));
+    }
+
+    @Override
+    public void startRefreshTokenFamily(String familyId, String tokenId, long ttlMs) {
+        call(() -> {
+            delegate.startRefreshTokenFamily(familyId, tokenId, ttlMs);
+            return null;
+        });
+    }
+
+    // Not retried: a retry after a rotation that timed out but succeeded would be reported as a reuse
+    @Override
+    public RefreshTokenRotation rotateRefreshToken(String familyId, String tokenId, String newTokenId, long ttlMs, long graceMs) {
+        return callOnce(() -> delegate.rotateRefreshToken(familyId, tokenId, newTokenId, ttlMs, graceMs));
+    }
+
+    // Retried: deleting a family twice ends it just the same
+    @Override
+    public void endRefreshTokenFamily(String familyId) {
+        call(() -> {
+            delegate.endRefreshTokenFamily(familyId);
+            return null;
+        });
+    }
+
+    @Override
+    public void storeRefreshToken(String tokenId, long ttlMs) {
+        call(() -> {
+            delegate.storeRefreshToken(tokenId, ttlMs);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean containsRefreshToken(String tokenId) {
+        return call(() -> delegate.containsRefreshToken(tokenId));
+    }
+
+    @Override
+    public void deleteRefreshToken(String tokenId) {
+        call(() -> {
+            delegate.deleteRefreshToken(tokenId);
+            return null;
+        });
+    }
+
+    @Override
+    public long getRefreshTokenTtl(String tokenId) {
+        return call(() -> delegate.getRefreshTokenTtl(tokenId));
+    }
+
+    /**
+     * Writes revocations kept while Redis was unavailable. Each attempt goes through the circuit breaker,
+     * so while it is open nothing is sent, and once it lets calls through again the backlog drains.
+     * Revocations of tokens that have expired in the meantime are dropped.
+     */
+    @Scheduled(initialDelayString = "${jwt.tokenStore.replayIntervalMs:5000}", fixedDelayString = "${jwt.tokenStore.replayIntervalMs:5000}")
+    public void replayPendingRevocations() {
+        if (pendingRevocations.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Long> live = new HashMap<>();
+        pendingRevocations.forEach((tokenId, expiresAt) -> {
+            if (expiresAt > now) {
+                live.put(tokenId, expiresAt);
+            } else {
+                pendingRevocations.remove(tokenId, expiresAt);
+            }
+        });
+        if (live.isEmpty()) {
+            return;
+        }
+        try {
+            // The whole backlog goes out as pipelined batches
+            callOnce(() -> {
+                delegate.revokeAll(live);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.debug("ResilientTokenStore - Redis still unavailable, {} revocations pending", live.size());
+            return;
+        }
+        live.forEach(pendingRevocations::remove);
+        logger.info("ResilientTokenStore - Replayed {} revocations kept while Redis was unavailable", live.size());
+    }
+
+    // Returns the number of revocations waiting to be replayed
+    public int pendingRevocations() {
+        return pendingRevocations.size();
+    }
+
+    private <T> T call(Supplier<T> operation) {
+        return Retry.decorateSupplier(retry, CircuitBreaker.decorateSupplier(circuitBreaker, operation)).get();
+    }
+
+    private <T> T callOnce(Supplier<T> operation) {
+        return circuitBreaker.executeSupplier(operation);
+    }
+}
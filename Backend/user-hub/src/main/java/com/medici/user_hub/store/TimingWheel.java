@@ -0,0 +1,127 @@
+package com.medici.user_hub.store;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: schedules any number of timers at O(1) cost each, without a thread or
+ * heap entry per timer. The lowest wheel has one slot per tick; each higher wheel has one slot per
+ * full turn of the wheel below it and is created only when a timer is due that far ahead. When a
+ * lower wheel completes a turn, the timers in the current slot of the wheel above are moved down,
+ * so each timer is touched at most once per level before it fires.
+ * <p>
+ * Timers fire at tick granularity, never early, and no later than one tick after they are due,
+ * provided {@link #advance} is called every tick.
+ *
+ * @param <T> The type of task scheduled
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<List<ArrayDeque<Timer<T>>>> wheels = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    private record Timer<T>(T task, long tick) {
+    }
+
+    /**
+     * @param tickMs    Duration of one tick in milliseconds
+     * @param wheelSize Number of slots in each wheel
+     * @param startMs   Current time in epoch milliseconds
+     */
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("Timing wheel needs a positive tick and at least two slots");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTick = startMs / tickMs;
+        addWheel();
+    }
+
+    /**
+     * Schedules a task. A task already due fires on the next tick.
+     *
+     * @param task  The task
+     * @param dueMs Time in epoch milliseconds at which the task is due
+     */
+    public synchronized void schedule(T task, long dueMs) {
+        long tick = Math.max(Math.ceilDiv(dueMs, tickMs), currentTick + 1);
+        insert(new Timer<>(task, tick));
+        size++;
+    }
+
+    /**
+     * Moves the wheel forward to a point in time.
+     *
+     * @param nowMs Current time in epoch milliseconds
+     * @return The tasks that became due, in the order they were due
+     */
+    public synchronized List<T> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        List<T> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // Nothing can fire, so skip the idle ticks instead of visiting each slot
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            cascade();
+            ArrayDeque<Timer<T>> slot = wheels.get(0).get(slotIndex(currentTick));
+            Timer<T> timer;
+            while ((timer = slot.poll()) != null) {
+                due.add(timer.task());
+                size--;
+            }
+        }
+        return due;
+    }
+
+    // Returns the number of scheduled tasks that have not fired yet
+    public synchronized int size() {
+        return size;
+    }
+
+    // Moves timers down from every wheel whose lower wheel has just completed a turn
+    private void cascade() {
+        long ticksPerSlot = wheelSize;
+        for (int level = 1; level < wheels.size() && currentTick % ticksPerSlot == 0; level++) {
+            ArrayDeque<Timer<T>> slot = wheels.get(level).get(slotIndex(currentTick / ticksPerSlot));
+            List<Timer<T>> timers = new ArrayList<>(slot);
+            slot.clear();
+            timers.forEach(this::insert);
+            ticksPerSlot *= wheelSize;
+        }
+    }
+
+    // Places a timer in the lowest wheel whose span covers the time left until it is due
+    private void insert(Timer<T> timer) {
+        long remaining = timer.tick() - currentTick;
+        long ticksPerSlot = 1;
+        int level = 0;
+        while (remaining >= ticksPerSlot * wheelSize && ticksPerSlot <= Long.MAX_VALUE / wheelSize / wheelSize) {
+            ticksPerSlot *= wheelSize;
+            level++;
+        }
+        while (wheels.size() <= level) {
+            addWheel();
+        }
+        wheels.get(level).get(slotIndex(timer.tick() / ticksPerSlot)).add(timer);
+    }
+
+    private int slotIndex(long tick) {
+        return (int) Math.floorMod(tick, (long) wheelSize);
+    }
+
+    private void addWheel() {
+        List<ArrayDeque<Timer<T>>> wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        wheels.add(wheel);
+    }
+}
@@ -0,0 +1,97 @@
+package com.medici.user_hub.store;
+
+import java.util.Map;
+
+/**
+ * Storage behind {@link com.medici.user_hub.service.TokenService}: revoked token IDs, per-user token
+ * versions and refresh tokens. The backend is chosen with {@code jwt.tokenStore.type}: {@code redis}
+ * (the default) shares state across nodes, {@code memory} keeps it in-process for single-node
+ * deployments and test rigs. Implementations let failures propagate; callers wrap them.
+ */
+public interface TokenStore {
+
+    /**
+     * Outcome of presenting a refresh token for rotation.
+     */
+    enum RefreshTokenRotation {
+        // The token was current and has been replaced by the new one
+        ROTATED,
+        // The token was replaced moments ago, typically by a concurrent refresh from another tab
+        ALREADY_ROTATED,
+        // The token was replaced long ago and presented again, so the whole family has been revoked
+        REUSED,
+        // The family is unknown, expired or revoked
+        INVALID
+    }
+
+    /**
+     * Records a revoked token until it expires and notifies the other nodes sharing the store.
+     *
+     * @param tokenId   The token ID
+     * @param expiresAt Expiration time of the token in epoch milliseconds
+     */
+    void revoke(String tokenId, long expiresAt);
+
+    /**
+     * Records many revoked tokens at once. Backends that talk to a server should batch the writes.
+     *
+     * @param revocations Token IDs mapped to the expiration time of each token in epoch milliseconds
+     */
+    default void revokeAll(Map<String, Long> revocations) {
+        revocations.forEach(this::revoke);
+    }
+
+    /**
+     * Checks whether a token has been revoked.
+     *
+     * @param tokenId   The token ID
+     * @param expiresAt Expiration time of the token in epoch milliseconds
+     * @return True if the token was revoked; an expired token may still be reported for a while
+     */
+    boolean isRevoked(String tokenId, long expiresAt);
+
+    // Returns every revoked token ID mapped to the time in epoch milliseconds until which it must be kept
+    Map<String, Long> revokedTokens();
+
+    // Returns a user's token version, 0 if it was never incremented
+    long getTokenVersion(String userId);
+
+    // Increments a user's token version, notifies the other nodes sharing the store and returns the new version
+    long incrementTokenVersion(String userId);
+
+    /**
+     * Starts a refresh token family with its first token.
+     *
+     * @param familyId The family ID
+     * @param tokenId  The ID of the family's first refresh token
+     * @param ttlMs    The refresh token lifetime in milliseconds
+     */
+    void startRefreshTokenFamily(String familyId, String tokenId, long ttlMs);
+
+    /**
+     * Atomically replaces the newest token of a family, detecting reuse of a replaced token.
+     *
+     * @param familyId   The family ID
+     * @param tokenId    The ID of the presented refresh token
+     * @param newTokenId The ID of the refresh token replacing it
+     * @param ttlMs      The lifetime of the new refresh token in milliseconds
+     * @param graceMs    How long a just-replaced token is answered as {@link RefreshTokenRotation#ALREADY_ROTATED}
+     * @return The outcome of the rotation
+     */
+    RefreshTokenRotation rotateRefreshToken(String familyId, String tokenId, String newTokenId, long ttlMs, long graceMs);
+
+    // Ends a refresh token family, so none of its tokens can be rotated any more; unknown families are ignored
+    void endRefreshTokenFamily(String familyId);
+
+    // Stores a refresh token ID for a given time in milliseconds
+    void storeRefreshToken(String tokenId, long ttlMs);
+
+    // Returns true if the refresh token ID is stored and not expired
+    boolean containsRefreshToken(String tokenId);
+
+    // Removes a stored refresh token ID
+    void deleteRefreshToken(String tokenId);
+
+    // Returns the remaining lifetime of a stored refresh token ID in milliseconds, negative if it is not stored
+    long getRefreshTokenTtl(String tokenId);
+}
@@ -0,0 +1,121 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.security.TokenVersionCache;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.List;
+
+/**
+ * Keeps {@link TokenVersionCache} exact using Redis client-side caching (RESP3 key tracking).
+ * A dedicated connection subscribes in broadcast mode to every key under the token version prefix,
+ * so Redis pushes an invalidation whenever any node, or any other client, changes a version. While
+ * the connection is up cached versions need no TTL; when it drops the cache is flushed and falls
+ * back to the TTL until tracking is re-established.
+ * <p>
+ * Needs Redis 6 or later and a standalone or sentinel setup; otherwise versions keep expiring by TTL.
+ */
+@Component
+@ConditionalOnExpression("'${jwt.tokenStore.type:redis}' == 'redis' and ${jwt.tokenVersionTracking.enabled:false}")
+public class TokenVersionTracker implements PushListener, RedisConnectionStateListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionTracker.class);
+    private static final String INVALIDATE = "invalidate";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final TokenVersionCache tokenVersionCache;
+    private volatile StatefulRedisConnection<String, String> connection;
+
+    public TokenVersionTracker(RedisConnectionFactory connectionFactory, TokenVersionCache tokenVersionCache) {
+        this.connectionFactory = connectionFactory;
+        this.tokenVersionCache = tokenVersionCache;
+    }
+
+    // Opens the tracking connection; without one, cached versions keep expiring by TTL
+    @PostConstruct
+    public void start() {
+        if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)
+                || !(lettuce.getRequiredNativeClient() instanceof RedisClient client)) {
+            logger.warn("TokenVersionTracker - Tracking needs a standalone Lettuce client, token versions expire by TTL");
+            return;
+        }
+        try {
+            StatefulRedisConnection<String, String> trackingConnection = client.connect(StringCodec.UTF8);
+            trackingConnection.addListener((PushListener) this);
+            trackingConnection.addListener((RedisConnectionStateListener) this);
+            connection = trackingConnection;
+            trackingConnection.sync().clientTracking(trackingArgs());
+            tokenVersionCache.setTracked(true);
+        } catch (RuntimeException e) {
+            logger.warn("TokenVersionTracker - Could not enable tracking, token versions expire by TTL", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    // Receives invalidations pushed by Redis; a null key list means every tracked key may have changed
+    @Override
+    public void onPushMessage(PushMessage message) {
+        if (!INVALIDATE.equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+            tokenVersionCache.invalidateAll();
+            return;
+        }
+        for (Object key : keys) {
+            String name = (String) key;
+            if (name.startsWith(RedisTokenStore.TOKEN_VERSION_PREFIX)) {
+                tokenVersionCache.invalidate(name.substring(RedisTokenStore.TOKEN_VERSION_PREFIX.length()));
+            }
+        }
+    }
+
+    // Invalidations sent while disconnected are lost, so the cache cannot be trusted past this point
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+        if (handler == connection) {
+            tokenVersionCache.setTracked(false);
+        }
+    }
+
+    // Tracking is per connection, so it has to be enabled again after a reconnect
+    @Override
+    public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress socketAddress) {
+        StatefulRedisConnection<String, String> trackingConnection = connection;
+        if (handler == trackingConnection) {
+            trackingConnection.async().clientTracking(trackingArgs()).whenComplete((reply, error) -> {
+                if (error == null) {
+                    tokenVersionCache.setTracked(true);
+                } else {
+                    logger.error("TokenVersionTracker - Could not re-enable tracking after reconnect", error);
+                }
+            });
+        }
+    }
+
+    private static TrackingArgs trackingArgs() {
+        return TrackingArgs.Builder.enabled().bcast().prefixes(RedisTokenStore.TOKEN_VERSION_PREFIX);
+    }
+}
@@ -0,0 +1,30 @@
+-- Rotates a refresh token family atomically.
+-- KEYS[1]  refresh-family:<familyId>, a hash of the current token ID, the one it replaced and when
+-- ARGV[1]  ID of the presented refresh token
+-- ARGV[2]  ID of the refresh token replacing it
+-- ARGV[3]  lifetime of the new refresh token in milliseconds
+-- ARGV[4]  current time in epoch milliseconds
+-- ARGV[5]  grace period in milliseconds during which the replaced token is answered as already rotated
+-- Returns 1 if rotated, 2 if the token was rotated within the grace period, -1 if reuse was detected
+-- and the family revoked, 0 if the family is unknown, expired or revoked.
+local family = redis.call('HMGET', KEYS[1], 'current', 'previous', 'rotatedAt')
+local current, previous, rotatedAt = family[1], family[2], family[3]
+
+if not current then
+    return 0
+end
+
+if current == ARGV[1] then
+    redis.call('HSET', KEYS[1], 'current', ARGV[2], 'previous', ARGV[1], 'rotatedAt', ARGV[4])
+    redis.call('PEXPIRE', KEYS[1], ARGV[3])
+    return 1
+end
+
+if previous == ARGV[1] and tonumber(ARGV[4]) - tonumber(rotatedAt) <= tonumber(ARGV[5]) then
+    -- A concurrent refresh from another tab already rotated this token
+    return 2
+end
+
+-- A token that was rotated away is being presented again: assume it was stolen and end the session
+redis.call('DEL', KEYS[1])
+return -1
@@ -0,0 +1,108 @@
+package com.medici.user_hub.benchmark;
+
+import com.medici.user_hub.model.Role;
+import com.medici.user_hub.security.CustomUserDetails;
+import com.medici.user_hub.security.RoleAuthorizationManager;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.authorization.method.SecuredAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares the role checks of {@link RoleAuthorizationManager} against the {@code @PreAuthorize} and
+ * {@code @Secured} managers the controllers used before, for a user who passes the check.
+ * Run {@link #main} from the test classpath after {@code mvn test-compile}; add the GC profiler to the
+ * options to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    private Supplier<Authentication> authentication;
+    private RoleAuthorizationManager userOrAdmin;
+    private RoleAuthorizationManager adminOnly;
+    private PreAuthorizeAuthorizationManager preAuthorize;
+    private SecuredAuthorizationManager secured;
+    private MethodInvocation updateInvocation;
+    private MethodInvocation listInvocation;
+
+    // Stands in for the controller methods with the annotations they carried
+    public static class AnnotatedController {
+
+        @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+        public void update() {
+        }
+
+        @Secured("ROLE_ADMIN")
+        public void list() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        CustomUserDetails principal = new CustomUserDetails("65a1f0c2e4b0a1b2c3d4e5f6", "benchmark-user",
+                Role.USER.bit() | Role.ADMIN.bit(), 1);
+        Authentication token = new UsernamePasswordAuthenticationToken(principal, null,
+                List.copyOf(principal.getAuthorities()));
+        authentication = () -> token;
+        userOrAdmin = RoleAuthorizationManager.anyOf(Role.USER, Role.ADMIN);
+        adminOnly = RoleAuthorizationManager.anyOf(Role.ADMIN);
+        preAuthorize = new PreAuthorizeAuthorizationManager();
+        secured = new SecuredAuthorizationManager();
+        AnnotatedController controller = new AnnotatedController();
+        updateInvocation = new SimpleMethodInvocation(controller, AnnotatedController.class.getMethod("update"));
+        listInvocation = new SimpleMethodInvocation(controller, AnnotatedController.class.getMethod("list"));
+    }
+
+    @Benchmark
+    public AuthorizationDecision userOrAdminRoleMask() {
+        return userOrAdmin.check(authentication, null);
+    }
+
+    @Benchmark
+    public AuthorizationDecision userOrAdminPreAuthorize() {
+        return preAuthorize.check(authentication, updateInvocation);
+    }
+
+    @Benchmark
+    public AuthorizationDecision adminRoleMask() {
+        return adminOnly.check(authentication, null);
+    }
+
+    @Benchmark
+    public AuthorizationDecision adminSecured() {
+        return secured.check(authentication, listInvocation);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthorizationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
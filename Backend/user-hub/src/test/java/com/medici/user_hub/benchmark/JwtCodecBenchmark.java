@@ -0,0 +1,123 @@
+package com.medici.user_hub.benchmark;
+
+import com.medici.user_hub.security.JwtCodec;
+import com.medici.user_hub.security.JwtKeyRegistry;
+import com.medici.user_hub.security.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares token issue and verify through {@link JwtCodec} against the jjwt builder and parser.
+ * Run {@link #main} from the test classpath after {@code mvn test-compile}; add the GC profiler to the
+ * options to compare allocation rates.
+ * The {@code OnVirtualThread} variants run each call on a new virtual thread, as Tomcat does per request
+ * with {@code spring.threads.virtual.enabled}; subtract {@link #startVirtualThread} to get the cost of the call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtCodecBenchmark {
+
+    private static final String SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+
+    private JwtCodec codec;
+    private JwtKeyRegistry.SigningKey key;
+    private Collection<JwtKeyRegistry.SigningKey> keys;
+    private JwtParser parser;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtKeyRegistry keyRegistry = new JwtKeyRegistry(SECRET, new String[0]);
+        codec = new JwtCodec();
+        key = keyRegistry.activeKey();
+        keys = keyRegistry.verificationKeys();
+        parser = key.parser();
+        long now = System.currentTimeMillis();
+        token = codec.encode(key, "65a1f0c2e4b0a1b2c3d4e5f6", "benchmark-user", VerifiedToken.ACCESS, 1, null, null,
+                now, now + TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Benchmark
+    public String encodeCodec() {
+        long now = System.currentTimeMillis();
+        return codec.encode(key, "65a1f0c2e4b0a1b2c3d4e5f6", "benchmark-user", VerifiedToken.ACCESS, 1, null, null,
+                now, now + 900000);
+    }
+
+    @Benchmark
+    public String encodeJjwt() {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, key.kid())
+                .claim("username", "benchmark-user")
+                .claim("type", VerifiedToken.ACCESS)
+                .claim(VerifiedToken.VERSION_CLAIM, 1L)
+                .setSubject("65a1f0c2e4b0a1b2c3d4e5f6")
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + 900000))
+                .signWith(key.key(), key.algorithm())
+                .compact();
+    }
+
+    @Benchmark
+    public VerifiedToken decodeCodec() {
+        return codec.decode(token, "id", keys);
+    }
+
+    @Benchmark
+    public Claims decodeJjwt() {
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    @Benchmark
+    public String encodeCodecOnVirtualThread() throws Exception {
+        return onNewVirtualThread(this::encodeCodec);
+    }
+
+    @Benchmark
+    public VerifiedToken decodeCodecOnVirtualThread() throws Exception {
+        return onNewVirtualThread(this::decodeCodec);
+    }
+
+    @Benchmark
+    public Object startVirtualThread() throws Exception {
+        return onNewVirtualThread(() -> token);
+    }
+
+    private static <T> T onNewVirtualThread(Callable<T> call) throws Exception {
+        FutureTask<T> task = new FutureTask<>(call);
+        Thread.ofVirtual().start(task).join();
+        return task.get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.medici.user_hub.benchmark;
+
+import com.medici.user_hub.security.TokenIds;
+import com.medici.user_hub.store.RedisTokenStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares revoking a batch of tokens one {@link RedisTokenStore#revoke} call at a time against one
+ * pipelined {@link RedisTokenStore#revokeAll}. Needs a Redis server, by default on localhost:6379;
+ * set {@code -Dredis.host} and {@code -Dredis.port} to use another. Run {@link #main} from the test
+ * classpath after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisRevocationBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTokenStore store;
+    private Map<String, Long> revocations;
+
+    @Setup
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        store = new RedisTokenStore();
+        ReflectionTestUtils.setField(store, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(store, "rotateRefreshTokenScript",
+                RedisScript.of(new ClassPathResource("scripts/rotate-refresh-token.lua"), Long.class));
+        ReflectionTestUtils.setField(store, "revocationBucketMs", TimeUnit.HOURS.toMillis(1));
+    }
+
+    // Fresh IDs per iteration, so set sizes stay comparable between the two benchmarks
+    @Setup(Level.Iteration)
+    public void newBatch() {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(15);
+        revocations = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            revocations.put(TokenIds.random(), expiresAt);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void revokeSequentially() {
+        revocations.forEach(store::revoke);
+    }
+
+    @Benchmark
+    public void revokePipelined() {
+        store.revokeAll(revocations);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RedisRevocationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,6 +1,8 @@
 package com.medici.user_hub.controller;
 
+import com.medici.user_hub.dto.TokenRevocation;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.ValidationException;
@@ -12,11 +14,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,14 +31,22 @@ public class AdminControllerTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private TokenService tokenService;
+
     @InjectMocks
     private AdminController adminController;
 
     private User user1;
     private User user2;
+    private long expiresAt;
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(adminController, "maxTokenLifetimeMs", 86400000L);
+        ReflectionTestUtils.setField(adminController, "maxRevocationBatchSize", 2);
+        expiresAt = System.currentTimeMillis() + 60000;
+
         user1 = new User();
         user1.setId("1");
         user1.setEmail("user1@example.com");
@@ -185,4 +199,87 @@ public class AdminControllerTest {
         assertThrows(ValidationException.class, () -> adminController.createUser(newUser));
         verify(userService, times(1)).registerUser(newUser);
     }
-}
\ No newline at end of file
+
+    @Test
+    void revokeTokens_RevokesBatch() {
+        // Arrange
+        List<TokenRevocation> revocations = List.of(
+                new TokenRevocation("token1", expiresAt),
+                new TokenRevocation("token2", expiresAt + 1000));
+        when(tokenService.blacklistTokens(Map.of("token1", expiresAt, "token2", expiresAt + 1000))).thenReturn(2);
+
+        // Act
+        ResponseEntity<String> response = adminController.revokeTokens(revocations);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Revoked 2 tokens", response.getBody());
+    }
+
+    @Test
+    void revokeTokens_DuplicateIds_KeepsLatestExpiry() {
+        // Arrange
+        List<TokenRevocation> revocations = List.of(
+                new TokenRevocation("token1", expiresAt + 1000),
+                new TokenRevocation("token1", expiresAt));
+        when(tokenService.blacklistTokens(Map.of("token1", expiresAt + 1000))).thenReturn(1);
+
+        // Act
+        ResponseEntity<String> response = adminController.revokeTokens(revocations);
+
+        // Assert
+        assertEquals("Revoked 1 tokens", response.getBody());
+    }
+
+    @Test
+    void revokeTokens_ExpiredOrZeroExpiry_ThrowsValidationException() {
+        // Act & Assert
+        assertThrows(ValidationException.class,
+                () -> adminController.revokeTokens(List.of(new TokenRevocation("token1", 0L))));
+        assertThrows(ValidationException.class,
+                () -> adminController.revokeTokens(List.of(new TokenRevocation("token1", System.currentTimeMillis() - 1000))));
+        verify(tokenService, never()).blacklistTokens(anyMap());
+    }
+
+    @Test
+    void revokeTokens_ExpiryBeyondTokenLifetime_ThrowsValidationException() {
+        // Arrange
+        List<TokenRevocation> revocations = List.of(
+                new TokenRevocation("token1", expiresAt),
+                new TokenRevocation("token2", System.currentTimeMillis() + 86400000L + 60000));
+
+        // Act & Assert
+        assertThrows(ValidationException.class, () -> adminController.revokeTokens(revocations));
+        verify(tokenService, never()).blacklistTokens(anyMap());
+    }
+
+    @Test
+    void revokeTokens_BatchOverLimit_ThrowsValidationException() {
+        // Arrange
+        List<TokenRevocation> revocations = List.of(
+                new TokenRevocation("token1", expiresAt),
+                new TokenRevocation("token2", expiresAt),
+                new TokenRevocation("token3", expiresAt));
+
+        // Act & Assert
+        assertThrows(ValidationException.class, () -> adminController.revokeTokens(revocations));
+        verify(tokenService, never()).blacklistTokens(anyMap());
+    }
+
+    @Test
+    void revokeTokens_EmptyBatch_ThrowsValidationException() {
+        // Act & Assert
+        assertThrows(ValidationException.class, () -> adminController.revokeTokens(Collections.emptyList()));
+        verify(tokenService, never()).blacklistTokens(anyMap());
+    }
+
+    @Test
+    void revokeTokens_BlankTokenId_ThrowsValidationException() {
+        // Arrange
+        List<TokenRevocation> revocations = List.of(new TokenRevocation(" ", expiresAt));
+
+        // Act & Assert
+        assertThrows(ValidationException.class, () -> adminController.revokeTokens(revocations));
+        verify(tokenService, never()).blacklistTokens(anyMap());
+    }
+}
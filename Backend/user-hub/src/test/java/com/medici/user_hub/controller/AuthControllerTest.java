@@ -1,10 +1,21 @@
 package com.medici.user_hub.controller;
 
+import com.medici.user_hub.dto.TokenPair;
+import com.medici.user_hub.handler.RefreshTokenConflictException;
 import com.medici.user_hub.handler.ResourceNotFoundException;
+import com.medici.user_hub.handler.TokenServiceException;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.security.JwtCodec;
+import com.medici.user_hub.security.JwtKeyRegistry;
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenVersionCache;
+import com.medici.user_hub.security.VerifiedToken;
+import com.medici.user_hub.security.VerifiedTokenCache;
 import com.medici.user_hub.service.JwtService;
 import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
+import com.medici.user_hub.store.InMemoryTokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,8 +24,18 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,9 +53,13 @@ public class AuthControllerTest {
     @InjectMocks
     private AuthController authController;
 
+    private static final String SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+
     private User user;
     private String refreshToken;
     private String accessToken;
+    private VerifiedToken verifiedRefreshToken;
+    private VerifiedToken verifiedAccessToken;
 
     @BeforeEach
     void setUp() {
@@ -45,31 +70,36 @@ public class AuthControllerTest {
 
         refreshToken = "validRefreshToken";
         accessToken = "validAccessToken";
+
+        long now = System.currentTimeMillis();
+        verifiedRefreshToken = new VerifiedToken("tokenId", user.getId(), VerifiedToken.REFRESH, "user", 0, null, null, now, now + 86400000);
+        verifiedAccessToken = new VerifiedToken("tokenId", user.getId(), VerifiedToken.ACCESS, "user", 0, null, null, now, now + 3600000);
     }
 
     @Test
-    void refreshAccessToken_ValidRefreshToken_ReturnsNewAccessToken() {
+    void refreshAccessToken_ValidRefreshToken_ReturnsRotatedTokens() {
         // Arrange
-        String newAccessToken = "newAccessToken";
-        when(jwtService.validateTokenAndGetUserId(refreshToken)).thenReturn(user.getId());
-        when(userService.getUserById(user.getId())).thenReturn(user);
-        when(jwtService.generateAccessToken(user)).thenReturn(newAccessToken);
+        TokenPair tokens = new TokenPair("newAccessToken", "newRefreshToken");
+        when(jwtService.verify(refreshToken)).thenReturn(verifiedRefreshToken);
+        when(tokenService.isTokenVersionCurrent(verifiedRefreshToken)).thenReturn(true);
+        when(jwtService.rotateRefreshToken(verifiedRefreshToken)).thenReturn(tokens);
 
         // Act
         ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(newAccessToken, response.getBody());
-        verify(jwtService, times(1)).validateTokenAndGetUserId(refreshToken);
-        verify(userService, times(1)).getUserById(user.getId());
-        verify(jwtService, times(1)).generateAccessToken(user);
+        assertEquals("newAccessToken", response.getBody());
+        assertEquals("newRefreshToken", response.getHeaders().getFirst(AuthController.REFRESH_TOKEN_HEADER));
+        verify(jwtService, times(1)).verify(refreshToken);
+        verify(jwtService, times(1)).rotateRefreshToken(verifiedRefreshToken);
+        verifyNoInteractions(userService);
     }
 
     @Test
     void refreshAccessToken_InvalidRefreshToken_ReturnsUnauthorized() {
         // Arrange
-        when(jwtService.validateTokenAndGetUserId(refreshToken)).thenReturn(null);
+        when(jwtService.verify(refreshToken)).thenThrow(new TokenServiceException("Invalid JWT token"));
 
         // Act
         ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
@@ -77,55 +107,279 @@ public class AuthControllerTest {
         // Assert
         assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
         assertEquals("Invalid refresh token", response.getBody());
-        verify(jwtService, times(1)).validateTokenAndGetUserId(refreshToken);
-        verify(userService, never()).getUserById(anyString());
-        verify(jwtService, never()).generateAccessToken(any(User.class));
+        verify(jwtService, times(1)).verify(refreshToken);
+        verify(jwtService, never()).rotateRefreshToken(any());
     }
 
     @Test
-    void refreshAccessToken_UserNotFound_ThrowsResourceNotFoundException() {
+    void refreshAccessToken_RevokedTokenVersion_ReturnsUnauthorized() {
         // Arrange
-        when(jwtService.validateTokenAndGetUserId(refreshToken)).thenReturn(user.getId());
-        when(userService.getUserById(user.getId())).thenThrow(new ResourceNotFoundException("User not found"));
+        when(jwtService.verify(refreshToken)).thenReturn(verifiedRefreshToken);
+        when(tokenService.isTokenVersionCurrent(verifiedRefreshToken)).thenReturn(false);
 
-        // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> authController.refreshAccessToken(refreshToken));
-        verify(jwtService, times(1)).validateTokenAndGetUserId(refreshToken);
-        verify(userService, times(1)).getUserById(user.getId());
-        verify(jwtService, never()).generateAccessToken(any(User.class));
+        // Act
+        ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        verify(jwtService, never()).rotateRefreshToken(any());
+    }
+
+    @Test
+    void refreshAccessToken_AccessTokenUsedAsRefreshToken_ReturnsUnauthorized() {
+        // Arrange
+        when(jwtService.verify(refreshToken)).thenReturn(verifiedAccessToken);
+
+        // Act
+        ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        verify(jwtService, never()).rotateRefreshToken(any());
+    }
+
+    @Test
+    void refreshAccessToken_ReusedRefreshToken_ReturnsUnauthorized() {
+        // Arrange
+        when(jwtService.verify(refreshToken)).thenReturn(verifiedRefreshToken);
+        when(tokenService.isTokenVersionCurrent(verifiedRefreshToken)).thenReturn(true);
+        when(jwtService.rotateRefreshToken(verifiedRefreshToken))
+                .thenThrow(new TokenServiceException("Refresh token rejected: REUSED"));
+
+        // Act
+        ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertEquals("Invalid refresh token", response.getBody());
+    }
+
+    @Test
+    void refreshAccessToken_AlreadyRotatedByConcurrentRefresh_ReturnsConflict() {
+        // Arrange
+        when(jwtService.verify(refreshToken)).thenReturn(verifiedRefreshToken);
+        when(tokenService.isTokenVersionCurrent(verifiedRefreshToken)).thenReturn(true);
+        when(jwtService.rotateRefreshToken(verifiedRefreshToken))
+                .thenThrow(new RefreshTokenConflictException("Refresh token already rotated by a concurrent refresh"));
+
+        // Act
+        ResponseEntity<String> response = authController.refreshAccessToken(refreshToken);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
     }
 
     @Test
     void logout_ValidAccessToken_ReturnsSuccess() {
         // Arrange
-        long expiration = System.currentTimeMillis() + 3600000; // 1 hour from now
-        when(jwtService.getTokenExpiration(accessToken)).thenReturn(expiration);
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
 
         // Act
-        ResponseEntity<String> response = authController.logout(accessToken);
+        ResponseEntity<String> response = authController.logout(accessToken, null, null, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("Logged out successfully", response.getBody());
-        verify(jwtService, times(1)).getTokenExpiration(accessToken);
-        verify(tokenService, times(1)).blacklistToken(accessToken, expiration);
+        verify(jwtService, times(1)).verify(accessToken);
+        verify(tokenService, times(1)).blacklistToken(verifiedAccessToken.id(), verifiedAccessToken.expiresAt());
+    }
+
+    @Test
+    void logout_TokenAlreadyVerifiedByFilter_DoesNotParseAgain() {
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, "Bearer " + accessToken, null, verifiedAccessToken);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(jwtService, never()).verify(anyString());
+        verify(tokenService, times(1)).blacklistToken(eq(verifiedAccessToken.id()), anyLong());
+    }
+
+    @Test
+    void logout_DifferentTokenThanAuthorizationHeader_VerifiesBodyToken() {
+        // Arrange
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, "Bearer otherToken", null, verifiedAccessToken);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(jwtService, times(1)).verify(accessToken);
     }
 
     @Test
     void logout_FailedBlacklisting_ReturnsInternalServerError() {
         // Arrange
-        long expiration = System.currentTimeMillis() + 3600000; // 1 hour from now
-        when(jwtService.getTokenExpiration(accessToken)).thenReturn(expiration);
-        doThrow(new RuntimeException("Failed to blacklist token")).when(tokenService).blacklistToken(accessToken, expiration);
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+        doThrow(new RuntimeException("Failed to blacklist token")).when(tokenService).blacklistToken(eq(verifiedAccessToken.id()), anyLong());
 
         // Act
-        ResponseEntity<String> response = authController.logout(accessToken);
+        ResponseEntity<String> response = authController.logout(accessToken, null, null, null);
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertEquals("Failed to logout", response.getBody());
-        verify(jwtService, times(1)).getTokenExpiration(accessToken);
-        verify(tokenService, times(1)).blacklistToken(accessToken, expiration);
+        verify(jwtService, times(1)).verify(accessToken);
+        verify(tokenService, times(1)).blacklistToken(eq(verifiedAccessToken.id()), anyLong());
+    }
+
+    @Test
+    void logout_WithRefreshToken_EndsItsFamily() {
+        // Arrange
+        VerifiedToken familyRefreshToken = new VerifiedToken("refreshId", user.getId(), VerifiedToken.REFRESH, "user", 0,
+                "familyId", null, verifiedRefreshToken.issuedAt(), verifiedRefreshToken.expiresAt());
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+        when(jwtService.verify(refreshToken)).thenReturn(familyRefreshToken);
+
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, null, refreshToken, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(tokenService, times(1)).endRefreshTokenFamily("familyId");
+        verify(tokenService, never()).revokeAllTokens(anyString());
+    }
+
+    @Test
+    void logout_WithRefreshTokenInJsonBody_EndsItsFamily() {
+        // Arrange
+        VerifiedToken familyRefreshToken = new VerifiedToken("refreshId", user.getId(), VerifiedToken.REFRESH, "user", 0,
+                "familyId", null, verifiedRefreshToken.issuedAt(), verifiedRefreshToken.expiresAt());
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+        when(jwtService.verify(refreshToken)).thenReturn(familyRefreshToken);
+        String body = "{\"accessToken\":\"" + accessToken + "\",\"refreshToken\":\"" + refreshToken + "\"}";
+
+        // Act
+        ResponseEntity<String> response = authController.logout(body, null, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(tokenService, times(1)).blacklistToken(verifiedAccessToken.id(), verifiedAccessToken.expiresAt());
+        verify(tokenService, times(1)).endRefreshTokenFamily("familyId");
+    }
+
+    @Test
+    void logout_WithoutRefreshToken_LeavesFamilyToExpire() {
+        // Arrange
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, null, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(tokenService, never()).revokeAllTokens(anyString());
+        verify(tokenService, never()).endRefreshTokenFamily(anyString());
+    }
+
+    @Test
+    void logout_WhenEndingFamilyFails_StillSucceeds() {
+        // Arrange
+        VerifiedToken familyRefreshToken = new VerifiedToken("refreshId", user.getId(), VerifiedToken.REFRESH, "user", 0,
+                "familyId", null, verifiedRefreshToken.issuedAt(), verifiedRefreshToken.expiresAt());
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+        when(jwtService.verify(refreshToken)).thenReturn(familyRefreshToken);
+        doThrow(new TokenServiceException("Redis down")).when(tokenService).endRefreshTokenFamily("familyId");
+
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, null, refreshToken, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(tokenService, times(1)).blacklistToken(verifiedAccessToken.id(), verifiedAccessToken.expiresAt());
+    }
+
+    @Test
+    void logout_WithAnotherUsersRefreshToken_IgnoresIt() {
+        // Arrange
+        VerifiedToken otherRefreshToken = new VerifiedToken("refreshId", "2", VerifiedToken.REFRESH, "other", 0,
+                "otherFamilyId", null, verifiedRefreshToken.issuedAt(), verifiedRefreshToken.expiresAt());
+        when(jwtService.verify(accessToken)).thenReturn(verifiedAccessToken);
+        when(jwtService.verify(refreshToken)).thenReturn(otherRefreshToken);
+
+        // Act
+        ResponseEntity<String> response = authController.logout(accessToken, null, refreshToken, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(tokenService, never()).endRefreshTokenFamily(anyString());
+        verify(tokenService, never()).revokeAllTokens(anyString());
+    }
+
+    @Test
+    void refreshAccessToken_AfterLogout_ReturnsUnauthorized() {
+        // Arrange
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(100, 512);
+        try {
+            AuthController controller = authControllerOver(tokenStore);
+            JwtService realJwtService = (JwtService) ReflectionTestUtils.getField(controller, "jwtService");
+            String issuedAccessToken = realJwtService.generateAccessToken(user);
+            String issuedRefreshToken = realJwtService.generateRefreshToken(user);
+
+            // Act
+            ResponseEntity<String> logout = controller.logout(issuedAccessToken, null, issuedRefreshToken, null);
+            ResponseEntity<String> refresh = controller.refreshAccessToken(issuedRefreshToken);
+
+            // Assert
+            assertEquals(HttpStatus.OK, logout.getStatusCode());
+            assertEquals(HttpStatus.UNAUTHORIZED, refresh.getStatusCode());
+        } finally {
+            tokenStore.shutdown();
+        }
+    }
+
+    @Test
+    void refreshAccessToken_WithoutLogout_ReturnsRotatedTokens() {
+        // Arrange
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(100, 512);
+        try {
+            AuthController controller = authControllerOver(tokenStore);
+            JwtService realJwtService = (JwtService) ReflectionTestUtils.getField(controller, "jwtService");
+            String issuedRefreshToken = realJwtService.generateRefreshToken(user);
+
+            // Act
+            ResponseEntity<String> refresh = controller.refreshAccessToken(issuedRefreshToken);
+
+            // Assert
+            assertEquals(HttpStatus.OK, refresh.getStatusCode());
+        } finally {
+            tokenStore.shutdown();
+        }
+    }
+
+    @Test
+    void refreshAccessToken_ConcurrentRefreshesWithSameToken_OneRotatesAndFamilySurvives() throws Exception {
+        // Arrange
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(100, 512);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AuthController controller = authControllerOver(tokenStore);
+            JwtService realJwtService = (JwtService) ReflectionTestUtils.getField(controller, "jwtService");
+            String issuedRefreshToken = realJwtService.generateRefreshToken(user);
+            CountDownLatch start = new CountDownLatch(1);
+            Callable<ResponseEntity<String>> refresh = () -> {
+                start.await();
+                return controller.refreshAccessToken(issuedRefreshToken);
+            };
+
+            // Act
+            Future<ResponseEntity<String>> first = executor.submit(refresh);
+            Future<ResponseEntity<String>> second = executor.submit(refresh);
+            start.countDown();
+            List<ResponseEntity<String>> responses = List.of(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+
+            // Assert
+            ResponseEntity<String> winner = responses.stream()
+                    .filter(response -> response.getStatusCode() == HttpStatus.OK).findFirst().orElseThrow();
+            assertEquals(1, responses.stream().filter(response -> response.getStatusCode() == HttpStatus.CONFLICT).count());
+            // The losing tab retries with the refresh token the winner stored, and the family is still alive
+            String rotatedRefreshToken = winner.getHeaders().getFirst(AuthController.REFRESH_TOKEN_HEADER);
+            assertEquals(HttpStatus.OK, controller.refreshAccessToken(rotatedRefreshToken).getStatusCode());
+        } finally {
+            executor.shutdownNow();
+            tokenStore.shutdown();
+        }
     }
 
     @Test
@@ -202,4 +456,30 @@ public class AuthControllerTest {
         assertThrows(ResourceNotFoundException.class, () -> authController.resetPassword(email, answer, newPassword));
         verify(userService, times(1)).verifySecurityAnswerAndResetPassword(email, answer, newPassword);
     }
-}
\ No newline at end of file
+
+    // Wires the controller to real token services over an in-memory store, so logout and refresh share state
+    private static AuthController authControllerOver(InMemoryTokenStore tokenStore) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(1000, meterRegistry);
+
+        TokenService tokenService = new TokenService();
+        ReflectionTestUtils.setField(tokenService, "tokenStore", tokenStore);
+        ReflectionTestUtils.setField(tokenService, "verifiedTokenCache", verifiedTokenCache);
+        ReflectionTestUtils.setField(tokenService, "revokedTokenCache", new RevokedTokenCache(1000, 1000, 0.001, 60000, meterRegistry));
+        ReflectionTestUtils.setField(tokenService, "tokenVersionCache", new TokenVersionCache(1000, 30000, meterRegistry));
+        ReflectionTestUtils.setField(tokenService, "refreshRotationGraceMs", 10000L);
+
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "keyRegistry", new JwtKeyRegistry(SECRET, new String[0]));
+        ReflectionTestUtils.setField(jwtService, "verifiedTokenCache", verifiedTokenCache);
+        ReflectionTestUtils.setField(jwtService, "jwtCodec", new JwtCodec());
+        ReflectionTestUtils.setField(jwtService, "tokenService", tokenService);
+        ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMs", 900000);
+        ReflectionTestUtils.setField(jwtService, "refreshTokenExpirationMs", 86400000);
+
+        AuthController controller = new AuthController();
+        ReflectionTestUtils.setField(controller, "jwtService", jwtService);
+        ReflectionTestUtils.setField(controller, "tokenService", tokenService);
+        return controller;
+    }
+}
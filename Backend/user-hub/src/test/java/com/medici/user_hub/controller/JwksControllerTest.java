@@ -0,0 +1,66 @@
+package com.medici.user_hub.controller;
+
+import com.medici.user_hub.security.JwtKeyRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwksControllerTest {
+
+    private static final String SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+
+    private JwksController jwksController;
+
+    @BeforeEach
+    void setUp() {
+        jwksController = new JwksController();
+        ReflectionTestUtils.setField(jwksController, "keyRegistry", new JwtKeyRegistry(SECRET, new String[0], "ES256", "", "", true));
+        ReflectionTestUtils.setField(jwksController, "jwksMaxAgeSeconds", 300L);
+    }
+
+    @Test
+    void getJwks_returnsPublicKeyWithCacheHeaders() {
+        // Act
+        ResponseEntity<Map<String, List<Map<String, Object>>>> response =
+                jwksController.getJwks(new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<Map<String, Object>> keys = response.getBody().get("keys");
+        assertEquals(1, keys.size());
+        assertEquals("EC", keys.get(0).get("kty"));
+        assertEquals("ES256", keys.get(0).get("alg"));
+        assertEquals(43, ((String) keys.get(0).get("x")).length());
+        assertEquals("max-age=300, public", response.getHeaders().getCacheControl());
+        assertNotNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void getJwks_withMatchingETag_returnsNotModified() {
+        // Arrange
+        ResponseEntity<Map<String, List<Map<String, Object>>>> first =
+                jwksController.getJwks(new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/.well-known/jwks.json");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, first.getHeaders().getETag());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        ResponseEntity<Map<String, List<Map<String, Object>>>> second =
+                jwksController.getJwks(new ServletWebRequest(request, response));
+
+        // Assert
+        assertNull(second);
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+    }
+}
@@ -2,7 +2,9 @@ package com.medici.user_hub.controller;
 
 import com.medici.user_hub.dto.UserDTO;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.security.VerifiedToken;
 import com.medici.user_hub.service.JwtService;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import com.medici.user_hub.handler.ResourceNotFoundException;
 import com.medici.user_hub.handler.ValidationException;
@@ -17,6 +19,7 @@ import org.springframework.http.ResponseEntity;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,11 +33,15 @@ public class UserControllerTest {
     @Mock
     private JwtService jwtService;
 
+    @Mock
+    private TokenService tokenService;
+
     @InjectMocks
     private UserController userController;
 
     private User user;
     private String token;
+    private VerifiedToken verifiedToken;
 
     @BeforeEach
     void setUp() {
@@ -45,6 +52,8 @@ public class UserControllerTest {
         user.setPasswordHash("hashedPassword");
 
         token = "validToken";
+        verifiedToken = new VerifiedToken("tokenId", "1", VerifiedToken.ACCESS, "testuser", 0, null, null,
+                System.currentTimeMillis(), System.currentTimeMillis() + 900000);
     }
 
     @Test
@@ -76,9 +85,9 @@ public class UserControllerTest {
         // Arrange
         String email = "test@example.com";
         String password = "password";
-        when(userService.getUserByEmail(email)).thenReturn(user);
-        when(userService.validatePassword(password, user.getPasswordHash())).thenReturn(true);
+        when(userService.authenticate(email, password)).thenReturn(Optional.of(user));
         when(jwtService.generateAccessToken(user)).thenReturn(token);
+        when(jwtService.generateRefreshToken(user)).thenReturn("refreshToken");
 
         // Act
         ResponseEntity<?> response = userController.login(email, password);
@@ -87,9 +96,10 @@ public class UserControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertTrue(response.getBody() instanceof UserDTO);
         assertEquals(token, response.getHeaders().get("Authorization").get(0).replace("Bearer ", ""));
-        verify(userService, times(1)).getUserByEmail(email);
-        verify(userService, times(1)).validatePassword(password, user.getPasswordHash());
+        assertEquals("refreshToken", response.getHeaders().getFirst(AuthController.REFRESH_TOKEN_HEADER));
+        verify(userService, times(1)).authenticate(email, password);
         verify(jwtService, times(1)).generateAccessToken(user);
+        verify(jwtService, times(1)).generateRefreshToken(user);
     }
 
     @Test
@@ -97,8 +107,7 @@ public class UserControllerTest {
         // Arrange
         String email = "test@example.com";
         String password = "wrongPassword";
-        when(userService.getUserByEmail(email)).thenReturn(user);
-        when(userService.validatePassword(password, user.getPasswordHash())).thenReturn(false);
+        when(userService.authenticate(email, password)).thenReturn(Optional.empty());
 
         // Act
         ResponseEntity<?> response = userController.login(email, password);
@@ -106,22 +115,24 @@ public class UserControllerTest {
         // Assert
         assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
         assertEquals("Invalid email or password", response.getBody());
-        verify(userService, times(1)).getUserByEmail(email);
-        verify(userService, times(1)).validatePassword(password, user.getPasswordHash());
+        verify(userService, times(1)).authenticate(email, password);
         verify(jwtService, never()).generateAccessToken(any());
     }
 
     @Test
-    void login_UserNotFound_ThrowsResourceNotFoundException() {
+    void login_UserNotFound_ReturnsSameUnauthorizedAsWrongPassword() {
         // Arrange
         String email = "nonexistent@example.com";
         String password = "password";
-        when(userService.getUserByEmail(email)).thenThrow(new ResourceNotFoundException("User not found"));
+        when(userService.authenticate(email, password)).thenReturn(Optional.empty());
 
-        // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> userController.login(email, password));
-        verify(userService, times(1)).getUserByEmail(email);
-        verify(userService, never()).validatePassword(anyString(), anyString());
+        // Act
+        ResponseEntity<?> response = userController.login(email, password);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertEquals("Invalid email or password", response.getBody());
+        verify(userService, never()).getUserByEmail(anyString());
         verify(jwtService, never()).generateAccessToken(any());
     }
 
@@ -129,28 +140,46 @@ public class UserControllerTest {
     void updateUser_ValidUser_ReturnsSuccess() {
         // Arrange
         String userId = "1";
-        when(jwtService.validateTokenAndGetUserId(token)).thenReturn(userId);
+        when(userService.updateUser(userId, user)).thenReturn(user);
+        when(tokenService.isTokenVersionCurrent(verifiedToken)).thenReturn(true);
 
         // Act
-        ResponseEntity<String> response = userController.updateUser(user, "Bearer " + token);
+        ResponseEntity<String> response = userController.updateUser(user, verifiedToken);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("User updated successfully", response.getBody());
-        verify(jwtService, times(1)).validateTokenAndGetUserId(token);
+        verifyNoInteractions(jwtService);
         verify(userService, times(1)).updateUser(userId, user);
     }
 
+    @Test
+    void updateUser_RevokingCallersTokens_ReturnsNewTokens() {
+        // Arrange
+        String userId = "1";
+        when(userService.updateUser(userId, user)).thenReturn(user);
+        when(tokenService.isTokenVersionCurrent(verifiedToken)).thenReturn(false);
+        when(jwtService.generateAccessToken(user)).thenReturn("newAccessToken");
+        when(jwtService.generateRefreshToken(user)).thenReturn("newRefreshToken");
+
+        // Act
+        ResponseEntity<String> response = userController.updateUser(user, verifiedToken);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Bearer newAccessToken", response.getHeaders().getFirst("Authorization"));
+        assertEquals("newRefreshToken", response.getHeaders().getFirst(AuthController.REFRESH_TOKEN_HEADER));
+    }
+
     @Test
     void updateUser_UserNotFound_ThrowsResourceNotFoundException() {
         // Arrange
         String userId = "1";
-        when(jwtService.validateTokenAndGetUserId(token)).thenReturn(userId);
         doThrow(new ResourceNotFoundException("User not found")).when(userService).updateUser(userId, user);
 
         // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> userController.updateUser(user, "Bearer " + token));
-        verify(jwtService, times(1)).validateTokenAndGetUserId(token);
+        assertThrows(ResourceNotFoundException.class, () -> userController.updateUser(user, verifiedToken));
+        verifyNoInteractions(jwtService);
         verify(userService, times(1)).updateUser(userId, user);
     }
 
@@ -158,15 +187,14 @@ public class UserControllerTest {
     void deleteUser_ValidUser_ReturnsSuccess() {
         // Arrange
         String userId = "1";
-        when(jwtService.validateTokenAndGetUserId(token)).thenReturn(userId);
 
         // Act
-        ResponseEntity<String> response = userController.deleteUser("Bearer " + token);
+        ResponseEntity<String> response = userController.deleteUser(verifiedToken);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("User account deleted successfully", response.getBody());
-        verify(jwtService, times(1)).validateTokenAndGetUserId(token);
+        verifyNoInteractions(jwtService);
         verify(userService, times(1)).deleteUser(userId);
     }
 
@@ -174,12 +202,11 @@ public class UserControllerTest {
     void deleteUser_UserNotFound_ThrowsResourceNotFoundException() {
         // Arrange
         String userId = "1";
-        when(jwtService.validateTokenAndGetUserId(token)).thenReturn(userId);
         doThrow(new ResourceNotFoundException("User not found")).when(userService).deleteUser(userId);
 
         // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> userController.deleteUser("Bearer " + token));
-        verify(jwtService, times(1)).validateTokenAndGetUserId(token);
+        assertThrows(ResourceNotFoundException.class, () -> userController.deleteUser(verifiedToken));
+        verifyNoInteractions(jwtService);
         verify(userService, times(1)).deleteUser(userId);
     }
 
@@ -6,10 +6,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @ExtendWith(SpringExtension.class)
 @DataMongoTest
@@ -18,6 +28,9 @@ class UserRepositoryTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     private User testUser;
 
     @BeforeEach
@@ -79,4 +92,72 @@ class UserRepositoryTest {
         assertThat(retrievedUser.get().getEmail()).isEqualTo(newUser.getEmail());
         assertThat(retrievedUser.get().getUsername()).isEqualTo(newUser.getUsername());
     }
+
+    @Test
+    void shouldStreamEmailsWithoutSecrets() {
+        // Stream every stored email
+        List<User> users;
+        try (Stream<User> stream = userRepository.streamAllEmails()) {
+            users = stream.toList();
+        }
+
+        // Validate that only the email is read
+        assertThat(users).extracting(User::getEmail).containsExactly("test@example.com");
+        assertThat(users.get(0).getPasswordHash()).isNull();
+    }
+
+    @Test
+    void shouldReplacePasswordHashOnlyIfUnchanged() {
+        // Replace the hash that was read, then try again with the now outdated hash
+        long replaced = userRepository.replacePasswordHash(testUser.getId(), "hashedPassword", "rehashedPassword");
+        long replacedAgain = userRepository.replacePasswordHash(testUser.getId(), "hashedPassword", "otherPassword");
+
+        // Validate that only the first replacement was applied
+        assertThat(replaced).isEqualTo(1);
+        assertThat(replacedAgain).isZero();
+        assertThat(userRepository.findById(testUser.getId()).orElseThrow().getPasswordHash()).isEqualTo("rehashedPassword");
+    }
+
+    @Test
+    void shouldLetExactlyOneConcurrentInsertOfAnEmailWin() throws Exception {
+        // Make sure the unique email index exists, as it does at application startup
+        new UserIndexes(mongoTemplate).ensureUniqueEmailIndex();
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+
+        // Insert the same new email from every thread at once
+        try {
+            for (int i = 0; i < threads; i++) {
+                attempts.add(executor.submit(() -> {
+                    User user = new User();
+                    user.setEmail("race@example.com");
+                    user.setUsername("racer");
+                    user.setPasswordHash("hashedPassword");
+                    start.await();
+                    try {
+                        userRepository.insert(user);
+                        return true;
+                    } catch (DuplicateKeyException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+
+            // Validate that exactly one insert succeeded and one user was stored
+            int winners = 0;
+            for (Future<Boolean> attempt : attempts) {
+                if (attempt.get(30, TimeUnit.SECONDS)) {
+                    winners++;
+                }
+            }
+            assertThat(winners).isEqualTo(1);
+            assertThat(userRepository.findAll().stream().filter(user -> "race@example.com".equals(user.getEmail())))
+                    .hasSize(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -1,218 +1,140 @@
 package com.medici.user_hub.security;
 
+import com.medici.user_hub.model.Role;
 import com.medici.user_hub.model.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.GrantedAuthority;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.*;
 
-@ExtendWith(MockitoExtension.class)
 class CustomUserDetailsTest {
 
-    @Mock
-    private User mockUser;
-
-    private CustomUserDetails customUserDetails;
     private static final String TEST_ID = "test-id-123";
     private static final String TEST_USERNAME = "testuser";
-    private static final String TEST_PASSWORD = "hashedpassword123";
+
+    private User user;
 
     @BeforeEach
     void setUp() {
-        // Set up mock user behavior
-        lenient().when(mockUser.getId()).thenReturn(TEST_ID);
-        lenient().when(mockUser.getUsername()).thenReturn(TEST_USERNAME);
-        lenient().when(mockUser.getPasswordHash()).thenReturn(TEST_PASSWORD);
-
-        customUserDetails = new CustomUserDetails(mockUser);
+        user = new User();
+        user.setId(TEST_ID);
+        user.setUsername(TEST_USERNAME);
+        user.setPasswordHash("hashedpassword123");
+        user.setSecurityAnswerHash("hashedanswer");
+        user.setRoles(Set.of(Role.USER, Role.ADMIN));
     }
 
     @Test
-    void constructor_whenUserIsNull_throwsException() {
-        assertThrows(NullPointerException.class,
-                () -> new CustomUserDetails(null));
-    }
-
-    @Test
-    void getAuthorities_returnsEmptyList() {
+    void of_user_keepsIdUsernameRolesAndVersion() {
         // Act
-        Collection<? extends GrantedAuthority> authorities = customUserDetails.getAuthorities();
+        CustomUserDetails principal = CustomUserDetails.of(user, 3);
 
         // Assert
-        assertNotNull(authorities);
-        assertTrue(authorities.isEmpty());
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getAuthorities
+        assertEquals(TEST_ID, principal.id());
+        assertEquals(TEST_USERNAME, principal.getUsername());
+        assertEquals(Role.USER.bit() | Role.ADMIN.bit(), principal.roles());
+        assertEquals(3, principal.tokenVersion());
     }
 
     @Test
-    void getPassword_returnsUserPassword() {
-        // Act
-        String password = customUserDetails.getPassword();
-
-        // Assert
-        assertEquals(TEST_PASSWORD, password);
-        verify(mockUser).getPasswordHash();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getPassword
-    }
-
-    @Test
-    void getUsername_returnsUserUsername() {
-        // Act
-        String username = customUserDetails.getUsername();
-
-        // Assert
-        assertEquals(TEST_USERNAME, username);
-        verify(mockUser).getUsername();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getUsername
-    }
-
-    @Test
-    void isAccountNonExpired_returnsTrue() {
-        // Act
-        boolean result = customUserDetails.isAccountNonExpired();
-
-        // Assert
-        assertTrue(result);
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for isAccountNonExpired
-    }
+    void of_userWithoutRoles_hasNoAuthorities() {
+        // Arrange
+        user.setRoles(null);
 
-    @Test
-    void isAccountNonLocked_returnsTrue() {
         // Act
-        boolean result = customUserDetails.isAccountNonLocked();
+        CustomUserDetails principal = CustomUserDetails.of(user, 0);
 
         // Assert
-        assertTrue(result);
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for isAccountNonLocked
+        assertEquals(0, principal.roles());
+        assertTrue(principal.getAuthorities().isEmpty());
     }
 
     @Test
-    void isCredentialsNonExpired_returnsTrue() {
-        // Act
-        boolean result = customUserDetails.isCredentialsNonExpired();
-
-        // Assert
-        assertTrue(result);
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for isCredentialsNonExpired
-    }
+    void of_verifiedToken_matchesPrincipalLoadedFromUser() {
+        // Arrange
+        VerifiedToken token = new VerifiedToken("tokenId", TEST_ID, VerifiedToken.ACCESS, TEST_USERNAME, 3, null,
+                List.of("ADMIN", "USER"), 0, 900000);
 
-    @Test
-    void isEnabled_returnsTrue() {
         // Act
-        boolean result = customUserDetails.isEnabled();
+        CustomUserDetails principal = CustomUserDetails.of(token);
 
         // Assert
-        assertTrue(result);
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for isEnabled
+        assertEquals(CustomUserDetails.of(user, 3), principal);
     }
 
     @Test
-    void customUserDetails_preservesUserReference() {
+    void of_verifiedTokenWithUnknownRole_ignoresIt() {
         // Arrange
-        String newUsername = "updatedUsername";
-        when(mockUser.getUsername()).thenReturn(newUsername);
+        VerifiedToken token = new VerifiedToken("tokenId", TEST_ID, VerifiedToken.ACCESS, TEST_USERNAME, 0, null,
+                List.of("USER", "AUDITOR"), 0, 900000);
 
         // Act
-        String username = customUserDetails.getUsername();
+        CustomUserDetails principal = CustomUserDetails.of(token);
 
         // Assert
-        assertEquals(newUsername, username);
-        verify(mockUser, times(1)).getUsername(); // Invoked once in the test case
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getUsername
+        assertEquals(Role.USER.bit(), principal.roles());
     }
 
     @Test
-    void constructor_verifyLogging() {
-        // This test is mainly for coverage of logging
-        // Actual log output verification would require a more complex setup
-        CustomUserDetails userDetails = new CustomUserDetails(mockUser);
-        verify(mockUser, times(2)).getId(); // Invoked twice (once in setUp, once in constructor)
-    }
-
-    @Test
-    void customUserDetails_handlesMultipleMethodCalls() {
+    void getAuthorities_mapsRolesToSpringAuthorities() {
         // Act
-        customUserDetails.getUsername();
-        customUserDetails.getPassword();
-        customUserDetails.isEnabled();
-        customUserDetails.getAuthorities();
+        Collection<? extends GrantedAuthority> authorities = CustomUserDetails.of(user, 0).getAuthorities();
 
         // Assert
-        verify(mockUser, times(5)).getId(); // Once for constructor, once for each method call
-        verify(mockUser, times(1)).getUsername(); // Invoked once in the test case
-        verify(mockUser, times(1)).getPasswordHash(); // Invoked once in the test case
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"),
+                Set.copyOf(authorities.stream().map(GrantedAuthority::getAuthority).toList()));
     }
 
     @Test
-    void customUserDetails_handlesEmptyUsername() {
-        // Arrange
-        when(mockUser.getUsername()).thenReturn("");
-
+    void getAuthorities_isSharedAndImmutable() {
         // Act
-        String username = customUserDetails.getUsername();
+        Collection<? extends GrantedAuthority> first = CustomUserDetails.of(user, 0).getAuthorities();
+        Collection<? extends GrantedAuthority> second = CustomUserDetails.of(user, 1).getAuthorities();
 
         // Assert
-        assertEquals("", username);
-        verify(mockUser).getUsername();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getUsername
+        assertSame(first, second);
+        assertThrows(UnsupportedOperationException.class,
+                () -> ((Collection<GrantedAuthority>) first).add(null));
     }
 
     @Test
-    void customUserDetails_handlesNullUsername() {
+    void hasRole_checksRoleMask() {
         // Arrange
-        when(mockUser.getUsername()).thenReturn(null);
-
-        // Act
-        String username = customUserDetails.getUsername();
+        CustomUserDetails principal = new CustomUserDetails(TEST_ID, TEST_USERNAME, Role.USER.bit(), 0);
 
-        // Assert
-        assertNull(username);
-        verify(mockUser).getUsername();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getUsername
+        // Act & Assert
+        assertTrue(principal.hasRole(Role.USER));
+        assertFalse(principal.hasRole(Role.ADMIN));
     }
 
     @Test
-    void customUserDetails_handlesEmptyPassword() {
-        // Arrange
-        when(mockUser.getPasswordHash()).thenReturn("");
-
+    void getPassword_neverExposesPasswordHash() {
         // Act
-        String password = customUserDetails.getPassword();
+        String password = CustomUserDetails.of(user, 0).getPassword();
 
         // Assert
-        assertEquals("", password);
-        verify(mockUser).getPasswordHash();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getPassword
+        assertNull(password);
     }
 
     @Test
-    void customUserDetails_handlesNullPassword() {
+    void accountFlags_areAllTrue() {
         // Arrange
-        when(mockUser.getPasswordHash()).thenReturn(null);
-
-        // Act
-        String password = customUserDetails.getPassword();
+        CustomUserDetails principal = CustomUserDetails.of(user, 0);
 
-        // Assert
-        assertNull(password);
-        verify(mockUser).getPasswordHash();
-        verify(mockUser, times(2)).getId(); // Once for constructor, once for getPassword
+        // Act & Assert
+        assertTrue(principal.isAccountNonExpired());
+        assertTrue(principal.isAccountNonLocked());
+        assertTrue(principal.isCredentialsNonExpired());
+        assertTrue(principal.isEnabled());
     }
 
     @Test
-    void getAuthorities_ensureImmutableCollection() {
-        // Act
-        Collection<? extends GrantedAuthority> authorities = customUserDetails.getAuthorities();
-
-        // Assert
-        assertThrows(UnsupportedOperationException.class,
-                () -> ((Collection<GrantedAuthority>) authorities).add(null));
+    void of_whenUserIsNull_throwsException() {
+        assertThrows(NullPointerException.class, () -> CustomUserDetails.of(null, 0));
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,10 @@
 package com.medici.user_hub.security;
 
 import com.medici.user_hub.handler.ResourceNotFoundException;
+import com.medici.user_hub.handler.TokenServiceException;
+import com.medici.user_hub.model.Role;
 import com.medici.user_hub.service.JwtService;
+import com.medici.user_hub.service.TokenService;
 import com.medici.user_hub.service.UserService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -13,13 +16,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +37,9 @@ public class JwtAuthenticationFilterTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private TokenService tokenService;
+
     @Mock
     private HttpServletRequest request;
 
@@ -40,9 +49,6 @@ public class JwtAuthenticationFilterTest {
     @Mock
     private FilterChain filterChain;
 
-    @Mock
-    private UserDetails userDetails;
-
     @InjectMocks
     private JwtAuthenticationFilter filter;
 
@@ -50,6 +56,9 @@ public class JwtAuthenticationFilterTest {
     private static final String USER_ID = "userId";
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER_PREFIX = "Bearer ";
+    private static final CustomUserDetails PRINCIPAL = new CustomUserDetails(USER_ID, "user", Role.USER.bit(), 0);
+    private static final VerifiedToken ACCESS_TOKEN = new VerifiedToken("tokenId", USER_ID, VerifiedToken.ACCESS, "user", 0, null, null,
+            System.currentTimeMillis(), System.currentTimeMillis() + 900000);
 
     @BeforeEach
     void setUp() {
@@ -60,8 +69,31 @@ public class JwtAuthenticationFilterTest {
     void doFilterInternal_ValidToken_SetsAuthentication() throws ServletException, IOException {
         // Arrange
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
-        when(jwtService.validateTokenAndGetUserId(VALID_TOKEN)).thenReturn(USER_ID);
-        when(userService.loadUserByUsername(USER_ID)).thenReturn(userDetails);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenVersionCurrent(ACCESS_TOKEN)).thenReturn(true);
+        when(userService.loadPrincipal(USER_ID, 0)).thenReturn(PRINCIPAL);
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        assertEquals(PRINCIPAL, authentication.getPrincipal());
+        assertEquals(List.of("ROLE_USER"), authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        verify(request).setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, ACCESS_TOKEN);
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternal_StatelessMode_AuthenticatesFromClaimsWithoutLoadingUser() throws ServletException, IOException {
+        // Arrange
+        ReflectionTestUtils.setField(filter, "statelessAuthentication", true);
+        VerifiedToken token = new VerifiedToken("tokenId", USER_ID, VerifiedToken.ACCESS, "user", 0, null, List.of("ADMIN"),
+                System.currentTimeMillis(), System.currentTimeMillis() + 900000);
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(token);
+        when(tokenService.isTokenVersionCurrent(token)).thenReturn(true);
 
         // Act
         filter.doFilterInternal(request, response, filterChain);
@@ -69,7 +101,94 @@ public class JwtAuthenticationFilterTest {
         // Assert
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         assertNotNull(authentication);
-        assertEquals(userDetails, authentication.getPrincipal());
+        assertEquals(new CustomUserDetails(USER_ID, "user", Role.ADMIN.bit(), 0), authentication.getPrincipal());
+        assertEquals(List.of("ROLE_ADMIN"), authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        verify(userService, never()).loadPrincipal(anyString(), anyLong());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternal_StatelessModeWithTokenWithoutRoles_LoadsUser() throws ServletException, IOException {
+        // Arrange
+        ReflectionTestUtils.setField(filter, "statelessAuthentication", true);
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenVersionCurrent(ACCESS_TOKEN)).thenReturn(true);
+        when(userService.loadPrincipal(USER_ID, 0)).thenReturn(PRINCIPAL);
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        assertEquals(PRINCIPAL, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+    }
+
+    @Test
+    void doFilterInternal_RevokedToken_DoesNotSetAuthentication() throws ServletException, IOException {
+        // Arrange
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenIdBlacklisted(ACCESS_TOKEN.id(), ACCESS_TOKEN.expiresAt())).thenReturn(true);
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(request, never()).setAttribute(eq(VerifiedToken.REQUEST_ATTRIBUTE), any());
+        verify(userService, never()).loadPrincipal(anyString(), anyLong());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternal_StaleTokenVersion_DoesNotSetAuthentication() throws ServletException, IOException {
+        // Arrange
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenVersionCurrent(ACCESS_TOKEN)).thenReturn(false);
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(request, never()).setAttribute(eq(VerifiedToken.REQUEST_ATTRIBUTE), any());
+        verify(userService, never()).loadPrincipal(anyString(), anyLong());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternal_RevocationCheckFails_DoesNotSetAuthentication() throws ServletException, IOException {
+        // Arrange
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenIdBlacklisted(ACCESS_TOKEN.id(), ACCESS_TOKEN.expiresAt()))
+                .thenThrow(new TokenServiceException("Failed to check if token is blacklisted"));
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(userService, never()).loadPrincipal(anyString(), anyLong());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternal_RefreshTokenAsBearer_DoesNotSetAuthentication() throws ServletException, IOException {
+        // Arrange
+        VerifiedToken refreshToken = new VerifiedToken("tokenId", USER_ID, VerifiedToken.REFRESH, "user", 0, null, null,
+                System.currentTimeMillis(), System.currentTimeMillis() + 900000);
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(refreshToken);
+
+        // Act
+        filter.doFilterInternal(request, response, filterChain);
+
+        // Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(request, never()).setAttribute(eq(VerifiedToken.REQUEST_ATTRIBUTE), any());
+        verify(userService, never()).loadPrincipal(anyString(), anyLong());
         verify(filterChain).doFilter(request, response);
     }
 
@@ -77,7 +196,7 @@ public class JwtAuthenticationFilterTest {
     void doFilterInternal_InvalidToken_DoesNotSetAuthentication() throws ServletException, IOException {
         // Arrange
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + "invalidToken");
-        when(jwtService.validateTokenAndGetUserId("invalidToken")).thenThrow(new RuntimeException("Invalid token"));
+        when(jwtService.verify("invalidToken")).thenThrow(new RuntimeException("Invalid token"));
 
         // Act
         filter.doFilterInternal(request, response, filterChain);
@@ -92,8 +211,9 @@ public class JwtAuthenticationFilterTest {
     void doFilterInternal_UserNotFound_DoesNotSetAuthentication() throws ServletException, IOException {
         // Arrange
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
-        when(jwtService.validateTokenAndGetUserId(VALID_TOKEN)).thenReturn(USER_ID);
-        when(userService.loadUserByUsername(USER_ID)).thenThrow(new ResourceNotFoundException("User not found"));
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenVersionCurrent(ACCESS_TOKEN)).thenReturn(true);
+        when(userService.loadPrincipal(USER_ID, 0)).thenThrow(new ResourceNotFoundException("User not found"));
 
         // Act
         filter.doFilterInternal(request, response, filterChain);
@@ -124,7 +244,8 @@ public class JwtAuthenticationFilterTest {
         Authentication existingAuthentication = mock(Authentication.class);
         SecurityContextHolder.getContext().setAuthentication(existingAuthentication);
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + VALID_TOKEN);
-        when(jwtService.validateTokenAndGetUserId(VALID_TOKEN)).thenReturn(USER_ID);
+        when(jwtService.verify(VALID_TOKEN)).thenReturn(ACCESS_TOKEN);
+        when(tokenService.isTokenVersionCurrent(ACCESS_TOKEN)).thenReturn(true);
 
         // Act
         filter.doFilterInternal(request, response, filterChain);
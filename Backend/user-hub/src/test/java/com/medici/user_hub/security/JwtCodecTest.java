@@ -0,0 +1,211 @@
+package com.medici.user_hub.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtCodecTest {
+
+    private static final String SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+
+    private JwtKeyRegistry keyRegistry;
+    private JwtKeyRegistry.SigningKey key;
+    private JwtCodec codec;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        keyRegistry = new JwtKeyRegistry(SECRET, new String[0]);
+        key = keyRegistry.activeKey();
+        codec = new JwtCodec();
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    void encode_producesTokenReadableByJjwt() {
+        // Act
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+
+        // Assert
+        Claims claims = Jwts.parserBuilder().setSigningKey(key.key()).build().parseClaimsJws(token).getBody();
+        assertEquals("42", claims.getSubject());
+        assertEquals("alice", claims.get("username"));
+        assertEquals("ACCESS", claims.get("type"));
+        assertEquals(0L, claims.get("ver", Long.class));
+        assertEquals(now / 1000, claims.getIssuedAt().getTime() / 1000);
+        assertEquals((now + 60000) / 1000, claims.getExpiration().getTime() / 1000);
+    }
+
+    @Test
+    void decode_roundTripsEncodedClaims() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.REFRESH, 7, "family", null, now, now + 60000);
+
+        // Act
+        VerifiedToken verifiedToken = codec.decode(token, "id", keyRegistry.verificationKeys());
+
+        // Assert
+        assertEquals("id", verifiedToken.id());
+        assertEquals("42", verifiedToken.subject());
+        assertEquals("alice", verifiedToken.username());
+        assertTrue(verifiedToken.isRefreshToken());
+        assertEquals(7, verifiedToken.version());
+        assertEquals("family", verifiedToken.family());
+        assertEquals((now + 60000) / 1000 * 1000, verifiedToken.expiresAt());
+    }
+
+    @Test
+    void encode_withJwtId_writesJtiClaim() {
+        // Act
+        String token = codec.encode(key, "42", "alice", VerifiedToken.REFRESH, 0, "family", "unique", null, now, now + 60000);
+
+        // Assert
+        Claims claims = Jwts.parserBuilder().setSigningKey(key.key()).build().parseClaimsJws(token).getBody();
+        assertEquals("unique", claims.getId());
+        assertEquals("42", codec.decode(token, "id", keyRegistry.verificationKeys()).subject());
+    }
+
+    @Test
+    void decode_roundTripsRoles() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, List.of("ADMIN", "USER"), now, now + 60000);
+
+        // Act
+        VerifiedToken verifiedToken = codec.decode(token, "id", keyRegistry.verificationKeys());
+
+        // Assert
+        assertEquals(List.of("ADMIN", "USER"), verifiedToken.roles());
+        Claims claims = Jwts.parserBuilder().setSigningKey(key.key()).build().parseClaimsJws(token).getBody();
+        assertEquals(List.of("ADMIN", "USER"), claims.get("roles", List.class));
+    }
+
+    @Test
+    void decode_withoutRoles_readsRolesAsAbsent() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+
+        // Act
+        VerifiedToken verifiedToken = codec.decode(token, "id", keyRegistry.verificationKeys());
+
+        // Assert
+        assertNull(verifiedToken.roles());
+        assertFalse(verifiedToken.hasRoles());
+    }
+
+    @Test
+    void encode_escapesSpecialCharactersInUsername() {
+        // Arrange
+        String username = "al\"ice\\ é世\n";
+        String token = codec.encode(key, "42", username, VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+
+        // Act & Assert
+        assertEquals(username, codec.decode(token, "id", keyRegistry.verificationKeys()).username());
+        assertEquals(username, Jwts.parserBuilder().setSigningKey(key.key()).build()
+                .parseClaimsJws(token).getBody().get("username"));
+    }
+
+    @Test
+    void encode_omitsNullUsername() {
+        String token = codec.encode(key, "42", null, VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+
+        assertNull(codec.decode(token, "id", keyRegistry.verificationKeys()).username());
+    }
+
+    @Test
+    void decode_tokenIssuedByJjwtWithSameHeader_isVerified() {
+        // Arrange
+        String token = Jwts.builder()
+                .setHeaderParam("kid", key.kid())
+                .claim("type", "ACCESS")
+                .setSubject("42")
+                .setExpiration(new Date(now + 60000))
+                .signWith(key.key(), SignatureAlgorithm.HS512)
+                .compact();
+
+        // Act
+        VerifiedToken verifiedToken = codec.decode(token, "id", keyRegistry.verificationKeys());
+
+        // Assert
+        assertNotNull(verifiedToken);
+        assertEquals("42", verifiedToken.subject());
+    }
+
+    @Test
+    void decode_tokenWithoutKeyId_isLeftToJjwt() {
+        // Arrange
+        String token = Jwts.builder()
+                .setSubject("42")
+                .setExpiration(new Date(now + 60000))
+                .signWith(key.key(), SignatureAlgorithm.HS512)
+                .compact();
+
+        // Act & Assert
+        assertNull(codec.decode(token, "id", keyRegistry.verificationKeys()));
+    }
+
+    @Test
+    void encodeAndDecode_onManyVirtualThreads_shareMacsSafely() throws Exception {
+        // Arrange
+        List<Future<VerifiedToken>> results = new ArrayList<>();
+
+        // Act
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                String subject = Integer.toString(i);
+                results.add(executor.submit(() -> codec.decode(
+                        codec.encode(key, subject, "alice", VerifiedToken.ACCESS, 0, null, null, now, now + 60000),
+                        "id", keyRegistry.verificationKeys())));
+            }
+        }
+
+        // Assert
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Integer.toString(i), results.get(i).get().subject());
+        }
+    }
+
+    @Test
+    void decode_tamperedSignature_throwsSignatureException() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+        char last = token.charAt(token.length() - 2);
+        String tampered = token.substring(0, token.length() - 2) + (last == 'A' ? 'B' : 'A') + token.charAt(token.length() - 1);
+
+        // Act & Assert
+        assertThrows(SignatureException.class, () -> codec.decode(tampered, "id", keyRegistry.verificationKeys()));
+    }
+
+    @Test
+    void decode_tamperedPayload_throwsSignatureException() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+        String other = codec.encode(key, "43", "mallory", VerifiedToken.ACCESS, 0, null, null, now, now + 60000);
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + other.split("\\.")[1] + "." + parts[2];
+
+        // Act & Assert
+        assertThrows(SignatureException.class, () -> codec.decode(forged, "id", keyRegistry.verificationKeys()));
+    }
+
+    @Test
+    void decode_expiredToken_throwsExpiredJwtException() {
+        // Arrange
+        String token = codec.encode(key, "42", "alice", VerifiedToken.ACCESS, 0, null, null, now - 120000, now - 60000);
+
+        // Act & Assert
+        assertThrows(ExpiredJwtException.class, () -> codec.decode(token, "id", keyRegistry.verificationKeys()));
+    }
+}
@@ -0,0 +1,132 @@
+package com.medici.user_hub.security;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRegistryTest {
+
+    private static final String PRIMARY_SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+    private static final String PREVIOUS_SECRET = "YTZkYzQ3ZjE4YjUwOGU5ZDcxYzNiNjJlOTBmNDE1YTdjMjhkOTZlMDNiNDFmNThhNzJjOTBlMTNkNDZiOGY3Yw==";
+
+    private JwtKeyRegistry keyRegistry;
+
+    @BeforeEach
+    void setUp() {
+        keyRegistry = new JwtKeyRegistry(PRIMARY_SECRET, new String[]{PREVIOUS_SECRET});
+    }
+
+    @Test
+    void constructor_registersPrimaryAndPreviousKeys() {
+        assertEquals(2, keyRegistry.verificationKeys().size());
+        assertSame(keyRegistry.activeKey(), keyRegistry.verificationKeys().iterator().next());
+    }
+
+    @Test
+    void keyIds_areStableForTheSameSecret() {
+        JwtKeyRegistry other = new JwtKeyRegistry(PRIMARY_SECRET, new String[0]);
+
+        assertEquals(keyRegistry.activeKey().kid(), other.activeKey().kid());
+    }
+
+    @Test
+    void resolve_withKidHeader_returnsMatchingKey() {
+        // Arrange
+        JwtKeyRegistry.SigningKey previous = keyRegistry.verificationKeys().stream()
+                .filter(key -> key != keyRegistry.activeKey())
+                .findFirst()
+                .orElseThrow();
+        String token = Jwts.builder()
+                .setHeaderParam("kid", previous.kid())
+                .setSubject("1")
+                .signWith(previous.key(), SignatureAlgorithm.HS512)
+                .compact();
+
+        // Act & Assert
+        assertSame(previous, keyRegistry.resolve(token));
+        assertEquals("1", keyRegistry.resolve(token).parser().parseClaimsJws(token).getBody().getSubject());
+    }
+
+    @Test
+    void resolve_withoutKidHeader_returnsActiveKey() {
+        // Arrange
+        String token = Jwts.builder()
+                .setSubject("1")
+                .signWith(keyRegistry.activeKey().key(), SignatureAlgorithm.HS512)
+                .compact();
+
+        // Act & Assert
+        assertSame(keyRegistry.activeKey(), keyRegistry.resolve(token));
+    }
+
+    @Test
+    void resolve_withUnknownKid_throwsException() {
+        // Arrange
+        String token = Jwts.builder()
+                .setHeaderParam("kid", "unknown")
+                .setSubject("1")
+                .signWith(keyRegistry.activeKey().key(), SignatureAlgorithm.HS512)
+                .compact();
+
+        // Act & Assert
+        assertThrows(JwtException.class, () -> keyRegistry.resolve(token));
+    }
+
+    @Test
+    void resolve_withMalformedToken_throwsException() {
+        assertThrows(JwtException.class, () -> keyRegistry.resolve("not-a-token"));
+    }
+
+    @Test
+    void es256_signsWithEcKeyAndStillVerifiesHmacTokens() {
+        // Arrange
+        JwtKeyRegistry ecRegistry = new JwtKeyRegistry(PRIMARY_SECRET, new String[0], "ES256", "", "", true);
+        String legacyToken = Jwts.builder()
+                .setSubject("1")
+                .signWith(keyRegistry.activeKey().key(), SignatureAlgorithm.HS512)
+                .compact();
+        JwtKeyRegistry.SigningKey active = ecRegistry.activeKey();
+        String ecToken = Jwts.builder()
+                .setHeaderParam("kid", active.kid())
+                .setSubject("2")
+                .signWith(active.key(), active.algorithm())
+                .compact();
+
+        // Act & Assert
+        assertEquals(SignatureAlgorithm.ES256, active.algorithm());
+        assertTrue(active.isAsymmetric());
+        assertEquals("2", ecRegistry.resolve(ecToken).parser().parseClaimsJws(ecToken).getBody().getSubject());
+        assertEquals("1", ecRegistry.resolve(legacyToken).parser().parseClaimsJws(legacyToken).getBody().getSubject());
+        assertEquals(1, ecRegistry.publicJwks().size());
+        assertEquals(active.kid(), ecRegistry.publicJwks().get(0).get("kid"));
+    }
+
+    @Test
+    void es256_withoutConfiguredKey_failsUnlessEphemeralKeyIsAllowed() {
+        // Act & Assert
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> new JwtKeyRegistry(PRIMARY_SECRET, new String[0], "ES256", "", "", false));
+        assertTrue(exception.getMessage().contains("jwt.ecPrivateKey"));
+    }
+
+    @Test
+    void publicJwks_withOnlyHmacKeys_isEmpty() {
+        assertTrue(keyRegistry.publicJwks().isEmpty());
+    }
+
+    @Test
+    void retire_activeKey_throwsException() {
+        String activeKid = keyRegistry.activeKey().kid();
+
+        assertThrows(IllegalArgumentException.class, () -> keyRegistry.retire(activeKid));
+    }
+
+    @Test
+    void activate_unknownKey_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> keyRegistry.activate("unknown"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.medici.user_hub.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordEncodersTest {
+
+    private final PasswordEncoder encoder = PasswordEncoders.create(5);
+
+    @Test
+    void create_hashesWithBCryptPrefixAndCost() {
+        // Act
+        String hash = encoder.encode("password123");
+
+        // Assert
+        assertTrue(hash.startsWith("{bcrypt}$2a$05$"));
+        assertTrue(encoder.matches("password123", hash));
+        assertFalse(encoder.upgradeEncoding(hash));
+    }
+
+    @Test
+    void create_matchesUnprefixedHashesAndUpgradesThem() {
+        // Arrange
+        String legacyHash = new BCryptPasswordEncoder(5).encode("password123");
+
+        // Act & Assert
+        assertTrue(encoder.matches("password123", legacyHash));
+        assertTrue(encoder.upgradeEncoding(legacyHash));
+    }
+
+    @Test
+    void create_upgradesHashesWithLowerCost() {
+        // Arrange
+        String weakerHash = PasswordEncoders.create(4).encode("password123");
+
+        // Act & Assert
+        assertTrue(encoder.matches("password123", weakerHash));
+        assertTrue(encoder.upgradeEncoding(weakerHash));
+    }
+
+    @Test
+    void create_matchesPbkdf2HashesAndUpgradesThem() {
+        // Arrange
+        String pbkdf2Hash = "{pbkdf2@SpringSecurity_v5_8}"
+                + Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8().encode("password123");
+
+        // Act & Assert
+        assertTrue(encoder.matches("password123", pbkdf2Hash));
+        assertTrue(encoder.upgradeEncoding(pbkdf2Hash));
+    }
+
+    @Test
+    void calibrateBCryptStrength_staysWithinBounds() {
+        // Act
+        int unreachable = PasswordEncoders.calibrateBCryptStrength(0, 4, 6);
+        int generous = PasswordEncoders.calibrateBCryptStrength(60000, 4, 6);
+
+        // Assert
+        assertEquals(4, unreachable);
+        assertEquals(6, generous);
+    }
+}
@@ -0,0 +1,198 @@
+package com.medici.user_hub.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevokedTokenCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RevokedTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RevokedTokenCache(100, 1000, 0.001, 60000, meterRegistry);
+    }
+
+    @Test
+    void isSynced_beforeLoad_returnsFalse() {
+        assertFalse(cache.isSynced());
+        assertEquals(0.0, meterRegistry.get("jwt.revoked-tokens.synced").gauge().value());
+    }
+
+    @Test
+    void load_addsSnapshotAndMarksSynced() {
+        // Act
+        cache.load(Map.of("a", System.currentTimeMillis() + 60000));
+
+        // Assert
+        assertTrue(cache.isSynced());
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertEquals(1.0, meterRegistry.get("jwt.revoked-tokens.synced").gauge().value());
+    }
+
+    @Test
+    void load_keepsRevocationsReceivedBeforeSnapshot() {
+        // Arrange
+        cache.add("a", System.currentTimeMillis() + 60000);
+
+        // Act
+        cache.load(Map.of("b", System.currentTimeMillis() + 60000));
+
+        // Assert
+        assertTrue(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+    }
+
+    @Test
+    void add_withExpiredToken_isIgnored() {
+        cache.add("a", System.currentTimeMillis() - 1);
+
+        assertFalse(cache.contains("a"));
+    }
+
+    @Test
+    void onMessage_addsPublishedRevocation() {
+        // Arrange
+        String body = RevokedTokenCache.message("a", System.currentTimeMillis() + 60000);
+
+        // Act
+        cache.onMessage(new DefaultMessage(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8)), null);
+
+        // Assert
+        assertTrue(cache.contains("a"));
+    }
+
+    @Test
+    void onMessage_withMalformedBody_isIgnored() {
+        cache.onMessage(new DefaultMessage(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "garbage".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertFalse(cache.contains("garbage"));
+    }
+
+    @Test
+    void mightBeRevoked_beforeLoad_returnsTrue() {
+        assertTrue(cache.mightBeRevoked("a"));
+    }
+
+    @Test
+    void mightBeRevoked_afterLoad_separatesRevokedFromOtherTokens() {
+        // Arrange
+        cache.load(Map.of("a", System.currentTimeMillis() + 60000));
+
+        // Act & Assert
+        assertTrue(cache.mightBeRevoked("a"));
+        assertFalse(cache.mightBeRevoked("b"));
+        assertEquals(1.0, meterRegistry.get("jwt.revocation-filter.lookups").tag("result", "positive").counter().count());
+        assertEquals(1.0, meterRegistry.get("jwt.revocation-filter.lookups").tag("result", "negative").counter().count());
+    }
+
+    @Test
+    void isExact_afterSizeBoundEvictsEntry_returnsFalseButStaysSynced() {
+        // Arrange
+        RevokedTokenCache small = new RevokedTokenCache(1, 1000, 0.001, 60000, new SimpleMeterRegistry());
+        small.load(Map.of());
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            small.add("id" + i, System.currentTimeMillis() + 60000);
+        }
+        small.contains("id0"); // Drives Caffeine's pending maintenance
+
+        // Assert
+        assertTrue(small.isSynced());
+        assertFalse(small.isExact());
+        assertTrue(small.mightBeRevoked("id0"));
+    }
+
+    @Test
+    void isExact_afterLoadExceedingSizeBound_returnsFalse() {
+        // Arrange
+        RevokedTokenCache small = new RevokedTokenCache(1, 1000, 0.001, 60000, new SimpleMeterRegistry());
+        Map<String, Long> snapshot = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            snapshot.put("id" + i, System.currentTimeMillis() + 60000);
+        }
+
+        // Act
+        small.load(snapshot);
+
+        // Assert
+        assertTrue(small.isSynced());
+        assertFalse(small.isExact());
+    }
+
+    @Test
+    void isExact_afterLoadWithinSizeBound_returnsTrue() {
+        // Act
+        cache.load(Map.of("a", System.currentTimeMillis() + 60000));
+
+        // Assert
+        assertTrue(cache.isExact());
+    }
+
+    @Test
+    void markUnsynced_afterLoad_returnsToRedisFallback() {
+        // Arrange
+        cache.load(Map.of());
+
+        // Act
+        cache.markUnsynced();
+
+        // Assert
+        assertFalse(cache.isSynced());
+    }
+
+    @Test
+    void onChannelSubscribed_afterLoad_fallsBackToRedisForMissedRevocations() {
+        // Arrange
+        cache.load(Map.of());
+
+        // Act
+        // The connection drops, a revocation is published and lost, and Lettuce resubscribes
+        cache.onChannelSubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 1);
+
+        // Assert
+        assertFalse(cache.isSynced());
+        assertFalse(cache.isExact());
+        assertTrue(cache.mightBeRevoked("lost"));
+    }
+
+    @Test
+    void load_ofSnapshotReadBeforeSubscriptionLoss_staysUnsynced() {
+        // Arrange
+        long generation = cache.generation();
+        cache.onChannelUnsubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 0);
+
+        // Act
+        cache.load(Map.of("a", System.currentTimeMillis() + 60000), generation);
+
+        // Assert
+        assertFalse(cache.isSynced());
+        assertTrue(cache.contains("a"));
+    }
+
+    @Test
+    void load_ofSnapshotReadAfterResubscription_marksSynced() {
+        // Arrange
+        cache.onChannelUnsubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 0);
+        cache.onChannelSubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 1);
+
+        // Act
+        cache.load(Map.of(), cache.generation());
+
+        // Assert
+        assertTrue(cache.isSynced());
+    }
+}
@@ -0,0 +1,83 @@
+package com.medici.user_hub.security;
+
+import com.medici.user_hub.model.Role;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleAuthorizationManagerTest {
+
+    private final RoleAuthorizationManager userOrAdmin = RoleAuthorizationManager.anyOf(Role.USER, Role.ADMIN);
+    private final RoleAuthorizationManager adminOnly = RoleAuthorizationManager.anyOf(Role.ADMIN);
+
+    @Test
+    void check_principalWithRequiredRole_grants() {
+        // Arrange
+        Authentication authentication = authenticate(new CustomUserDetails("1", "user", Role.USER.bit(), 0));
+
+        // Act & Assert
+        assertTrue(userOrAdmin.check(() -> authentication, null).isGranted());
+        assertFalse(adminOnly.check(() -> authentication, null).isGranted());
+    }
+
+    @Test
+    void check_principalWithBothRoles_grantsEither() {
+        // Arrange
+        Authentication authentication = authenticate(
+                new CustomUserDetails("1", "admin", Role.USER.bit() | Role.ADMIN.bit(), 0));
+
+        // Act & Assert
+        assertTrue(userOrAdmin.check(() -> authentication, null).isGranted());
+        assertTrue(adminOnly.check(() -> authentication, null).isGranted());
+    }
+
+    @Test
+    void check_principalWithoutRoles_denies() {
+        // Arrange
+        Authentication authentication = authenticate(new CustomUserDetails("1", "user", 0, 0));
+
+        // Act & Assert
+        assertFalse(userOrAdmin.check(() -> authentication, null).isGranted());
+    }
+
+    @Test
+    void check_otherPrincipal_fallsBackToAuthorities() {
+        // Arrange
+        Authentication authentication = new UsernamePasswordAuthenticationToken("1", null,
+                AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
+
+        // Act & Assert
+        assertTrue(adminOnly.check(() -> authentication, null).isGranted());
+    }
+
+    @Test
+    void check_anonymousOrMissingAuthentication_denies() {
+        // Arrange
+        Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+        // Act & Assert
+        assertFalse(userOrAdmin.check(() -> anonymous, null).isGranted());
+        assertFalse(userOrAdmin.check(() -> null, null).isGranted());
+    }
+
+    @Test
+    void check_unauthenticatedToken_denies() {
+        // Arrange
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+                new CustomUserDetails("1", "user", Role.USER.bit(), 0), null);
+
+        // Act & Assert
+        assertFalse(userOrAdmin.check(() -> authentication, null).isGranted());
+    }
+
+    private static Authentication authenticate(CustomUserDetails principal) {
+        return new UsernamePasswordAuthenticationToken(principal, null, List.copyOf(principal.getAuthorities()));
+    }
+}
@@ -0,0 +1,60 @@
+package com.medici.user_hub.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeWindowedBloomFilterTest {
+
+    private static final long WINDOW_MS = 60000;
+
+    @Test
+    void mightContain_afterPut_returnsTrue() {
+        TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(100, 0.01, WINDOW_MS);
+
+        filter.put("a", System.currentTimeMillis() + WINDOW_MS * 3);
+
+        assertTrue(filter.mightContain("a"));
+        assertFalse(filter.mightContain("b"));
+    }
+
+    @Test
+    void put_withExpiredKey_isIgnored() {
+        TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(100, 0.01, WINDOW_MS);
+
+        filter.put("a", System.currentTimeMillis() - 1);
+
+        assertFalse(filter.mightContain("a"));
+        assertEquals(0, filter.sizeInBytes());
+    }
+
+    @Test
+    void expire_dropsWindowsThatHavePassed() {
+        // Arrange
+        TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(100, 0.01, WINDOW_MS);
+        long now = System.currentTimeMillis();
+        filter.put("soon", now + 1000);
+        filter.put("later", now + WINDOW_MS * 5);
+        long sizeWithBothWindows = filter.sizeInBytes();
+
+        // Act
+        filter.expire(now + WINDOW_MS * 2);
+
+        // Assert
+        assertTrue(filter.sizeInBytes() < sizeWithBothWindows);
+        assertTrue(filter.mightContain("later"));
+    }
+
+    @Test
+    void expectedFalsePositiveRate_growsWithInsertions() {
+        TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(100, 0.01, WINDOW_MS);
+        long expiresAt = System.currentTimeMillis() + WINDOW_MS;
+        assertEquals(0.0, filter.expectedFalsePositiveRate());
+
+        for (int i = 0; i < 100; i++) {
+            filter.put("key" + i, expiresAt);
+        }
+
+        assertTrue(filter.expectedFalsePositiveRate() > 0);
+    }
+}
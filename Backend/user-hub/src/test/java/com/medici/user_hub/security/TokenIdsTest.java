@@ -0,0 +1,23 @@
+package com.medici.user_hub.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenIdsTest {
+
+    @Test
+    void of_returnsFixedSizeStableId() {
+        String token = "header.payload.signature";
+
+        String id = TokenIds.of(token);
+
+        assertEquals(22, id.length());
+        assertEquals(id, TokenIds.of(token));
+    }
+
+    @Test
+    void of_differentTokens_returnDifferentIds() {
+        assertNotEquals(TokenIds.of("header.payload.a"), TokenIds.of("header.payload.b"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.medici.user_hub.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenVersionCacheTest {
+
+    private TokenVersionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new TokenVersionCache(100, 60000, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void get_loadsOnceAndServesFromCache() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        long first = cache.get("user1", userId -> {
+            loads.incrementAndGet();
+            return 2L;
+        });
+        long second = cache.get("user1", userId -> {
+            loads.incrementAndGet();
+            return 3L;
+        });
+
+        // Assert
+        assertEquals(2L, first);
+        assertEquals(2L, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void update_neverMovesVersionBackwards() {
+        // Arrange
+        cache.update("user1", 5L);
+
+        // Act
+        cache.update("user1", 4L);
+
+        // Assert
+        assertEquals(5L, cache.get("user1", userId -> 0L));
+    }
+
+    @Test
+    void onMessage_appliesPublishedVersionBump() {
+        // Arrange
+        cache.get("user1", userId -> 1L);
+
+        // Act
+        cache.onMessage(new DefaultMessage(TokenVersionCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                TokenVersionCache.message("user1", 2L).getBytes(StandardCharsets.UTF_8)), null);
+
+        // Assert
+        assertEquals(2L, cache.get("user1", userId -> 0L));
+    }
+
+    @Test
+    void onMessage_withMalformedBody_isIgnored() {
+        cache.onMessage(new DefaultMessage(TokenVersionCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "garbage".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(0L, cache.get("garbage", userId -> 0L));
+    }
+
+    @Test
+    void invalidate_makesNextCheckReload() {
+        // Arrange
+        cache.get("user1", userId -> 1L);
+
+        // Act
+        cache.invalidate("user1");
+
+        // Assert
+        assertEquals(2L, cache.get("user1", userId -> 2L));
+    }
+
+    @Test
+    void get_whenTracked_keepsEntryPastTtl() throws InterruptedException {
+        // Arrange
+        TokenVersionCache shortLived = new TokenVersionCache(100, 1, new SimpleMeterRegistry());
+        shortLived.setTracked(true);
+        shortLived.get("user1", userId -> 1L);
+
+        // Act
+        Thread.sleep(20);
+
+        // Assert
+        assertEquals(1L, shortLived.get("user1", userId -> 2L));
+    }
+
+    @Test
+    void setTracked_whenTrackingIsLost_flushesAndFallsBackToTtl() throws InterruptedException {
+        // Arrange
+        TokenVersionCache shortLived = new TokenVersionCache(100, 1, new SimpleMeterRegistry());
+        shortLived.setTracked(true);
+        shortLived.get("user1", userId -> 1L);
+
+        // Act
+        shortLived.setTracked(false);
+        long reloaded = shortLived.get("user1", userId -> 2L);
+        Thread.sleep(20);
+
+        // Assert
+        assertEquals(2L, reloaded);
+        assertEquals(3L, shortLived.get("user1", userId -> 3L));
+    }
+}
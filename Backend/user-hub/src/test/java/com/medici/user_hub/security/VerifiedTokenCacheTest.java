@@ -0,0 +1,74 @@
+package com.medici.user_hub.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedTokenCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private VerifiedTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new VerifiedTokenCache(100, meterRegistry);
+    }
+
+    private static VerifiedToken tokenExpiringIn(String id, long millis) {
+        long now = System.currentTimeMillis();
+        return new VerifiedToken(id, "1", VerifiedToken.ACCESS, "user", 0, null, null, now, now + millis);
+    }
+
+    @Test
+    void get_afterPut_returnsCachedToken() {
+        VerifiedToken token = tokenExpiringIn("a", 60000);
+
+        cache.put(token);
+
+        assertSame(token, cache.get("a"));
+    }
+
+    @Test
+    void get_unknownToken_returnsNull() {
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    void put_expiredToken_isNotCached() {
+        cache.put(tokenExpiringIn("expired", -1000));
+
+        assertNull(cache.get("expired"));
+    }
+
+    @Test
+    void get_afterTokenExpires_returnsNull() throws InterruptedException {
+        cache.put(tokenExpiringIn("short", 50));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("short"));
+    }
+
+    @Test
+    void invalidate_removesToken() {
+        cache.put(tokenExpiringIn("revoked", 60000));
+
+        cache.invalidate("revoked");
+
+        assertNull(cache.get("revoked"));
+    }
+
+    @Test
+    void get_recordsHitAndMissMetrics() {
+        cache.put(tokenExpiringIn("a", 60000));
+
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+}
@@ -1,7 +1,17 @@
 package com.medici.user_hub.service;
 
+import com.medici.user_hub.dto.TokenPair;
+import com.medici.user_hub.handler.RefreshTokenConflictException;
 import com.medici.user_hub.handler.TokenServiceException;
+import com.medici.user_hub.model.Role;
 import com.medici.user_hub.model.User;
+import com.medici.user_hub.security.JwtCodec;
+import com.medici.user_hub.security.JwtKeyRegistry;
+import com.medici.user_hub.security.TokenIds;
+import com.medici.user_hub.security.VerifiedToken;
+import com.medici.user_hub.security.VerifiedTokenCache;
+import com.medici.user_hub.store.TokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
@@ -14,8 +24,12 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
 @TestPropertySource(properties = {
@@ -29,7 +43,9 @@ class JwtServiceTest {
     private JwtService jwtService;
 
     private User testUser;
+    private TokenService tokenService;
     private static final String TEST_SECRET = "ZmQ5NDIwMjQ5NjJkNzZmYjc1ZDllMDM3MGNhYWIwZjczN2M2OTk5Mjk3ZGE1ODU5M2JjOTNiZDQ0ZTM3YjhmYQ==";
+    private static final String NEXT_SECRET = "YTZkYzQ3ZjE4YjUwOGU5ZDcxYzNiNjJlOTBmNDE1YTdjMjhkOTZlMDNiNDFmNThhNzJjOTBlMTNkNDZiOGY3Yw==";
     private static final int ACCESS_TOKEN_EXPIRATION = 900000;
     private static final int REFRESH_TOKEN_EXPIRATION = 86400000;
 
@@ -39,7 +55,11 @@ class JwtServiceTest {
         testUser.setId("1");
         testUser.setUsername("testuser");
 
-        ReflectionTestUtils.setField(jwtService, "jwtSecret", TEST_SECRET);
+        ReflectionTestUtils.setField(jwtService, "keyRegistry", new JwtKeyRegistry(TEST_SECRET, new String[0]));
+        ReflectionTestUtils.setField(jwtService, "verifiedTokenCache", new VerifiedTokenCache(1000, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(jwtService, "jwtCodec", new JwtCodec());
+        tokenService = mock(TokenService.class);
+        ReflectionTestUtils.setField(jwtService, "tokenService", tokenService);
         ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMs", ACCESS_TOKEN_EXPIRATION);
         ReflectionTestUtils.setField(jwtService, "refreshTokenExpirationMs", REFRESH_TOKEN_EXPIRATION);
     }
@@ -66,6 +86,75 @@ class JwtServiceTest {
         assertTrue(claims.getExpiration().getTime() <= System.currentTimeMillis() + ACCESS_TOKEN_EXPIRATION + 1000);
     }
 
+    @Test
+    void generateAccessToken_stampsActiveKeyId() {
+        // Arrange
+        JwtKeyRegistry keyRegistry = (JwtKeyRegistry) ReflectionTestUtils.getField(jwtService, "keyRegistry");
+
+        // Act
+        String token = jwtService.generateAccessToken(testUser);
+
+        // Assert
+        String kid = Jwts.parser()
+                .setSigningKey(TEST_SECRET)
+                .parseClaimsJws(token)
+                .getHeader()
+                .getKeyId();
+        assertEquals(keyRegistry.activeKey().kid(), kid);
+    }
+
+    @Test
+    void verify_afterKeyRotation_acceptsTokensFromPreviousKey() {
+        // Arrange
+        JwtKeyRegistry keyRegistry = (JwtKeyRegistry) ReflectionTestUtils.getField(jwtService, "keyRegistry");
+        String oldToken = jwtService.generateAccessToken(testUser);
+        String newKid = keyRegistry.register(NEXT_SECRET);
+
+        // Act
+        keyRegistry.activate(newKid);
+        String newToken = jwtService.generateAccessToken(testUser);
+
+        // Assert
+        assertEquals(testUser.getId(), jwtService.verify(oldToken).subject());
+        assertEquals(testUser.getId(), jwtService.verify(newToken).subject());
+    }
+
+    @Test
+    void verify_withRetiredKey_throwsException() {
+        // Arrange
+        JwtKeyRegistry keyRegistry = (JwtKeyRegistry) ReflectionTestUtils.getField(jwtService, "keyRegistry");
+        String oldToken = jwtService.generateAccessToken(testUser);
+        jwtService.verify(oldToken); // Cached before the key is retired
+        String oldKid = keyRegistry.activeKey().kid();
+        keyRegistry.activate(keyRegistry.register(NEXT_SECRET));
+
+        // Act
+        jwtService.retireSigningKey(oldKid);
+
+        // Assert
+        assertThrows(TokenServiceException.class,
+                () -> jwtService.verify(oldToken).subject());
+    }
+
+    @Test
+    void verify_withTokenFromJjwtWithoutKeyId_returnsClaims() {
+        // Arrange
+        String legacyToken = Jwts.builder()
+                .claim("type", "ACCESS")
+                .setSubject(testUser.getId())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(SignatureAlgorithm.HS512, TEST_SECRET)
+                .compact();
+
+        // Act
+        VerifiedToken verifiedToken = jwtService.verify(legacyToken);
+
+        // Assert
+        assertEquals(testUser.getId(), verifiedToken.subject());
+        assertTrue(verifiedToken.isAccessToken());
+    }
+
     @Test
     void generateAccessToken_withNullUser_throwsException() {
         assertThrows(IllegalArgumentException.class, () ->
@@ -95,87 +184,207 @@ class JwtServiceTest {
     }
 
     @Test
-    void validateTokenAndGetUserId_withValidToken_returnsUserId() {
+    void generateRefreshToken_startsNewFamily() {
+        // Act
+        String token = jwtService.generateRefreshToken(testUser);
+
+        // Assert
+        VerifiedToken verifiedToken = jwtService.verify(token);
+        assertNotNull(verifiedToken.family());
+        verify(tokenService).startRefreshTokenFamily(verifiedToken.family(), TokenIds.of(token), REFRESH_TOKEN_EXPIRATION);
+    }
+
+    @Test
+    void rotateRefreshToken_whenRotated_returnsTokensOfSameFamily() {
         // Arrange
-        String token = jwtService.generateAccessToken(testUser);
+        VerifiedToken refreshToken = jwtService.verify(jwtService.generateRefreshToken(testUser));
+        when(tokenService.rotateRefreshToken(eq(refreshToken.family()), eq(refreshToken.id()), anyString(), eq((long) REFRESH_TOKEN_EXPIRATION)))
+                .thenReturn(TokenStore.RefreshTokenRotation.ROTATED);
 
         // Act
-        String userId = jwtService.validateTokenAndGetUserId(token);
+        TokenPair tokens = jwtService.rotateRefreshToken(refreshToken);
 
         // Assert
-        assertEquals(testUser.getId(), userId);
+        VerifiedToken newRefreshToken = jwtService.verify(tokens.refreshToken());
+        VerifiedToken accessToken = jwtService.verify(tokens.accessToken());
+        assertTrue(newRefreshToken.isRefreshToken());
+        assertEquals(refreshToken.family(), newRefreshToken.family());
+        assertTrue(accessToken.isAccessToken());
+        assertEquals(testUser.getId(), accessToken.subject());
+        assertEquals(testUser.getUsername(), accessToken.username());
+        verify(tokenService).rotateRefreshToken(refreshToken.family(), refreshToken.id(),
+                TokenIds.of(tokens.refreshToken()), REFRESH_TOKEN_EXPIRATION);
     }
 
     @Test
-    void validateTokenAndGetUserId_withExpiredToken_throwsException() {
+    void generateAccessToken_carriesRoles() {
         // Arrange
-        String expiredToken = Jwts.builder()
-                .setSubject(testUser.getId())
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() - 1000))
-                .signWith(SignatureAlgorithm.HS512, TEST_SECRET)
-                .compact();
+        testUser.setRoles(Set.of(Role.USER, Role.ADMIN));
 
-        // Act & Assert
-        TokenServiceException exception = assertThrows(TokenServiceException.class,
-                () -> jwtService.validateTokenAndGetUserId(expiredToken));
-        assertEquals("Token has expired", exception.getMessage());
+        // Act
+        VerifiedToken verifiedToken = jwtService.verify(jwtService.generateAccessToken(testUser));
+
+        // Assert
+        assertEquals(List.of("ADMIN", "USER"), verifiedToken.roles());
     }
 
     @Test
-    void validateTokenAndGetUserId_withInvalidToken_throwsException() {
+    void rotateRefreshToken_carriesRolesIntoNewTokens() {
         // Arrange
-        String invalidToken = "invalid.token";
+        testUser.setRoles(Set.of(Role.ADMIN));
+        VerifiedToken refreshToken = jwtService.verify(jwtService.generateRefreshToken(testUser));
+        when(tokenService.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(TokenStore.RefreshTokenRotation.ROTATED);
+
+        // Act
+        TokenPair tokens = jwtService.rotateRefreshToken(refreshToken);
+
+        // Assert
+        assertEquals(List.of("ADMIN"), jwtService.verify(tokens.accessToken()).roles());
+        assertEquals(List.of("ADMIN"), jwtService.verify(tokens.refreshToken()).roles());
+    }
+
+    @Test
+    void rotateRefreshToken_inSameSecond_issuesDistinctTokens() {
+        // Arrange
+        VerifiedToken refreshToken = jwtService.verify(jwtService.generateRefreshToken(testUser));
+        when(tokenService.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(TokenStore.RefreshTokenRotation.ROTATED);
+
+        // Act
+        TokenPair first = jwtService.rotateRefreshToken(refreshToken);
+        TokenPair second = jwtService.rotateRefreshToken(refreshToken);
+
+        // Assert
+        assertNotEquals(first.refreshToken(), second.refreshToken());
+        assertEquals(refreshToken.family(), jwtService.verify(first.refreshToken()).family());
+    }
+
+    @Test
+    void rotateRefreshToken_whenReused_throwsException() {
+        // Arrange
+        VerifiedToken refreshToken = jwtService.verify(jwtService.generateRefreshToken(testUser));
+        when(tokenService.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(TokenStore.RefreshTokenRotation.REUSED);
 
         // Act & Assert
-        assertThrows(TokenServiceException.class,
-                () -> jwtService.validateTokenAndGetUserId(invalidToken));
+        assertThrows(TokenServiceException.class, () -> jwtService.rotateRefreshToken(refreshToken));
     }
 
     @Test
-    void isTokenExpired_withExpiredToken_returnsTrue() {
+    void rotateRefreshToken_whenAlreadyRotated_throwsConflict() {
         // Arrange
-        String expiredToken = Jwts.builder()
-                .setSubject(testUser.getId())
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() - 1000))
-                .signWith(SignatureAlgorithm.HS512, TEST_SECRET)
-                .compact();
+        VerifiedToken refreshToken = jwtService.verify(jwtService.generateRefreshToken(testUser));
+        when(tokenService.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(TokenStore.RefreshTokenRotation.ALREADY_ROTATED);
 
         // Act & Assert
-        assertTrue(jwtService.isTokenExpired(expiredToken));
+        assertThrows(RefreshTokenConflictException.class, () -> jwtService.rotateRefreshToken(refreshToken));
     }
 
     @Test
-    void isTokenExpired_withValidToken_returnsFalse() {
+    void rotateRefreshToken_withAccessToken_throwsException() {
         // Arrange
-        String validToken = jwtService.generateAccessToken(testUser);
+        VerifiedToken accessToken = jwtService.verify(jwtService.generateAccessToken(testUser));
 
         // Act & Assert
-        assertFalse(jwtService.isTokenExpired(validToken));
+        assertThrows(TokenServiceException.class, () -> jwtService.rotateRefreshToken(accessToken));
+        verify(tokenService, never()).rotateRefreshToken(anyString(), anyString(), anyString(), anyLong());
     }
 
     @Test
-    void getTokenExpiration_withValidToken_returnsCorrectExpiration() {
+    void verify_withValidAccessToken_returnsAllClaims() {
         // Arrange
         long now = System.currentTimeMillis();
         String token = jwtService.generateAccessToken(testUser);
 
         // Act
-        long expiration = jwtService.getTokenExpiration(token);
+        VerifiedToken verifiedToken = jwtService.verify(token);
+
+        // Assert
+        assertEquals(testUser.getId(), verifiedToken.subject());
+        assertEquals(testUser.getUsername(), verifiedToken.username());
+        assertTrue(verifiedToken.isAccessToken());
+        assertFalse(verifiedToken.isRefreshToken());
+        assertTrue(verifiedToken.issuedAt() <= System.currentTimeMillis());
+        assertTrue(verifiedToken.expiresAt() > now);
+        assertTrue(verifiedToken.expiresAt() <= now + ACCESS_TOKEN_EXPIRATION + 1000);
+        assertTrue(verifiedToken.remainingMillis() > 0);
+    }
+
+    @Test
+    void generateAccessToken_stampsCurrentTokenVersion() {
+        // Arrange
+        when(tokenService.getTokenVersion(testUser.getId())).thenReturn(3L);
+
+        // Act
+        String token = jwtService.generateAccessToken(testUser);
+
+        // Assert
+        assertEquals(3, jwtService.verify(token).version());
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(TEST_SECRET)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+        assertEquals(3L, claims.get(VerifiedToken.VERSION_CLAIM, Long.class));
+    }
+
+    @Test
+    void verify_sameTokenTwice_servesSecondCallFromCache() {
+        // Arrange
+        String token = jwtService.generateAccessToken(testUser);
+
+        // Act
+        VerifiedToken first = jwtService.verify(token);
+        VerifiedToken second = jwtService.verify(token);
 
         // Assert
-        assertTrue(expiration > now);
-        assertTrue(expiration <= now + ACCESS_TOKEN_EXPIRATION + 1000);
+        assertSame(first, second);
     }
 
     @Test
-    void getTokenExpiration_withInvalidToken_throwsException() {
+    void verify_withValidRefreshToken_returnsRefreshType() {
+        // Arrange
+        String token = jwtService.generateRefreshToken(testUser);
+
+        // Act
+        VerifiedToken verifiedToken = jwtService.verify(token);
+
+        // Assert
+        assertTrue(verifiedToken.isRefreshToken());
+        assertEquals(testUser.getId(), verifiedToken.subject());
+    }
+
+    @Test
+    void verify_withExpiredToken_throwsException() {
+        // Arrange
+        String expiredToken = Jwts.builder()
+                .setSubject(testUser.getId())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(SignatureAlgorithm.HS512, TEST_SECRET)
+                .compact();
+
+        // Act & Assert
+        TokenServiceException exception = assertThrows(TokenServiceException.class,
+                () -> jwtService.verify(expiredToken));
+        assertEquals("Token has expired", exception.getMessage());
+    }
+
+    @Test
+    void verify_withInvalidToken_throwsException() {
         // Arrange
         String invalidToken = "invalid.token";
 
         // Act & Assert
         assertThrows(TokenServiceException.class,
-                () -> jwtService.getTokenExpiration(invalidToken));
+                () -> jwtService.verify(invalidToken));
+    }
+
+    @Test
+    void verify_withEmptyToken_throwsException() {
+        assertThrows(TokenServiceException.class,
+                () -> jwtService.verify(" "));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package com.medici.user_hub.service;
+
+import com.medici.user_hub.handler.ServiceBusyException;
+import com.medici.user_hub.security.PasswordEncoders;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordHasher = new PasswordHasher(PasswordEncoders.create(4), 1, 1, 2, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void encode_producesHashThatMatches() {
+        // Act
+        String hash = passwordHasher.encode("password123");
+
+        // Assert
+        assertNotEquals("password123", hash);
+        assertTrue(passwordHasher.matches("password123", hash));
+        assertFalse(passwordHasher.matches("wrong", hash));
+        assertEquals(3, meterRegistry.get("password.hashing.duration").timer().count());
+    }
+
+    @Test
+    void simulateMatch_spendsOneHashCheck() {
+        // Act
+        passwordHasher.simulateMatch("password123");
+
+        // Assert
+        assertEquals(1, meterRegistry.get("password.hashing.duration").timer().count());
+    }
+
+    @Test
+    void run_hashesOnPoolThread() {
+        // Act
+        String threadName = passwordHasher.run(() -> Thread.currentThread().getName());
+
+        // Assert
+        assertTrue(threadName.startsWith("password-hasher-"));
+    }
+
+    @Test
+    void run_whenQueueIsFull_rejectsWithRetryAfter() throws Exception {
+        // Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> running = CompletableFuture.supplyAsync(() -> passwordHasher.run(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> queued = CompletableFuture.supplyAsync(() -> passwordHasher.run(() -> "queued"));
+        while (meterRegistry.get("password.hashing.queue").gauge().value() < 1) {
+            Thread.sleep(1);
+        }
+
+        // Act
+        ServiceBusyException exception = assertThrows(ServiceBusyException.class,
+                () -> passwordHasher.run(() -> "rejected"));
+
+        // Assert
+        assertEquals(2, exception.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("password.hashing.rejected").counter().count());
+        release.countDown();
+        assertEquals(true, running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void run_failingHash_rethrowsCause() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> passwordHasher.run(() -> {
+            throw new IllegalArgumentException("rawPassword cannot be null");
+        }));
+    }
+
+    @Test
+    void encodeAsync_runsConcurrentlyWithCaller() {
+        // Act
+        Future<String> passwordHash = passwordHasher.encodeAsync("password123");
+        Future<String> answerHash = passwordHasher.encodeAsync("answer");
+
+        // Assert
+        assertTrue(passwordHasher.matches("password123", passwordHasher.await(passwordHash)));
+        assertTrue(passwordHasher.matches("answer", passwordHasher.await(answerHash)));
+    }
+
+    @Test
+    void encodeAsync_cancelledBeforeStart_neverRuns() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> running = CompletableFuture.supplyAsync(
+                () -> passwordHasher.run(() -> release.await(5, TimeUnit.SECONDS)));
+        while (meterRegistry.get("password.hashing.wait").timer().count() == 0) {
+            Thread.sleep(1);
+        }
+        Future<String> queued = passwordHasher.encodeAsync("password123");
+
+        // Act
+        queued.cancel(true);
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(queued.isCancelled());
+        assertThrows(CancellationException.class, () -> passwordHasher.await(queued));
+        assertEquals(1, meterRegistry.get("password.hashing.duration").timer().count());
+    }
+}
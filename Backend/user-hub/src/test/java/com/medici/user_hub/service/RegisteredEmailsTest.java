@@ -0,0 +1,126 @@
+package com.medici.user_hub.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegisteredEmailsTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RegisteredEmails registeredEmails;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registeredEmails = new RegisteredEmails(redisTemplate, 1000, 0.001, meterRegistry);
+    }
+
+    @Test
+    void mightBeRegistered_beforeLoad_returnsTrue() {
+        assertFalse(registeredEmails.isSynced());
+        assertTrue(registeredEmails.mightBeRegistered("unknown@example.com"));
+    }
+
+    @Test
+    void load_rulesOutUnknownEmails() {
+        // Act
+        registeredEmails.load(2, () -> Stream.of("a@example.com", "b@example.com"));
+
+        // Assert
+        assertTrue(registeredEmails.isSynced());
+        assertTrue(registeredEmails.mightBeRegistered("a@example.com"));
+        assertFalse(registeredEmails.mightBeRegistered("unknown@example.com"));
+        assertEquals(1, meterRegistry.get("users.email-filter.lookups").tag("result", "negative").counter().count());
+    }
+
+    @Test
+    void mightBeRegistered_ignoresCaseAndSurroundingSpaces() {
+        // Arrange
+        registeredEmails.load(1, () -> Stream.of("Alice@Example.com"));
+
+        // Act & Assert
+        assertTrue(registeredEmails.mightBeRegistered(" alice@example.COM "));
+    }
+
+    @Test
+    void add_announcesEmailAndAddsItLocally() {
+        // Arrange
+        registeredEmails.load(0, Stream::empty);
+
+        // Act
+        registeredEmails.add("new@example.com");
+
+        // Assert
+        assertTrue(registeredEmails.mightBeRegistered("new@example.com"));
+        verify(redisTemplate).convertAndSend(RegisteredEmails.CHANNEL, "new@example.com");
+    }
+
+    @Test
+    void add_whenRedisIsDown_stillAddsLocally() {
+        // Arrange
+        registeredEmails.load(0, Stream::empty);
+        doThrow(new RedisConnectionFailureException("down")).when(redisTemplate).convertAndSend(anyString(), anyString());
+
+        // Act
+        registeredEmails.add("new@example.com");
+
+        // Assert
+        assertTrue(registeredEmails.mightBeRegistered("new@example.com"));
+    }
+
+    @Test
+    void add_duringLoad_survivesTheSwap() {
+        // Act
+        registeredEmails.load(1, () -> {
+            registeredEmails.add("concurrent@example.com");
+            return Stream.of("stored@example.com");
+        });
+
+        // Assert
+        assertTrue(registeredEmails.mightBeRegistered("stored@example.com"));
+        assertTrue(registeredEmails.mightBeRegistered("concurrent@example.com"));
+    }
+
+    @Test
+    void onMessage_addsEmailFromOtherNode() {
+        // Arrange
+        registeredEmails.load(0, Stream::empty);
+
+        // Act
+        registeredEmails.onMessage(new DefaultMessage(
+                RegisteredEmails.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "remote@example.com".getBytes(StandardCharsets.UTF_8)), null);
+
+        // Assert
+        assertTrue(registeredEmails.mightBeRegistered("remote@example.com"));
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void markUnsynced_fallsBackToLookups() {
+        // Arrange
+        registeredEmails.load(0, Stream::empty);
+
+        // Act
+        registeredEmails.markUnsynced();
+
+        // Assert
+        assertTrue(registeredEmails.mightBeRegistered("unknown@example.com"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.medici.user_hub.service;
+
+import com.medici.user_hub.handler.DatabaseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight<String, String> singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), meterRegistry);
+    }
+
+    @Test
+    void run_concurrentCallsForSameKey_shareOneExecution() throws Exception {
+        // Arrange
+        int callers = 8;
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<String>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.run("key", () -> {
+                    executions.incrementAndGet();
+                    awaitQuietly(release);
+                    return "value";
+                })));
+            }
+            while (coalesced() < callers - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            // Assert
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1, meterRegistry.get("test.calls").tag("result", "executed").counter().count());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void run_afterCompletion_executesAgain() {
+        // Arrange
+        AtomicInteger executions = new AtomicInteger();
+
+        // Act
+        singleFlight.run("key", () -> "v" + executions.incrementAndGet());
+        String second = singleFlight.run("key", () -> "v" + executions.incrementAndGet());
+
+        // Assert
+        assertEquals("v2", second);
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void run_failingCall_rethrowsToEveryCaller() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.run("key", () -> {
+                awaitQuietly(release);
+                throw new IllegalStateException("query failed");
+            }));
+            while (singleFlight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+            Future<String> follower = executor.submit(() -> singleFlight.run("key", () -> "unused"));
+            while (coalesced() < 1) {
+                Thread.sleep(1);
+            }
+
+            // Act
+            release.countDown();
+
+            // Assert
+            Exception leaderFailure = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerFailure = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, leaderFailure.getCause());
+            assertInstanceOf(IllegalStateException.class, followerFailure.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void run_waitExceedsTimeout_throwsDatabaseException() throws Exception {
+        // Arrange
+        singleFlight = new SingleFlight<>("test", Duration.ofMillis(20), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.submit(() -> singleFlight.run("key", () -> {
+                awaitQuietly(release);
+                return "value";
+            }));
+            while (singleFlight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+
+            // Act & Assert
+            assertThrows(DatabaseException.class, () -> singleFlight.run("key", () -> "unused"));
+            assertEquals(1, meterRegistry.get("test.calls").tag("result", "timed-out").counter().count());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private double coalesced() {
+        return meterRegistry.get("test.calls").tag("result", "coalesced").counter().count();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
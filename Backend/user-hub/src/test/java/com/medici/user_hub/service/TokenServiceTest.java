@@ -1,15 +1,27 @@
 package com.medici.user_hub.service;
 
 import com.medici.user_hub.handler.TokenServiceException;
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenIds;
+import com.medici.user_hub.security.TokenVersionCache;
+import com.medici.user_hub.security.VerifiedToken;
+import com.medici.user_hub.security.VerifiedTokenCache;
+import com.medici.user_hub.store.TokenStore;
+import com.medici.user_hub.store.TokenStore.RefreshTokenRotation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -18,158 +30,384 @@ import static org.mockito.Mockito.*;
 class TokenServiceTest {
 
     @Mock
-    private RedisTemplate<String, String> redisTemplate;
+    private TokenStore tokenStore;
 
     @Mock
-    private ValueOperations<String, String> valueOperations;
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Mock
+    private RevokedTokenCache revokedTokenCache;
+
+    @Mock
+    private TokenVersionCache tokenVersionCache;
 
     @InjectMocks
     private TokenService tokenService;
 
+    private static final String TOKEN_ID = "tokenId";
+    private static final long EXPIRES_AT = System.currentTimeMillis() + 600000L;
+    private static final long GRACE_MS = 10000L;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        ReflectionTestUtils.setField(tokenService, "refreshRotationGraceMs", GRACE_MS);
+        // Until the near-cache has loaded, every lookup may be a hit and goes to the store
+        when(revokedTokenCache.mightBeRevoked(anyString())).thenReturn(true);
     }
 
     @Test
     void blacklistToken_success() {
+        // Act
+        tokenService.blacklistToken(TOKEN_ID, EXPIRES_AT);
+
+        // Assert
+        verify(tokenStore).revoke(TOKEN_ID, EXPIRES_AT);
+        verify(revokedTokenCache).add(TOKEN_ID, EXPIRES_AT);
+        verify(verifiedTokenCache).invalidate(TOKEN_ID);
+    }
+
+    @Test
+    void blacklistToken_whenStoreThrowsException_throwsTokenServiceException() {
         // Arrange
-        String token = "testToken";
-        long expirationMs = 1000L;
+        doThrow(new RuntimeException("Redis error")).when(tokenStore).revoke(anyString(), anyLong());
 
-        doNothing().when(valueOperations)
-                .set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () ->
+                tokenService.blacklistToken(TOKEN_ID, EXPIRES_AT));
+        verify(revokedTokenCache, never()).add(anyString(), anyLong());
+    }
+
+    @Test
+    void blacklistTokens_revokesBatchAndUpdatesLocalCaches() {
+        // Arrange
+        Map<String, Long> revocations = Map.of("token1", EXPIRES_AT, "token2", EXPIRES_AT + 1000L);
 
         // Act
-        tokenService.blacklistToken(token, expirationMs);
+        int revoked = tokenService.blacklistTokens(revocations);
 
         // Assert
-        verify(valueOperations).set(
-                eq("blacklisted:testToken"),
-                eq("BLACKLISTED"),
-                eq(expirationMs),
-                eq(TimeUnit.MILLISECONDS)
-        );
+        assertEquals(2, revoked);
+        verify(tokenStore).revokeAll(revocations);
+        verify(tokenStore, never()).revoke(anyString(), anyLong());
+        verify(revokedTokenCache).add("token1", EXPIRES_AT);
+        verify(revokedTokenCache).add("token2", EXPIRES_AT + 1000L);
+        verify(verifiedTokenCache).invalidate("token1");
+        verify(verifiedTokenCache).invalidate("token2");
     }
 
     @Test
-    void blacklistToken_whenRedisThrowsException_throwsTokenServiceException() {
+    void blacklistTokens_whenStoreFails_throwsTokenServiceException() {
         // Arrange
-        String token = "testToken";
-        doThrow(new RuntimeException("Redis error"))
-                .when(valueOperations)
-                .set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        doThrow(new RuntimeException("Redis error")).when(tokenStore).revokeAll(anyMap());
 
         // Act & Assert
-        assertThrows(TokenServiceException.class, () ->
-                tokenService.blacklistToken(token, 1000L));
+        assertThrows(TokenServiceException.class, () -> tokenService.blacklistTokens(Map.of(TOKEN_ID, EXPIRES_AT)));
+        verify(revokedTokenCache, never()).add(anyString(), anyLong());
+    }
+
+    @Test
+    void blacklistTokensAsync_completesWithCount() {
+        // Act
+        int revoked = tokenService.blacklistTokensAsync(Map.of(TOKEN_ID, EXPIRES_AT)).join();
+
+        // Assert
+        assertEquals(1, revoked);
+        verify(tokenStore).revokeAll(Map.of(TOKEN_ID, EXPIRES_AT));
     }
 
     @Test
-    void isTokenBlacklisted_whenTokenIsBlacklisted_returnsTrue() {
+    void shutdown_waitsForSubmittedRevocations() {
         // Arrange
-        String token = "blacklistedToken";
-        when(redisTemplate.hasKey("blacklisted:" + token)).thenReturn(true);
+        ReflectionTestUtils.setField(tokenService, "asyncShutdownTimeoutMs", 5000L);
+        CompletableFuture<Void> revocation = tokenService.blacklistTokenAsync(TOKEN_ID, EXPIRES_AT);
 
         // Act
-        boolean result = tokenService.isTokenBlacklisted(token);
+        tokenService.shutdown();
+
+        // Assert
+        assertTrue(revocation.isDone());
+        verify(tokenStore).revoke(TOKEN_ID, EXPIRES_AT);
+        assertThrows(RejectedExecutionException.class, () -> tokenService.blacklistTokenAsync(TOKEN_ID, EXPIRES_AT));
+    }
+
+    @Test
+    void blacklistTokenAsync_whenStoreFails_completesExceptionally() {
+        // Arrange
+        doThrow(new RuntimeException("Redis error")).when(tokenStore).revoke(anyString(), anyLong());
+
+        // Act & Assert
+        CompletionException exception = assertThrows(CompletionException.class, () ->
+                tokenService.blacklistTokenAsync(TOKEN_ID, EXPIRES_AT).join());
+        assertInstanceOf(TokenServiceException.class, exception.getCause());
+    }
+
+    @Test
+    void isTokenIdBlacklistedAsync_returnsStoreAnswer() {
+        // Arrange
+        when(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT)).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(tokenService.isTokenIdBlacklistedAsync(TOKEN_ID, EXPIRES_AT).join());
+    }
+
+    @Test
+    void revokeAllTokensAsync_completesWithNewVersion() {
+        // Arrange
+        when(tokenStore.incrementTokenVersion("user1")).thenReturn(3L);
+
+        // Act & Assert
+        assertEquals(3L, tokenService.revokeAllTokensAsync("user1").join());
+        verify(tokenVersionCache).update("user1", 3L);
+    }
+
+    @Test
+    void isTokenIdBlacklisted_whenTokenIsBlacklisted_returnsTrue() {
+        // Arrange
+        when(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT)).thenReturn(true);
+
+        // Act
+        boolean result = tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT);
 
         // Assert
         assertTrue(result);
-        verify(redisTemplate).hasKey("blacklisted:" + token);
     }
 
     @Test
-    void isTokenBlacklisted_whenTokenIsNotBlacklisted_returnsFalse() {
+    void isTokenIdBlacklisted_whenTokenIsNotBlacklisted_returnsFalse() {
         // Arrange
-        String token = "notBlacklistedToken";
-        when(redisTemplate.hasKey("blacklisted:" + token)).thenReturn(false);
+        when(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT)).thenReturn(false);
 
         // Act
-        boolean result = tokenService.isTokenBlacklisted(token);
+        boolean result = tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT);
 
         // Assert
         assertFalse(result);
-        verify(redisTemplate).hasKey("blacklisted:" + token);
+        verify(tokenStore).isRevoked(TOKEN_ID, EXPIRES_AT);
     }
 
     @Test
-    void storeRefreshToken_success() {
+    void isTokenIdBlacklisted_whenFilterIsNegative_doesNotCallStore() {
         // Arrange
-        String token = "refreshToken";
-        long expirationMs = 1000L;
+        when(revokedTokenCache.mightBeRevoked(TOKEN_ID)).thenReturn(false);
 
-        doNothing().when(valueOperations)
-                .set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        // Act
+        boolean result = tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT);
+
+        // Assert
+        assertFalse(result);
+        verify(revokedTokenCache, never()).contains(anyString());
+        verifyNoInteractions(tokenStore);
+    }
+
+    @Test
+    void isTokenIdBlacklisted_whenPossibleHitAndCacheIsExact_answersFromCache() {
+        // Arrange
+        when(revokedTokenCache.isExact()).thenReturn(true);
+        when(revokedTokenCache.contains("revokedId")).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(tokenService.isTokenIdBlacklisted("revokedId", EXPIRES_AT));
+        assertFalse(tokenService.isTokenIdBlacklisted("otherId", EXPIRES_AT));
+        verify(revokedTokenCache, times(1)).recordFalsePositive();
+        verifyNoInteractions(tokenStore);
+    }
+
+    @Test
+    void isTokenIdBlacklisted_whenPossibleHitAndCacheIsNotExact_asksStore() {
+        // Arrange
+        when(revokedTokenCache.isSynced()).thenReturn(true);
+        when(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT)).thenReturn(false);
 
         // Act
-        tokenService.storeRefreshToken(token, expirationMs);
+        boolean result = tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT);
 
         // Assert
-        verify(valueOperations).set(
-                eq(token),
-                eq("REFRESH_TOKEN"),
-                eq(expirationMs),
-                eq(TimeUnit.MILLISECONDS)
-        );
+        assertFalse(result);
+        verify(revokedTokenCache).recordFalsePositive();
     }
 
     @Test
-    void isRefreshTokenValid_whenTokenIsValid_returnsTrue() {
+    void isTokenIdBlacklisted_whenNotSyncedAndStoreFails_throwsTokenServiceException() {
         // Arrange
-        String token = "validToken";
-        when(redisTemplate.hasKey(token)).thenReturn(true);
+        when(tokenStore.isRevoked(anyString(), anyLong())).thenThrow(new RuntimeException("Redis error"));
+
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () -> tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT));
+    }
+
+    @Test
+    void isTokenIdBlacklisted_afterSubscriptionLoss_asksStoreForMissedRevocation() {
+        // Arrange
+        RevokedTokenCache cache = new RevokedTokenCache(100, 1000, 0.001, 60000, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenService, "revokedTokenCache", cache);
+        cache.load(Map.of());
+        cache.onChannelUnsubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 0);
+        // The revocation message for TOKEN_ID is published while unsubscribed and never arrives
+        when(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT)).thenReturn(true);
+        cache.onChannelSubscribed(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8), 1);
 
         // Act
-        boolean result = tokenService.isRefreshTokenValid(token);
+        boolean result = tokenService.isTokenIdBlacklisted(TOKEN_ID, EXPIRES_AT);
 
         // Assert
         assertTrue(result);
-        verify(redisTemplate).hasKey(token);
+        verify(tokenStore).isRevoked(TOKEN_ID, EXPIRES_AT);
     }
 
     @Test
-    void revokeRefreshToken_success() {
+    void syncRevokedTokens_loadsStoreSnapshot() {
         // Arrange
-        String token = "tokenToRevoke";
-        when(redisTemplate.delete(token)).thenReturn(true);
+        Map<String, Long> revokedTokens = Map.of("a", EXPIRES_AT, "b", EXPIRES_AT);
+        when(revokedTokenCache.generation()).thenReturn(4L);
+        when(tokenStore.revokedTokens()).thenReturn(revokedTokens);
 
         // Act
-        tokenService.revokeRefreshToken(token);
+        tokenService.syncRevokedTokens();
 
         // Assert
-        verify(redisTemplate).delete(token);
+        verify(revokedTokenCache).load(revokedTokens, 4L);
     }
 
     @Test
-    void getTokenExpiration_whenTokenExists_returnsExpiration() {
+    void syncRevokedTokens_whenStoreFails_marksNearCacheUnsynced() {
+        // Arrange
+        when(tokenStore.revokedTokens()).thenThrow(new RuntimeException("Redis error"));
+
+        // Act
+        tokenService.syncRevokedTokens();
+
+        // Assert
+        verify(revokedTokenCache).markUnsynced();
+        verify(revokedTokenCache, never()).load(anyMap(), anyLong());
+    }
+
+    @Test
+    void getTokenVersion_onCacheMiss_readsStore() {
+        // Arrange
+        when(tokenVersionCache.get(eq("user1"), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Long>>getArgument(1).apply("user1"));
+        when(tokenStore.getTokenVersion("user1")).thenReturn(4L);
+
+        // Act & Assert
+        assertEquals(4L, tokenService.getTokenVersion("user1"));
+    }
+
+    @Test
+    void isTokenVersionCurrent_comparesWithCurrentVersion() {
+        // Arrange
+        when(tokenVersionCache.get(eq("user1"), any())).thenReturn(2L);
+        long now = System.currentTimeMillis();
+
+        // Act & Assert
+        assertFalse(tokenService.isTokenVersionCurrent(new VerifiedToken("a", "user1", VerifiedToken.ACCESS, "u", 1, null, null, now, now + 1000)));
+        assertTrue(tokenService.isTokenVersionCurrent(new VerifiedToken("b", "user1", VerifiedToken.ACCESS, "u", 2, null, null, now, now + 1000)));
+    }
+
+    @Test
+    void revokeAllTokens_bumpsVersionAndUpdatesLocalCache() {
         // Arrange
-        String token = "testToken";
-        long expectedExpiration = 5000L;
-        when(redisTemplate.getExpire(token, TimeUnit.MILLISECONDS))
-                .thenReturn(expectedExpiration);
+        when(tokenStore.incrementTokenVersion("user1")).thenReturn(5L);
 
         // Act
-        long result = tokenService.getTokenExpiration(token);
+        long version = tokenService.revokeAllTokens("user1");
 
         // Assert
-        assertEquals(expectedExpiration, result);
-        verify(redisTemplate).getExpire(token, TimeUnit.MILLISECONDS);
+        assertEquals(5L, version);
+        verify(tokenVersionCache).update("user1", 5L);
     }
 
     @Test
-    void getTokenExpiration_whenTokenDoesNotExist_returnsNegativeOne() {
+    void revokeAllTokens_whenStoreFails_throwsTokenServiceException() {
         // Arrange
-        String token = "nonExistentToken";
-        when(redisTemplate.getExpire(token, TimeUnit.MILLISECONDS))
-                .thenReturn(null);
+        when(tokenStore.incrementTokenVersion(anyString())).thenThrow(new RuntimeException("Redis error"));
 
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () -> tokenService.revokeAllTokens("user1"));
+        verify(tokenVersionCache, never()).update(anyString(), anyLong());
+    }
+
+    @Test
+    void startRefreshTokenFamily_whenStoreFails_throwsTokenServiceException() {
+        // Arrange
+        doThrow(new RuntimeException("Redis error")).when(tokenStore).startRefreshTokenFamily(anyString(), anyString(), anyLong());
+
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () -> tokenService.startRefreshTokenFamily("familyId", TOKEN_ID, 1000L));
+    }
+
+    @Test
+    void endRefreshTokenFamily_whenStoreFails_throwsTokenServiceException() {
+        // Arrange
+        doThrow(new RuntimeException("Redis error")).when(tokenStore).endRefreshTokenFamily(anyString());
+
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () -> tokenService.endRefreshTokenFamily("familyId"));
+    }
+
+    @Test
+    void rotateRefreshToken_passesGracePeriodToStore() {
+        // Arrange
+        when(tokenStore.rotateRefreshToken("familyId", TOKEN_ID, "newTokenId", 86400000L, GRACE_MS))
+                .thenReturn(RefreshTokenRotation.REUSED);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.REUSED, tokenService.rotateRefreshToken("familyId", TOKEN_ID, "newTokenId", 86400000L));
+    }
+
+    @Test
+    void rotateRefreshToken_whenStoreFails_throwsTokenServiceException() {
+        // Arrange
+        when(tokenStore.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong(), anyLong()))
+                .thenThrow(new RuntimeException("Redis error"));
+
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () ->
+                tokenService.rotateRefreshToken("familyId", TOKEN_ID, "newTokenId", 86400000L));
+    }
+
+    @Test
+    void storeRefreshToken_storesTokenId() {
         // Act
-        long result = tokenService.getTokenExpiration(token);
+        tokenService.storeRefreshToken("refreshToken", 1000L);
 
         // Assert
-        assertEquals(-1, result);
-        verify(redisTemplate).getExpire(token, TimeUnit.MILLISECONDS);
+        verify(tokenStore).storeRefreshToken(TokenIds.of("refreshToken"), 1000L);
+    }
+
+    @Test
+    void isRefreshTokenValid_whenTokenIsValid_returnsTrue() {
+        // Arrange
+        when(tokenStore.containsRefreshToken(TokenIds.of("validToken"))).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(tokenService.isRefreshTokenValid("validToken"));
+    }
+
+    @Test
+    void revokeRefreshToken_success() {
+        // Act
+        tokenService.revokeRefreshToken("refreshToken");
+
+        // Assert
+        verify(tokenStore).deleteRefreshToken(TokenIds.of("refreshToken"));
+    }
+
+    @Test
+    void getTokenExpiration_whenTokenExists_returnsExpiration() {
+        // Arrange
+        when(tokenStore.getRefreshTokenTtl(TokenIds.of("testToken"))).thenReturn(5000L);
+
+        // Act & Assert
+        assertEquals(5000L, tokenService.getTokenExpiration("testToken"));
+    }
+
+    @Test
+    void getTokenExpiration_whenStoreFails_throwsTokenServiceException() {
+        // Arrange
+        when(tokenStore.getRefreshTokenTtl(anyString())).thenThrow(new RuntimeException("Redis error"));
+
+        // Act & Assert
+        assertThrows(TokenServiceException.class, () -> tokenService.getTokenExpiration("testToken"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,245 @@
+package com.medici.user_hub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.medici.user_hub.model.Role;
+import com.medici.user_hub.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private UserCache cache;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserCache(redisTemplate, objectMapper, 100, 60000, 3600000, 5000, new SimpleMeterRegistry());
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        user = new User();
+        user.setId("1");
+        user.setEmail("user@example.com");
+        user.setUsername("user");
+        user.setRoles(Set.of(Role.USER));
+    }
+
+    @Test
+    void getById_onMissInBothTiers_loadsOnceAndFillsRedis() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        Optional<User> first = cache.getById("1", id -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        });
+        Optional<User> second = cache.getById("1", id -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        });
+
+        // Assert
+        assertEquals("user@example.com", first.orElseThrow().getEmail());
+        assertSame(first.get(), second.orElseThrow());
+        assertEquals(1, loads.get());
+        verify(valueOperations).setIfAbsent(eq("user:1"), anyString(), eq(Duration.ofMillis(3600000)));
+        verify(valueOperations).setIfAbsent("user-email:user@example.com", "1", Duration.ofMillis(3600000));
+    }
+
+    @Test
+    void getById_onRedisHit_skipsDatabase() throws Exception {
+        // Arrange
+        when(valueOperations.get("user:1")).thenReturn(objectMapper.writeValueAsString(user));
+
+        // Act
+        Optional<User> cached = cache.getById("1", id -> fail("MongoDB must not be read"));
+
+        // Assert
+        assertEquals("user@example.com", cached.orElseThrow().getEmail());
+        assertEquals(Set.of(Role.USER), cached.get().getRoles());
+    }
+
+    @Test
+    void getById_onTombstone_readsDatabase() {
+        // Arrange
+        when(valueOperations.get("user:1")).thenReturn("");
+
+        // Act
+        Optional<User> loaded = cache.getById("1", id -> Optional.empty());
+
+        // Assert
+        assertTrue(loaded.isEmpty());
+        verify(valueOperations, never()).setIfAbsent(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void getById_whenRedisIsDown_readsDatabase() {
+        // Arrange
+        when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+
+        // Act
+        Optional<User> loaded = cache.getById("1", id -> Optional.of(user));
+
+        // Assert
+        assertEquals("user@example.com", loaded.orElseThrow().getEmail());
+    }
+
+    @Test
+    void getByEmail_withMappingToUserWithOtherEmail_readsDatabase() throws Exception {
+        // Arrange
+        User renamed = new User();
+        renamed.setId("1");
+        renamed.setEmail("renamed@example.com");
+        when(valueOperations.get("user-email:user@example.com")).thenReturn("1");
+        when(valueOperations.get("user:1")).thenReturn(objectMapper.writeValueAsString(renamed));
+
+        // Act
+        Optional<User> loaded = cache.getByEmail("user@example.com", email -> Optional.empty());
+
+        // Assert
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void getByEmail_servesRepeatLookupsFromL1() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        cache.getByEmail("user@example.com", email -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        });
+        Optional<User> second = cache.getByEmail("user@example.com", email -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        });
+
+        // Assert
+        assertEquals("user@example.com", second.orElseThrow().getEmail());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void update_writesThroughDropsOldEmailAndNotifiesOtherNodes() {
+        // Arrange
+        cache.getById("1", id -> Optional.of(user));
+        User updated = new User();
+        updated.setId("1");
+        updated.setEmail("new@example.com");
+
+        // Act
+        cache.update(updated, "user@example.com");
+
+        // Assert
+        verify(valueOperations).set(eq("user:1"), anyString(), eq(Duration.ofMillis(3600000)));
+        verify(valueOperations).set("user-email:new@example.com", "1", Duration.ofMillis(3600000));
+        verify(redisTemplate).delete(List.of("user-email:user@example.com"));
+        verify(redisTemplate).convertAndSend(UserCache.CHANNEL, "1\nuser@example.com");
+        assertEquals("new@example.com", cache.getById("1", id -> Optional.of(updated)).orElseThrow().getEmail());
+    }
+
+    @Test
+    void evict_leavesTombstoneAndNotifiesOtherNodes() {
+        // Act
+        cache.evict("1", "user@example.com");
+
+        // Assert
+        verify(valueOperations).set("user:1", "", Duration.ofMillis(60000));
+        verify(redisTemplate).delete(List.of("user-email:user@example.com"));
+        verify(redisTemplate).convertAndSend(UserCache.CHANNEL, "1\nuser@example.com");
+    }
+
+    @Test
+    void onMessage_dropsLocalCopy() {
+        // Arrange
+        cache.getById("1", id -> Optional.of(user));
+        User updated = new User();
+        updated.setId("1");
+        updated.setUsername("renamed");
+
+        // Act
+        cache.onMessage(new DefaultMessage(UserCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                UserCache.message("1", "user@example.com").getBytes(StandardCharsets.UTF_8)), null);
+
+        // Assert
+        assertEquals("renamed", cache.getById("1", id -> Optional.of(updated)).orElseThrow().getUsername());
+    }
+
+    @Test
+    void update_writesUserToRedisWithoutHashes() throws Exception {
+        // Arrange
+        user.setPasswordHash("{bcrypt}password-hash");
+        user.setSecurityAnswerHash("{bcrypt}answer-hash");
+
+        // Act
+        cache.update(user);
+
+        // Assert
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations).set(eq("user:1"), json.capture(), eq(Duration.ofMillis(3600000)));
+        assertFalse(json.getValue().contains("passwordHash"));
+        assertFalse(json.getValue().contains("securityAnswerHash"));
+        assertEquals("user@example.com", objectMapper.readValue(json.getValue(), User.class).getEmail());
+    }
+
+    @Test
+    void getById_onMiss_cachesUserWithoutHashes() {
+        // Arrange
+        user.setPasswordHash("{bcrypt}password-hash");
+        user.setSecurityAnswerHash("{bcrypt}answer-hash");
+
+        // Act
+        User cached = cache.getById("1", id -> Optional.of(user)).orElseThrow();
+
+        // Assert
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations).setIfAbsent(eq("user:1"), json.capture(), eq(Duration.ofMillis(3600000)));
+        assertFalse(json.getValue().contains("Hash"));
+        assertNull(cached.getPasswordHash());
+        assertNull(cached.getSecurityAnswerHash());
+        assertEquals(Set.of(Role.USER), cached.getRoles());
+    }
+
+    @Test
+    void getById_onRedisEntryWithHashes_dropsThem() throws Exception {
+        // Arrange
+        user.setPasswordHash("{bcrypt}password-hash");
+        when(valueOperations.get("user:1")).thenReturn(objectMapper.writeValueAsString(user));
+
+        // Act
+        Optional<User> cached = cache.getById("1", id -> fail("MongoDB must not be read"));
+
+        // Assert
+        assertNull(cached.orElseThrow().getPasswordHash());
+    }
+}
@@ -7,23 +7,32 @@ import com.medici.user_hub.model.User;
 import com.medici.user_hub.model.Role;
 import com.medici.user_hub.repository.UserRepository;
 import com.medici.user_hub.security.CustomUserDetails;
+import com.medici.user_hub.security.PasswordEncoders;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,6 +41,18 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private TokenService tokenService;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private RegisteredEmails registeredEmails;
+
+    @Spy
+    private PasswordHasher passwordHasher = new PasswordHasher(PasswordEncoders.create(4), 1, 8, 1, new SimpleMeterRegistry());
+
     @InjectMocks
     private UserService userService;
 
@@ -49,21 +70,79 @@ public class UserServiceTest {
         testUser.setRoles(Collections.singleton(Role.USER));
         testUser.setCreatedAt(LocalDateTime.now());
         testUser.setUpdatedAt(LocalDateTime.now());
+
+        // Every lookup misses the cache and reads the repository
+        lenient().when(userCache.getById(anyString(), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Optional<User>>>getArgument(1).apply(invocation.getArgument(0)));
+        lenient().when(userCache.getByEmail(anyString(), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Optional<User>>>getArgument(1).apply(invocation.getArgument(0)));
+        lenient().when(registeredEmails.mightBeRegistered(anyString())).thenReturn(true);
     }
 
     @Test
     void shouldRegisterUserSuccessfully() {
         // Arrange
-        when(userRepository.existsByEmail(testUser.getEmail())).thenReturn(false);
-        when(userRepository.save(any(User.class))).thenReturn(testUser);
+        when(userRepository.insert(any(User.class))).thenReturn(testUser);
 
         // Act
         String result = userService.registerUser(testUser);
 
         // Assert
         assertThat(result).isEqualTo("User registered successfully");
-        verify(userRepository).existsByEmail(testUser.getEmail());
-        verify(userRepository).save(any(User.class));
+        verify(userRepository).insert(testUser);
+        verify(userRepository, never()).existsByEmail(anyString());
+        verify(userRepository, never()).save(any(User.class));
+        verify(registeredEmails).add(testUser.getEmail());
+    }
+
+    @Test
+    void shouldHashPasswordAndSecurityAnswerWhenRegistering() {
+        // Act
+        userService.registerUser(testUser);
+
+        // Assert
+        verify(passwordHasher, times(2)).encodeAsync(anyString());
+        assertThat(passwordHasher.matches("password123", testUser.getPasswordHash())).isTrue();
+        assertThat(passwordHasher.matches("securityAnswer", testUser.getSecurityAnswerHash())).isTrue();
+    }
+
+    @Test
+    void shouldRejectRegistrationWithEmailInUse() {
+        // Arrange
+        when(userRepository.insert(any(User.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.registerUser(testUser))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Email already in use");
+        verify(userRepository, never()).save(any(User.class));
+    }
+
+    @Test
+    void shouldNotLetRegistrationChooseUserId() {
+        // Act
+        userService.registerUser(testUser);
+
+        // Assert
+        assertThat(testUser.getId()).isNull();
+        verify(userRepository).insert(testUser);
+    }
+
+    @Test
+    void shouldRejectUpdateToEmailInUse() {
+        // Arrange
+        User updates = new User();
+        updates.setEmail("taken@example.com");
+        updates.setUsername("testUser");
+        updates.setPasswordHash("newPassword");
+        when(userRepository.findById("123")).thenReturn(Optional.of(testUser));
+        when(userRepository.save(any(User.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.updateUser("123", updates))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Email already in use");
+        verify(tokenService, never()).revokeAllTokens(any());
     }
 
     @Test
@@ -150,8 +229,7 @@ public class UserServiceTest {
     @Test
     void shouldHandleDatabaseExceptionWhenSaving() {
         // Arrange
-        when(userRepository.existsByEmail(testUser.getEmail())).thenReturn(false);
-        when(userRepository.save(any(User.class))).thenThrow(new RuntimeException("Database error"));
+        when(userRepository.insert(any(User.class))).thenThrow(new RuntimeException("Database error"));
 
         // Act & Assert
         assertThatThrownBy(() -> userService.registerUser(testUser))
@@ -174,7 +252,7 @@ public class UserServiceTest {
     void shouldValidatePasswordCorrectly() {
         // Arrange
         String rawPassword = "password123";
-        String encodedPassword = userService.getPasswordEncoder().encode(rawPassword);
+        String encodedPassword = passwordHasher.encode(rawPassword);
 
         // Act
         boolean result = userService.validatePassword(rawPassword, encodedPassword);
@@ -182,4 +260,342 @@ public class UserServiceTest {
         // Assert
         assertThat(result).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRevokeAllTokensAfterPasswordReset() {
+        // Arrange
+        testUser.setSecurityAnswerHash(passwordHasher.encode("securityAnswer"));
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+
+        // Act
+        boolean result = userService.verifySecurityAnswerAndResetPassword(testUser.getEmail(), "securityAnswer", "newPassword");
+
+        // Assert
+        assertThat(result).isTrue();
+        verify(userRepository).save(testUser);
+        verify(tokenService).revokeAllTokens(testUser.getId());
+    }
+
+    @Test
+    void shouldNotRevokeTokensWhenSecurityAnswerIsWrong() {
+        // Arrange
+        testUser.setSecurityAnswerHash(passwordHasher.encode("securityAnswer"));
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.verifySecurityAnswerAndResetPassword(testUser.getEmail(), "wrong", "newPassword"))
+                .isInstanceOf(ValidationException.class);
+        verify(tokenService, never()).revokeAllTokens(any());
+    }
+
+    @Test
+    void shouldRevokeAllTokensWhenUserIsUpdated() {
+        // Arrange
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        when(userRepository.save(any(User.class))).thenReturn(testUser);
+
+        // Act
+        userService.updateUser(testUser.getId(), testUser);
+
+        // Assert
+        verify(tokenService).revokeAllTokens(testUser.getId());
+    }
+
+    @Test
+    void shouldKeepTokensWhenOnlyUsernameChanges() {
+        // Arrange
+        User updates = new User();
+        updates.setEmail(testUser.getEmail());
+        updates.setUsername("renamed");
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        userService.updateUser(testUser.getId(), updates);
+
+        // Assert
+        verify(tokenService, never()).revokeAllTokens(any());
+    }
+
+    @Test
+    void shouldRevokeAllTokensWhenRolesChange() {
+        // Arrange
+        User updates = new User();
+        updates.setEmail(testUser.getEmail());
+        updates.setUsername(testUser.getUsername());
+        updates.setRoles(Set.of(Role.USER, Role.ADMIN));
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        userService.updateUser(testUser.getId(), updates);
+
+        // Assert
+        verify(tokenService).revokeAllTokens(testUser.getId());
+    }
+
+    @Test
+    void shouldRevokeAllTokensWhenUserIsDeleted() {
+        // Arrange
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+        // Act
+        userService.deleteUser(testUser.getId());
+
+        // Assert
+        verify(userRepository).delete(testUser);
+        verify(tokenService).revokeAllTokens(testUser.getId());
+    }
+
+    @Test
+    void shouldWriteUpdatedUserThroughCache() {
+        // Arrange
+        User updates = new User();
+        updates.setEmail("new@example.com");
+        updates.setUsername("renamed");
+        updates.setPasswordHash("newPassword");
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        when(userRepository.save(any(User.class))).thenReturn(testUser);
+
+        // Act
+        userService.updateUser(testUser.getId(), updates);
+
+        // Assert
+        verify(userCache).update(testUser, "test@example.com");
+        verify(userCache, never()).getById(anyString(), any());
+    }
+
+    @Test
+    void shouldEvictDeletedUserFromCache() {
+        // Arrange
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+        // Act
+        userService.deleteUser(testUser.getId());
+
+        // Assert
+        verify(userCache).evict(testUser.getId(), testUser.getEmail());
+    }
+
+    @Test
+    void shouldServeUserFromCache() {
+        // Arrange
+        when(userCache.getById(anyString(), any())).thenReturn(Optional.of(testUser));
+
+        // Act
+        User user = userService.getUserById(testUser.getId());
+
+        // Assert
+        assertThat(user).isSameAs(testUser);
+        verify(userRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void shouldLoadPrincipalWithoutSecrets() {
+        // Arrange
+        when(userRepository.findById("123")).thenReturn(Optional.of(testUser));
+
+        // Act
+        CustomUserDetails principal = userService.loadPrincipal("123", 4);
+
+        // Assert
+        assertThat(principal).isEqualTo(new CustomUserDetails("123", "testUser", Role.USER.bit(), 4));
+        assertThat(principal.getPassword()).isNull();
+    }
+
+    @Test
+    void shouldThrowUsernameNotFoundExceptionWhenLoadingMissingUser() {
+        // Arrange
+        when(userRepository.findById("missing")).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.loadUserByUsername("missing"))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    void shouldRehashOutdatedPasswordAtLogin() {
+        // Arrange
+        String legacyHash = new BCryptPasswordEncoder(4).encode("password123");
+        testUser.setPasswordHash(legacyHash);
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(testUser));
+        when(userRepository.replacePasswordHash(eq("123"), eq(legacyHash), startsWith("{bcrypt}"))).thenReturn(1L);
+        when(userRepository.findById("123")).thenReturn(Optional.of(testUser));
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "password123");
+
+        // Assert
+        assertThat(result).isTrue();
+        assertThat(testUser.getPasswordHash()).isEqualTo(legacyHash);
+        verify(userRepository).replacePasswordHash(eq("123"), eq(legacyHash), startsWith("{bcrypt}"));
+        verify(userCache).update(testUser);
+    }
+
+    @Test
+    void shouldNotRehashCurrentPasswordAtLogin() {
+        // Arrange
+        testUser.setPasswordHash(passwordHasher.encode("password123"));
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(testUser));
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "password123");
+
+        // Assert
+        assertThat(result).isTrue();
+        verify(userRepository, never()).replacePasswordHash(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void shouldNotRehashWrongPasswordAtLogin() {
+        // Arrange
+        testUser.setPasswordHash(new BCryptPasswordEncoder(4).encode("password123"));
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(testUser));
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "wrong");
+
+        // Assert
+        assertThat(result).isFalse();
+        verify(userRepository, never()).replacePasswordHash(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void shouldAcceptLoginWhenRehashFails() {
+        // Arrange
+        testUser.setPasswordHash(new BCryptPasswordEncoder(4).encode("password123"));
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(testUser));
+        when(userRepository.replacePasswordHash(anyString(), anyString(), anyString()))
+                .thenThrow(new RuntimeException("MongoDB unavailable"));
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "password123");
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    void shouldRejectUnregisteredEmailWithoutLookup() {
+        // Arrange
+        when(registeredEmails.mightBeRegistered("unknown@example.com")).thenReturn(false);
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.getSecurityQuestionByEmail("unknown@example.com"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verifyNoInteractions(userCache);
+        verify(userRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    void shouldCheckPasswordAgainstDatabaseHashOfCachedUser() {
+        // Arrange
+        User credentials = new User();
+        credentials.setId("123");
+        credentials.setPasswordHash(passwordHasher.encode("password123"));
+        testUser.setPasswordHash(null);
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(credentials));
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "password123");
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    void shouldRejectLoginOfUserDeletedSinceCached() {
+        // Arrange
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.empty());
+
+        // Act
+        boolean result = userService.validatePassword(testUser, "password123");
+
+        // Assert
+        assertThat(result).isFalse();
+        verify(passwordHasher).simulateMatch("password123");
+    }
+
+    @Test
+    void shouldAuthenticateRegisteredUser() {
+        // Arrange
+        testUser.setPasswordHash(passwordHasher.encode("password123"));
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+        when(userRepository.findPasswordHashById("123")).thenReturn(Optional.of(testUser));
+
+        // Act
+        Optional<User> result = userService.authenticate(testUser.getEmail(), "password123");
+
+        // Assert
+        assertThat(result).contains(testUser);
+        verify(passwordHasher, never()).simulateMatch(anyString());
+    }
+
+    @Test
+    void shouldCheckPasswordOfUnknownEmailAtLogin() {
+        // Arrange
+        when(registeredEmails.mightBeRegistered("unknown@example.com")).thenReturn(false);
+
+        // Act
+        Optional<User> result = userService.authenticate("unknown@example.com", "password123");
+
+        // Assert
+        assertThat(result).isEmpty();
+        verify(passwordHasher).simulateMatch("password123");
+        verify(userRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    void shouldCheckPasswordOfEmailMissingFromDatabaseAtLogin() {
+        // Arrange
+        when(userRepository.findByEmail("deleted@example.com")).thenReturn(Optional.empty());
+
+        // Act
+        Optional<User> result = userService.authenticate("deleted@example.com", "password123");
+
+        // Assert
+        assertThat(result).isEmpty();
+        verify(passwordHasher).simulateMatch("password123");
+    }
+
+    @Test
+    void shouldCheckAnswerOfUnknownEmailAtPasswordReset() {
+        // Arrange
+        when(registeredEmails.mightBeRegistered("unknown@example.com")).thenReturn(false);
+
+        // Act & Assert
+        assertThatThrownBy(() -> userService.verifySecurityAnswerAndResetPassword("unknown@example.com", "answer", "newPassword"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verify(passwordHasher).simulateMatch("answer");
+        verify(userRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    void shouldAddChangedEmailToRegisteredEmails() {
+        // Arrange
+        User stored = new User();
+        stored.setId(testUser.getId());
+        stored.setEmail("old@example.com");
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(stored));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        userService.updateUser(testUser.getId(), testUser);
+
+        // Assert
+        verify(registeredEmails).add(testUser.getEmail());
+    }
+
+    @Test
+    void shouldMarkRegisteredEmailsUnsyncedWhenLoadFails() {
+        // Arrange
+        when(userRepository.count()).thenThrow(new RuntimeException("MongoDB unavailable"));
+
+        // Act
+        userService.syncRegisteredEmails();
+
+        // Assert
+        verify(registeredEmails).markUnsynced();
+        verify(registeredEmails, never()).load(anyLong(), any());
+    }
+}
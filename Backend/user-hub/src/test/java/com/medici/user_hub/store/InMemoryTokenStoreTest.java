@@ -0,0 +1,37 @@
+package com.medici.user_hub.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryTokenStoreTest extends TokenStoreContractTest {
+
+    private InMemoryTokenStore store;
+
+    @Override
+    protected TokenStore createStore() {
+        store = new InMemoryTokenStore(10, 64);
+        return store;
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void revokedTokens_omitsExpiredRevocations() throws InterruptedException {
+        // Arrange
+        store.revoke("shortLived", System.currentTimeMillis() + 20);
+        store.revoke("longLived", System.currentTimeMillis() + 60000);
+
+        // Act
+        Thread.sleep(100);
+
+        // Assert
+        assertFalse(store.revokedTokens().containsKey("shortLived"));
+        assertFalse(store.isRevoked("shortLived", 0));
+        assertTrue(store.revokedTokens().containsKey("longLived"));
+    }
+}
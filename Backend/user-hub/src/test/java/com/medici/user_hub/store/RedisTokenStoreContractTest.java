@@ -0,0 +1,43 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+// Runs the contract against a real Redis; skipped where Docker is not available
+@Testcontainers(disabledWithoutDocker = true)
+class RedisTokenStoreContractTest extends TokenStoreContractTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @Override
+    protected TokenStore createStore() {
+        RedisTokenStore store = new RedisTokenStore();
+        ReflectionTestUtils.setField(store, "redisTemplate", new StringRedisTemplate(connectionFactory));
+        ReflectionTestUtils.setField(store, "rotateRefreshTokenScript", new RedisConfig().rotateRefreshTokenScript());
+        ReflectionTestUtils.setField(store, "revocationBucketMs", 3600000L);
+        return store;
+    }
+}
@@ -0,0 +1,222 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.security.RevokedTokenCache;
+import com.medici.user_hub.security.TokenVersionCache;
+import com.medici.user_hub.store.TokenStore.RefreshTokenRotation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisSetCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RedisTokenStoreTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private RedisScript<Long> rotateRefreshTokenScript;
+
+    @Mock
+    private RedisConnection connection;
+
+    @InjectMocks
+    private RedisTokenStore tokenStore;
+
+    private static final long BUCKET_MS = 3600000L;
+    private static final String TOKEN_ID = "tokenId";
+    private static final long EXPIRES_AT = System.currentTimeMillis() + 600000L;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(tokenStore, "revocationBucketMs", BUCKET_MS);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            return List.of();
+        });
+    }
+
+    @Test
+    void revoke_addsToExpiryBucketAndNotifiesOtherNodesInOneRoundTrip() {
+        // Arrange
+        RedisSetCommands setCommands = mock(RedisSetCommands.class);
+        RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+        when(connection.setCommands()).thenReturn(setCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+
+        // Act
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+
+        // Assert
+        byte[] bucketKey = ("revoked:" + EXPIRES_AT / BUCKET_MS).getBytes(StandardCharsets.UTF_8);
+        verify(setCommands).sAdd(bucketKey, TOKEN_ID.getBytes(StandardCharsets.UTF_8));
+        verify(keyCommands).pExpireAt(bucketKey, (EXPIRES_AT / BUCKET_MS + 1) * BUCKET_MS);
+        verify(connection).publish(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                RevokedTokenCache.message(TOKEN_ID, EXPIRES_AT).getBytes(StandardCharsets.UTF_8));
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void revokeAll_pipelinesInBatchesAndArmsEachBucketOncePerBatch() {
+        // Arrange
+        RedisSetCommands setCommands = mock(RedisSetCommands.class);
+        RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+        when(connection.setCommands()).thenReturn(setCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        Map<String, Long> revocations = new HashMap<>();
+        for (int i = 0; i < 1500; i++) {
+            revocations.put("token" + i, EXPIRES_AT);
+        }
+
+        // Act
+        tokenStore.revokeAll(revocations);
+
+        // Assert
+        byte[] bucketKey = ("revoked:" + EXPIRES_AT / BUCKET_MS).getBytes(StandardCharsets.UTF_8);
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        verify(setCommands, times(1500)).sAdd(eq(bucketKey), any(byte[].class));
+        verify(keyCommands, times(2)).pExpireAt(bucketKey, (EXPIRES_AT / BUCKET_MS + 1) * BUCKET_MS);
+        verify(connection, times(1500)).publish(eq(RevokedTokenCache.CHANNEL.getBytes(StandardCharsets.UTF_8)), any(byte[].class));
+    }
+
+    @Test
+    void isRevoked_looksInExpiryBucket() {
+        // Arrange
+        when(setOperations.isMember("revoked:" + EXPIRES_AT / BUCKET_MS, TOKEN_ID)).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT));
+        assertFalse(tokenStore.isRevoked("otherId", EXPIRES_AT));
+    }
+
+    @Test
+    void revokedTokens_readsEveryBucketMember() {
+        // Arrange
+        long bucket = EXPIRES_AT / BUCKET_MS;
+        Cursor<String> cursor = mock(Cursor.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(0).accept("revoked:" + bucket);
+            return null;
+        }).when(cursor).forEachRemaining(any());
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(Set.of("a", "b")));
+
+        // Act
+        Map<String, Long> revokedTokens = tokenStore.revokedTokens();
+
+        // Assert
+        long bucketEnd = (bucket + 1) * BUCKET_MS;
+        assertEquals(Map.of("a", bucketEnd, "b", bucketEnd), revokedTokens);
+        verify(cursor).close();
+    }
+
+    @Test
+    void getTokenVersion_readsVersionKey() {
+        // Arrange
+        when(valueOperations.get("token-version:user1")).thenReturn("4");
+
+        // Act & Assert
+        assertEquals(4L, tokenStore.getTokenVersion("user1"));
+        assertEquals(0L, tokenStore.getTokenVersion("user2"));
+    }
+
+    @Test
+    void incrementTokenVersion_notifiesOtherNodes() {
+        // Arrange
+        when(valueOperations.increment("token-version:user1")).thenReturn(5L);
+
+        // Act
+        long version = tokenStore.incrementTokenVersion("user1");
+
+        // Assert
+        assertEquals(5L, version);
+        verify(redisTemplate).convertAndSend(TokenVersionCache.CHANNEL, TokenVersionCache.message("user1", 5L));
+    }
+
+    @Test
+    void startRefreshTokenFamily_storesTokenWithExpiryInOneRoundTrip() {
+        // Arrange
+        RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+        RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+        when(connection.hashCommands()).thenReturn(hashCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+
+        // Act
+        tokenStore.startRefreshTokenFamily("familyId", TOKEN_ID, 86400000L);
+
+        // Assert
+        byte[] familyKey = "refresh-family:familyId".getBytes(StandardCharsets.UTF_8);
+        verify(hashCommands).hSet(familyKey, "current".getBytes(StandardCharsets.UTF_8), TOKEN_ID.getBytes(StandardCharsets.UTF_8));
+        verify(keyCommands).pExpire(familyKey, 86400000L);
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void rotateRefreshToken_mapsScriptResults() {
+        // Arrange
+        when(redisTemplate.execute(eq(rotateRefreshTokenScript), eq(List.of("refresh-family:familyId")), eq(TOKEN_ID),
+                eq("newTokenId"), eq("86400000"), anyString(), eq("10000")))
+                .thenReturn(1L, 2L, -1L, 0L);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.ROTATED, rotate());
+        assertEquals(RefreshTokenRotation.ALREADY_ROTATED, rotate());
+        assertEquals(RefreshTokenRotation.REUSED, rotate());
+        assertEquals(RefreshTokenRotation.INVALID, rotate());
+    }
+
+    @Test
+    void storeRefreshToken_setsKeyWithExpiration() {
+        // Act
+        tokenStore.storeRefreshToken(TOKEN_ID, 1000L);
+
+        // Assert
+        verify(valueOperations).set("refresh:" + TOKEN_ID, "1", 1000L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void getRefreshTokenTtl_whenRedisReturnsNothing_returnsNegativeOne() {
+        // Arrange
+        when(redisTemplate.getExpire("refresh:" + TOKEN_ID, TimeUnit.MILLISECONDS)).thenReturn(null);
+
+        // Act & Assert
+        assertEquals(-1, tokenStore.getRefreshTokenTtl(TOKEN_ID));
+    }
+
+    private RefreshTokenRotation rotate() {
+        return tokenStore.rotateRefreshToken("familyId", TOKEN_ID, "newTokenId", 86400000L, 10000L);
+    }
+}
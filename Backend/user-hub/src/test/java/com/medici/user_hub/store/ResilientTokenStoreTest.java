@@ -0,0 +1,197 @@
+package com.medici.user_hub.store;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResilientTokenStoreTest {
+
+    @Mock
+    private RedisTokenStore delegate;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private ResilientTokenStore tokenStore;
+
+    private static final String TOKEN_ID = "tokenId";
+    private static final long EXPIRES_AT = System.currentTimeMillis() + 600000L;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(10)
+                .minimumNumberOfCalls(10)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .build());
+        RetryRegistry retryRegistry = RetryRegistry.of(RetryConfig.custom()
+                .maxAttempts(2)
+                .waitDuration(Duration.ofMillis(1))
+                .build());
+        tokenStore = new ResilientTokenStore(delegate, circuitBreakerRegistry, retryRegistry, 2, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void revoke_whenRedisIsUp_writesToRedis() {
+        // Act
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+
+        // Assert
+        verify(delegate).revoke(TOKEN_ID, EXPIRES_AT);
+        assertEquals(0, tokenStore.pendingRevocations());
+    }
+
+    @Test
+    void revoke_whenRedisIsDown_keepsRevocationLocally() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+
+        // Act
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+
+        // Assert
+        assertEquals(1, tokenStore.pendingRevocations());
+        assertTrue(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT));
+        verify(delegate, never()).isRevoked(anyString(), anyLong());
+    }
+
+    @Test
+    void revoke_whenRedisIsDownAndBacklogIsFull_throws() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+        tokenStore.revoke("first", EXPIRES_AT);
+        tokenStore.revoke("second", EXPIRES_AT);
+
+        // Act & Assert
+        assertThrows(RedisConnectionFailureException.class, () -> tokenStore.revoke("third", EXPIRES_AT));
+        assertEquals(2, tokenStore.pendingRevocations());
+    }
+
+    @Test
+    void revokedTokens_includesPendingRevocations() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+        when(delegate.revokedTokens()).thenReturn(Map.of("other", EXPIRES_AT));
+
+        // Act & Assert
+        assertEquals(Map.of("other", EXPIRES_AT, TOKEN_ID, EXPIRES_AT), tokenStore.revokedTokens());
+    }
+
+    @Test
+    void getTokenVersion_afterTimeout_retriesOnce() {
+        // Arrange
+        when(delegate.getTokenVersion("user1"))
+                .thenThrow(new QueryTimeoutException("Redis timeout"))
+                .thenReturn(3L);
+
+        // Act & Assert
+        assertEquals(3L, tokenStore.getTokenVersion("user1"));
+        verify(delegate, times(2)).getTokenVersion("user1");
+    }
+
+    @Test
+    void rotateRefreshToken_afterTimeout_isNotRetried() {
+        // Arrange
+        when(delegate.rotateRefreshToken(anyString(), anyString(), anyString(), anyLong(), anyLong()))
+                .thenThrow(new QueryTimeoutException("Redis timeout"));
+
+        // Act & Assert
+        assertThrows(QueryTimeoutException.class, () ->
+                tokenStore.rotateRefreshToken("familyId", TOKEN_ID, "newTokenId", 1000L, 1000L));
+        verify(delegate, times(1)).rotateRefreshToken(anyString(), anyString(), anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void calls_whenCircuitIsOpen_failWithoutReachingRedis() {
+        // Arrange
+        circuitBreakerRegistry.circuitBreaker("tokenStore").transitionToOpenState();
+
+        // Act & Assert
+        assertThrows(CallNotPermittedException.class, () -> tokenStore.getTokenVersion("user1"));
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void replayPendingRevocations_whenRedisIsBack_writesBacklogInOneBatch() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+        tokenStore.revoke("otherId", EXPIRES_AT);
+
+        // Act
+        tokenStore.replayPendingRevocations();
+
+        // Assert
+        verify(delegate).revokeAll(Map.of(TOKEN_ID, EXPIRES_AT, "otherId", EXPIRES_AT));
+        assertEquals(0, tokenStore.pendingRevocations());
+    }
+
+    @Test
+    void replayPendingRevocations_whenCircuitIsOpen_keepsBacklog() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+        tokenStore.revoke(TOKEN_ID, EXPIRES_AT);
+        circuitBreakerRegistry.circuitBreaker("tokenStore").transitionToOpenState();
+
+        // Act
+        tokenStore.replayPendingRevocations();
+
+        // Assert
+        verify(delegate, never()).revokeAll(anyMap());
+        assertEquals(1, tokenStore.pendingRevocations());
+    }
+
+    @Test
+    void revokeAll_whenRedisIsDown_keepsBatchLocally() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revokeAll(anyMap());
+
+        // Act
+        tokenStore.revokeAll(Map.of(TOKEN_ID, EXPIRES_AT));
+
+        // Assert
+        assertEquals(1, tokenStore.pendingRevocations());
+        assertTrue(tokenStore.isRevoked(TOKEN_ID, EXPIRES_AT));
+    }
+
+    @Test
+    void revokeAll_whenBatchDoesNotFitBacklog_throws() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revokeAll(anyMap());
+
+        // Act & Assert
+        assertThrows(RedisConnectionFailureException.class, () ->
+                tokenStore.revokeAll(Map.of("a", EXPIRES_AT, "b", EXPIRES_AT, "c", EXPIRES_AT)));
+        assertEquals(0, tokenStore.pendingRevocations());
+    }
+
+    @Test
+    void replayPendingRevocations_dropsExpiredTokens() {
+        // Arrange
+        doThrow(new RedisConnectionFailureException("Redis down")).when(delegate).revoke(anyString(), anyLong());
+        tokenStore.revoke(TOKEN_ID, System.currentTimeMillis() - 1);
+
+        // Act
+        tokenStore.replayPendingRevocations();
+
+        // Assert
+        assertEquals(0, tokenStore.pendingRevocations());
+    }
+}
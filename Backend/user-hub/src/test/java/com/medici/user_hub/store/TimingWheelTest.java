@@ -0,0 +1,72 @@
+package com.medici.user_hub.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void advance_firesTaskOnceItIsDue() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        wheel.schedule("task", START + 35);
+
+        // Act & Assert
+        assertTrue(wheel.advance(START + 30).isEmpty());
+        assertEquals(List.of("task"), wheel.advance(START + 40));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_firesTasksBeyondLowestWheelAfterCascading() {
+        // Arrange
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 4, START);
+        List<Long> dueTimes = List.of(START + 3, START + 4, START + 17, START + 63, START + 64, START + 300);
+        dueTimes.forEach(due -> wheel.schedule(due, due));
+
+        // Act
+        List<Long> fired = new ArrayList<>();
+        for (long now = START + 1; now <= START + 300; now++) {
+            for (Long due : wheel.advance(now)) {
+                // Assert: never early, never late
+                assertEquals(due.longValue(), now);
+                fired.add(due);
+            }
+        }
+
+        // Assert
+        assertEquals(dueTimes, fired);
+    }
+
+    @Test
+    void advance_afterLongPause_firesEverythingDue() {
+        // Arrange
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 8, START);
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, START + i * 100L);
+        }
+
+        // Act
+        List<Integer> fired = wheel.advance(START + 5_000);
+
+        // Assert
+        assertEquals(50, fired.size());
+        assertEquals(50, wheel.size());
+    }
+
+    @Test
+    void schedule_taskAlreadyDue_firesOnNextTick() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        wheel.schedule("late", START - 1_000);
+
+        // Act & Assert
+        assertEquals(List.of("late"), wheel.advance(START + 10));
+    }
+}
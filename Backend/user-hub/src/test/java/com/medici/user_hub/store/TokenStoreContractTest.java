@@ -0,0 +1,214 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.store.TokenStore.RefreshTokenRotation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every {@link TokenStore} backend must share. Each backend's test extends this class.
+ */
+abstract class TokenStoreContractTest {
+
+    private static final long TTL_MS = 60000L;
+    private static final long GRACE_MS = 10000L;
+
+    private TokenStore store;
+
+    // Returns the store under test; state may be shared between tests, so every test uses fresh IDs
+    protected abstract TokenStore createStore();
+
+    @BeforeEach
+    void setUpStore() {
+        store = createStore();
+    }
+
+    @Test
+    void revoke_makesTokenRevoked() {
+        // Arrange
+        String tokenId = uniqueId();
+        long expiresAt = System.currentTimeMillis() + TTL_MS;
+
+        // Act
+        store.revoke(tokenId, expiresAt);
+
+        // Assert
+        assertTrue(store.isRevoked(tokenId, expiresAt));
+        assertFalse(store.isRevoked(uniqueId(), expiresAt));
+    }
+
+    @Test
+    void revokedTokens_containsRevokedTokenUntilAtLeastItsExpiry() {
+        // Arrange
+        String tokenId = uniqueId();
+        long expiresAt = System.currentTimeMillis() + TTL_MS;
+        store.revoke(tokenId, expiresAt);
+
+        // Act
+        Long keptUntil = store.revokedTokens().get(tokenId);
+
+        // Assert
+        assertNotNull(keptUntil);
+        assertTrue(keptUntil >= expiresAt);
+    }
+
+    @Test
+    void tokenVersion_startsAtZeroAndIncrements() {
+        // Arrange
+        String userId = uniqueId();
+
+        // Act & Assert
+        assertEquals(0L, store.getTokenVersion(userId));
+        assertEquals(1L, store.incrementTokenVersion(userId));
+        assertEquals(2L, store.incrementTokenVersion(userId));
+        assertEquals(2L, store.getTokenVersion(userId));
+    }
+
+    @Test
+    void rotateRefreshToken_replacesCurrentToken() {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", TTL_MS);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.ROTATED, store.rotateRefreshToken(familyId, "first", "second", TTL_MS, GRACE_MS));
+        assertEquals(RefreshTokenRotation.ROTATED, store.rotateRefreshToken(familyId, "second", "third", TTL_MS, GRACE_MS));
+    }
+
+    @Test
+    void rotateRefreshToken_withJustReplacedToken_reportsAlreadyRotatedAndKeepsFamily() {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", TTL_MS);
+        store.rotateRefreshToken(familyId, "first", "second", TTL_MS, GRACE_MS);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.ALREADY_ROTATED, store.rotateRefreshToken(familyId, "first", "other", TTL_MS, GRACE_MS));
+        assertEquals(RefreshTokenRotation.ROTATED, store.rotateRefreshToken(familyId, "second", "third", TTL_MS, GRACE_MS));
+    }
+
+    @Test
+    void rotateRefreshToken_withReusedToken_revokesFamily() throws InterruptedException {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", TTL_MS);
+        store.rotateRefreshToken(familyId, "first", "second", TTL_MS, 0);
+        Thread.sleep(5);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.REUSED, store.rotateRefreshToken(familyId, "first", "other", TTL_MS, 0));
+        assertEquals(RefreshTokenRotation.INVALID, store.rotateRefreshToken(familyId, "second", "third", TTL_MS, 0));
+    }
+
+    @Test
+    void endRefreshTokenFamily_makesCurrentTokenInvalid() {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", TTL_MS);
+
+        // Act
+        store.endRefreshTokenFamily(familyId);
+        store.endRefreshTokenFamily(uniqueId());
+
+        // Assert
+        assertEquals(RefreshTokenRotation.INVALID, store.rotateRefreshToken(familyId, "first", "second", TTL_MS, GRACE_MS));
+    }
+
+    @Test
+    void rotateRefreshToken_withUnknownFamily_isInvalid() {
+        assertEquals(RefreshTokenRotation.INVALID, store.rotateRefreshToken(uniqueId(), "first", "second", TTL_MS, GRACE_MS));
+    }
+
+    @Test
+    void rotateRefreshToken_afterFamilyExpired_isInvalid() throws InterruptedException {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", 50);
+        Thread.sleep(150);
+
+        // Act & Assert
+        assertEquals(RefreshTokenRotation.INVALID, store.rotateRefreshToken(familyId, "first", "second", TTL_MS, GRACE_MS));
+    }
+
+    @Test
+    void rotateRefreshToken_concurrently_rotatesExactlyOnce() throws Exception {
+        // Arrange
+        String familyId = uniqueId();
+        store.startRefreshTokenFamily(familyId, "first", TTL_MS);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RefreshTokenRotation>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < threads; i++) {
+                String newTokenId = "next-" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return store.rotateRefreshToken(familyId, "first", newTokenId, TTL_MS, GRACE_MS);
+                }));
+            }
+            start.countDown();
+
+            // Assert
+            int rotated = 0;
+            for (Future<RefreshTokenRotation> result : results) {
+                RefreshTokenRotation rotation = result.get();
+                if (rotation == RefreshTokenRotation.ROTATED) {
+                    rotated++;
+                } else {
+                    assertEquals(RefreshTokenRotation.ALREADY_ROTATED, rotation);
+                }
+            }
+            assertEquals(1, rotated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void refreshToken_storeReadAndDelete() {
+        // Arrange
+        String tokenId = uniqueId();
+
+        // Act
+        store.storeRefreshToken(tokenId, TTL_MS);
+
+        // Assert
+        assertTrue(store.containsRefreshToken(tokenId));
+        long ttl = store.getRefreshTokenTtl(tokenId);
+        assertTrue(ttl > 0 && ttl <= TTL_MS);
+
+        store.deleteRefreshToken(tokenId);
+        assertFalse(store.containsRefreshToken(tokenId));
+        assertTrue(store.getRefreshTokenTtl(tokenId) < 0);
+    }
+
+    @Test
+    void refreshToken_expires() throws InterruptedException {
+        // Arrange
+        String tokenId = uniqueId();
+        store.storeRefreshToken(tokenId, 50);
+
+        // Act
+        Thread.sleep(150);
+
+        // Assert
+        assertFalse(store.containsRefreshToken(tokenId));
+        assertTrue(store.getRefreshTokenTtl(tokenId) < 0);
+    }
+
+    private static String uniqueId() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,137 @@
+package com.medici.user_hub.store;
+
+import com.medici.user_hub.security.TokenVersionCache;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.StatefulRedisConnectionImpl;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionTrackerTest {
+
+    @Mock
+    private RedisConnectionFactory connectionFactory;
+
+    @Mock
+    private TokenVersionCache tokenVersionCache;
+
+    @Mock
+    private StatefulRedisConnectionImpl<String, String> connection;
+
+    @Mock
+    private PushMessage message;
+
+    private TokenVersionTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new TokenVersionTracker(connectionFactory, tokenVersionCache);
+        ReflectionTestUtils.setField(tracker, "connection", connection);
+    }
+
+    @Test
+    void start_withoutLettuceClient_leavesCacheOnTtl() {
+        // Act
+        tracker.start();
+
+        // Assert
+        verify(tokenVersionCache, never()).setTracked(anyBoolean());
+    }
+
+    @Test
+    void onPushMessage_invalidatesChangedVersionKeysOnly() {
+        // Arrange
+        when(message.getType()).thenReturn("invalidate");
+        when(message.getContent(any())).thenReturn(List.of("invalidate",
+                List.of("token-version:user1", "token-version:user2", "revoked:42")));
+
+        // Act
+        tracker.onPushMessage(message);
+
+        // Assert
+        verify(tokenVersionCache).invalidate("user1");
+        verify(tokenVersionCache).invalidate("user2");
+        verify(tokenVersionCache, times(2)).invalidate(anyString());
+        verify(tokenVersionCache, never()).invalidateAll();
+    }
+
+    @Test
+    void onPushMessage_withoutKeys_flushesCache() {
+        // Arrange
+        when(message.getType()).thenReturn("invalidate");
+        when(message.getContent(any())).thenReturn(Arrays.asList("invalidate", null));
+
+        // Act
+        tracker.onPushMessage(message);
+
+        // Assert
+        verify(tokenVersionCache).invalidateAll();
+    }
+
+    @Test
+    void onPushMessage_ignoresOtherPushTypes() {
+        // Arrange
+        when(message.getType()).thenReturn("message");
+
+        // Act
+        tracker.onPushMessage(message);
+
+        // Assert
+        verifyNoInteractions(tokenVersionCache);
+    }
+
+    @Test
+    void onRedisDisconnected_fallsBackToTtl() {
+        // Act
+        tracker.onRedisDisconnected(connection);
+
+        // Assert
+        verify(tokenVersionCache).setTracked(false);
+    }
+
+    @Test
+    void onRedisDisconnected_ofOtherConnection_isIgnored() {
+        // Act
+        tracker.onRedisDisconnected(mock(RedisChannelHandler.class));
+
+        // Assert
+        verifyNoInteractions(tokenVersionCache);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onRedisConnected_reEnablesTracking() {
+        // Arrange
+        RedisAsyncCommands<String, String> async = mock(RedisAsyncCommands.class);
+        RedisFuture<String> reply = mock(RedisFuture.class);
+        when(connection.async()).thenReturn(async);
+        when(async.clientTracking(any(TrackingArgs.class))).thenReturn(reply);
+        when(reply.whenComplete(any())).thenAnswer(invocation -> {
+            invocation.<BiConsumer<String, Throwable>>getArgument(0).accept("OK", null);
+            return CompletableFuture.completedFuture("OK");
+        });
+
+        // Act
+        tracker.onRedisConnected(connection, null);
+
+        // Assert
+        verify(tokenVersionCache).setTracked(true);
+    }
+}